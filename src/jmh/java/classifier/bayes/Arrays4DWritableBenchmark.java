@@ -0,0 +1,102 @@
+package classifier.bayes;
+
+import classifier.bayes.ParallelRBNCUtils.Arrays4DWritable;
+import classifier.bayes.standalone.RBNC;
+import classifier.bayes.standalone.RBNCCounts;
+import com.google.common.io.Files;
+import org.apache.hadoop.io.DataInputBuffer;
+import org.apache.hadoop.io.DataOutputBuffer;
+import org.openjdk.jmh.annotations.*;
+import weka.core.Instances;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import static classifier.bayes.ParallelRBNCUtils.generateWekaFileHeader;
+
+/**
+ * The serialization of the count table of a component, as the counting job
+ * writes it once per component and mapper, and ParallelCountingReducer.addToFirst,
+ * as the combiner and the reducer merge the tables. The table has the size of
+ * a component of numAttributes binary attributes with up to maxNrOfParents
+ * parents besides the class.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class Arrays4DWritableBenchmark {
+  @Param({"100", "1000"})
+  public int numAttributes;
+
+  @Param({"1", "3"})
+  public int maxNrOfParents;
+
+  private Arrays4DWritable table;
+  private Arrays4DWritable sum;
+  private final ParallelRBNC.ParallelCountingReducer reducer = new ParallelRBNC.ParallelCountingReducer();
+  private final DataOutputBuffer out = new DataOutputBuffer();
+  private final DataInputBuffer in = new DataInputBuffer();
+  private byte[] serialized;
+  private int length;
+
+  @Setup
+  public void setUp() throws IOException {
+    File dir = Files.createTempDir();
+    Instances dataset;
+    try {
+      dataset = generateWekaFileHeader(numAttributes, new File(dir, "dataset").getPath());
+    } finally {
+      Files.deleteRecursively(dir);
+    }
+    Random random = new Random(1);
+    RBNCCounts counts = new RBNCCounts(dataset, RBNC.generateRandomStructures(dataset.numAttributes(),
+            dataset.classIndex(), 1, maxNrOfParents, random));
+    int[] values = new int[dataset.numAttributes()];
+    for (int k = 0; k < 1000; k++) {
+      for (int att = 0; att < values.length; att++)
+        values[att] = random.nextInt(2);
+      counts.addInstance(values);
+    }
+    table = new Arrays4DWritable(counts.getCounts().get(0));
+
+    out.reset();
+    table.write(out);
+    serialized = Arrays.copyOf(out.getData(), out.getLength());
+    length = out.getLength();
+    in.reset(serialized, length);
+    sum = Arrays4DWritable.read(in);
+  }
+
+  @Benchmark
+  public int write() throws IOException {
+    out.reset();
+    table.write(out);
+    return out.getLength();
+  }
+
+  @Benchmark
+  public Arrays4DWritable readFields() throws IOException {
+    in.reset(serialized, length);
+    return Arrays4DWritable.read(in);
+  }
+
+  @Benchmark
+  public Arrays4DWritable roundTrip() throws IOException {
+    out.reset();
+    table.write(out);
+    in.reset(out.getData(), out.getLength());
+    return Arrays4DWritable.read(in);
+  }
+
+  @Benchmark
+  public Arrays4DWritable addToFirst() {
+    reducer.addToFirst(sum, table);
+    return sum;
+  }
+}
@@ -0,0 +1,78 @@
+package classifier.bayes;
+
+import classifier.bayes.standalone.RBNC;
+import com.google.common.io.Files;
+import org.apache.hadoop.io.LongWritable;
+import org.apache.hadoop.io.Text;
+import org.openjdk.jmh.annotations.*;
+import weka.core.Instances;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import static classifier.bayes.ParallelRBNCUtils.generateInstances;
+import static classifier.bayes.ParallelRBNCUtils.generateWekaFileHeader;
+
+/**
+ * ParallelCountingMapper.map on rows of generateInstances, i.e. the parsing of
+ * a line and the counting of its values in every component. The mapper is
+ * configured without a job, and map does not use its context.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ParallelCountingMapperBenchmark {
+  private static final int NUM_ROWS = 1024;
+
+  @Param({"100", "1000"})
+  public int numAttributes;
+
+  @Param({"1", "3"})
+  public int maxNrOfParents;
+
+  @Param({"10"})
+  public int ensembleSize;
+
+  private ParallelRBNC.ParallelCountingMapper mapper;
+  private final LongWritable offset = new LongWritable();
+  private final Text[] rows = new Text[NUM_ROWS];
+  private int next;
+
+  @Setup
+  public void setUp() throws IOException {
+    File dir = Files.createTempDir();
+    try {
+      Instances dataset = generateWekaFileHeader(numAttributes, new File(dir, "dataset").getPath());
+      File input = new File(dir, "input");
+      generateInstances(NUM_ROWS, numAttributes, input.getPath());
+      BufferedReader reader = new BufferedReader(new FileReader(input));
+      for (int i = 0; i < NUM_ROWS; i++)
+        rows[i] = new Text(reader.readLine());
+      reader.close();
+
+      List<Map<Integer, Set<Integer>>> structures = RBNC.generateRandomStructures(dataset.numAttributes(),
+              dataset.classIndex(), ensembleSize, maxNrOfParents, new Random(1));
+      mapper = new ParallelRBNC.ParallelCountingMapper();
+      mapper.configure(ParallelRBNC.SPLITTER, dataset, structures);
+    } finally {
+      Files.deleteRecursively(dir);
+    }
+    next = 0;
+  }
+
+  @Benchmark
+  public void map() throws IOException, InterruptedException {
+    mapper.map(offset, rows[next], null);
+    next = (next + 1) & (NUM_ROWS - 1);
+  }
+}
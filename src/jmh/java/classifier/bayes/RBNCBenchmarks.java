@@ -0,0 +1,21 @@
+package classifier.bayes;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the benchmarks of the counting job, ParallelCountingMapperBenchmark and
+ * Arrays4DWritableBenchmark, with the gc profiler, which reports the allocation
+ * rate and the bytes allocated per operation of each benchmark.
+ */
+public class RBNCBenchmarks {
+  public static void main(String[] args) throws RunnerException {
+    new Runner(new OptionsBuilder()
+            .include(ParallelCountingMapperBenchmark.class.getSimpleName())
+            .include(Arrays4DWritableBenchmark.class.getSimpleName())
+            .addProfiler(GCProfiler.class)
+            .build()).run();
+  }
+}
@@ -0,0 +1,121 @@
+package libsvm.libsvm;
+
+import libsvm.svm_mapped_reader;
+import java.io.*;
+import java.util.*;
+
+/**
+ * Problems and models for the benchmarks of svm.java. The synthetic data is
+ * drawn from a fixed seed, so every fork measures the same problem. The
+ * benchmarks are in package libsvm.libsvm to reach the package-private
+ * Kernel, Cache and Solver; they are compiled with the JMH annotation
+ * processor and run by the JMH runner, e.g. with -prof gc for allocations.
+ */
+class svm_benchmark_data
+{
+	/** heart_scale, overridden by -Dsvm.heart_scale=path */
+	static final String HEART_SCALE = System.getProperty("svm.heart_scale", "dataset/heart_scale");
+
+	static final svm_print_interface QUIET = new svm_print_interface() {
+		public void print(String s) {}
+	};
+
+	/** a vector of dim features, each present with the probability density */
+	static svm_node[] random_vector(Random random, int dim, double density)
+	{
+		List<svm_node> nodes = new ArrayList<svm_node>();
+		for(int j=1;j<=dim;j++)
+			if(random.nextDouble() < density)
+			{
+				svm_node node = new svm_node();
+				node.index = j;
+				node.value = 2 * random.nextDouble() - 1;
+				nodes.add(node);
+			}
+		return nodes.toArray(new svm_node[nodes.size()]);
+	}
+
+	/**
+	 * l random vectors labeled +1/-1 by a random hyperplane, 10% of the
+	 * labels being flipped so that many vectors end up support vectors
+	 */
+	static svm_problem random_problem(Random random, int l, int dim, double density)
+	{
+		double[] w = new double[dim+1];
+		for(int j=1;j<=dim;j++)
+			w[j] = random.nextGaussian();
+		svm_problem prob = new svm_problem();
+		prob.l = l;
+		prob.x = new svm_node[l][];
+		prob.y = new double[l];
+		for(int i=0;i<l;i++)
+		{
+			prob.x[i] = random_vector(random, dim, density);
+			double margin = 0;
+			for(svm_node node : prob.x[i])
+				margin += w[node.index] * node.value;
+			prob.y[i] = (margin >= 0) == (random.nextDouble() >= 0.1) ? 1 : -1;
+		}
+		return prob;
+	}
+
+	/** "heart_scale" or "synthetic_<l>", of 100 features with density 0.1 */
+	static svm_problem problem(String name) throws IOException
+	{
+		if(name.equals("heart_scale"))
+			return svm_mapped_reader.read(HEART_SCALE, 1).to_problem();
+		if(name.startsWith("synthetic_"))
+			return random_problem(new Random(1), Integer.parseInt(name.substring(10)), 100, 0.1);
+		throw new IllegalArgumentException("unknown problem " + name);
+	}
+
+	/** the default parameters of svm_train for C_SVC */
+	static svm_parameter parameter(int kernel_type, int dim)
+	{
+		svm_parameter param = new svm_parameter();
+		param.svm_type = svm_parameter.C_SVC;
+		param.kernel_type = kernel_type;
+		param.degree = 3;
+		param.gamma = 1.0 / dim;
+		param.coef0 = 0;
+		param.cache_size = 100;
+		param.eps = 1e-3;
+		param.C = 1;
+		param.nr_weight = 0;
+		param.weight_label = new int[0];
+		param.weight = new double[0];
+		param.shrinking = 1;
+		param.probability = 0;
+		return param;
+	}
+
+	/**
+	 * a C_SVC model of nr_class classes with l random support vectors split
+	 * evenly over the classes and random coefficients
+	 */
+	static svm_model random_model(Random random, int nr_class, int l, int dim, double density, svm_parameter param)
+	{
+		svm_model model = new svm_model();
+		model.param = param;
+		model.nr_class = nr_class;
+		model.l = l;
+		model.SV = new svm_node[l][];
+		for(int i=0;i<l;i++)
+			model.SV[i] = random_vector(random, dim, density);
+		model.sv_coef = new double[nr_class-1][l];
+		for(int k=0;k<nr_class-1;k++)
+			for(int i=0;i<l;i++)
+				model.sv_coef[k][i] = param.C * (2 * random.nextDouble() - 1);
+		model.rho = new double[nr_class*(nr_class-1)/2];
+		for(int k=0;k<model.rho.length;k++)
+			model.rho[k] = random.nextGaussian();
+		model.label = new int[nr_class];
+		model.nSV = new int[nr_class];
+		for(int k=0;k<nr_class;k++)
+		{
+			model.label[k] = k;
+			model.nSV[k] = l * (k+1) / nr_class - l * k / nr_class;
+		}
+		return model;
+	}
+}
@@ -0,0 +1,58 @@
+package libsvm.libsvm;
+
+import org.openjdk.jmh.annotations.*;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cache.get_data on columns of length l, the missing part of a column being
+ * filled as the kernel columns are. With "hit" every column fits in the
+ * cache, with "random" half of them do and the columns are requested at
+ * random, and with "evict" a tenth of them do and the columns are requested
+ * in a cycle, so that every request evicts the least recently used column.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class svm_cache_benchmark
+{
+	@Param({"hit", "random", "evict"})
+	public String pattern;
+
+	@Param({"2000"})
+	public int l;
+
+	private Cache cache;
+	private int[] requests;
+	private int next;
+	private final float[][] data = new float[1][];
+
+	@Setup
+	public void setup()
+	{
+		double fraction = pattern.equals("hit") ? 1 : pattern.equals("random") ? 0.5 : 0.1;
+		// the bytes of the columns and of the heads, as counted by Cache
+		long size = (long)(fraction * l) * l * 4 + l * 16;
+		cache = new Cache(l, size);
+		requests = new int[1 << 16];
+		Random random = new Random(1);
+		for(int i=0;i<requests.length;i++)
+			requests[i] = pattern.equals("random") ? random.nextInt(l) : i % l;
+		next = 0;
+	}
+
+	@Benchmark
+	public float[] get_data()
+	{
+		int index = requests[next];
+		next = (next + 1) & (requests.length - 1);
+		int start = cache.get_data(index, data, l);
+		float[] column = data[0];
+		for(int j=start;j<l;j++)
+			column[j] = index ^ j;
+		return column;
+	}
+}
@@ -0,0 +1,60 @@
+package libsvm.libsvm;
+
+import org.openjdk.jmh.annotations.*;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Kernel.k_function, the kernel evaluation of prediction, for each kernel
+ * type on sparse and dense vectors, and Kernel.kernel_function, the
+ * evaluation of training, on the same vectors through SVC_Q.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class svm_kernel_benchmark
+{
+	/** LINEAR, POLY, RBF, SIGMOID */
+	@Param({"0", "1", "2", "3"})
+	public int kernel_type;
+
+	/** the fraction of the features present in a vector */
+	@Param({"0.01", "1"})
+	public double density;
+
+	@Param({"1000"})
+	public int dim;
+
+	private svm_node[] x, y;
+	private svm_parameter param;
+	private SVC_Q q;
+
+	@Setup
+	public void setup()
+	{
+		Random random = new Random(1);
+		x = svm_benchmark_data.random_vector(random, dim, density);
+		y = svm_benchmark_data.random_vector(random, dim, density);
+		param = svm_benchmark_data.parameter(kernel_type, dim);
+		svm_problem prob = new svm_problem();
+		prob.l = 2;
+		prob.x = new svm_node[][] { x, y };
+		prob.y = new double[] { 1, -1 };
+		q = new SVC_Q(prob, param, new byte[] { 1, -1 });
+	}
+
+	@Benchmark
+	public double k_function()
+	{
+		return Kernel.k_function(x, y, param);
+	}
+
+	@Benchmark
+	public double kernel_function()
+	{
+		return q.kernel_function(0, 1);
+	}
+}
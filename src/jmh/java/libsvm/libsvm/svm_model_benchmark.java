@@ -0,0 +1,74 @@
+package libsvm.libsvm;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * svm_load_model and svm_predict_values on random C_SVC models of nr_sv
+ * support vectors of 100 features with density 0.3. The predictions cycle
+ * over 256 random vectors of the same distribution.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class svm_model_benchmark
+{
+	@Param({"100", "1000", "10000"})
+	public int nr_sv;
+
+	@Param({"2", "4"})
+	public int nr_class;
+
+	/** LINEAR, RBF */
+	@Param({"0", "2"})
+	public int kernel_type;
+
+	private static final int DIM = 100;
+
+	private svm_model model;
+	private File model_file;
+	private svm_node[][] x;
+	private double[] dec_values;
+	private int next;
+
+	@Setup
+	public void setup() throws IOException
+	{
+		Random random = new Random(1);
+		svm_parameter param = svm_benchmark_data.parameter(kernel_type, DIM);
+		model = svm_benchmark_data.random_model(random, nr_class, nr_sv, DIM, 0.3, param);
+		model_file = File.createTempFile("svm_model_benchmark", ".model");
+		svm.svm_save_model(model_file.getPath(), model);
+		x = new svm_node[256][];
+		for(int i=0;i<x.length;i++)
+			x[i] = svm_benchmark_data.random_vector(random, DIM, 0.3);
+		dec_values = new double[nr_class*(nr_class-1)/2];
+		next = 0;
+	}
+
+	@TearDown
+	public void tear_down()
+	{
+		model_file.delete();
+	}
+
+	@Benchmark
+	public svm_model load_model() throws IOException
+	{
+		return svm.svm_load_model(model_file.getPath());
+	}
+
+	@Benchmark
+	public void predict_values(Blackhole blackhole)
+	{
+		blackhole.consume(svm.svm_predict_values(model, x[next], dec_values));
+		blackhole.consume(dec_values);
+		next = (next + 1) & (x.length - 1);
+	}
+}
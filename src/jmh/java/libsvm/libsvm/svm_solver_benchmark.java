@@ -0,0 +1,69 @@
+package libsvm.libsvm;
+
+import org.openjdk.jmh.annotations.*;
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Solver.Solve of the C_SVC dual, as solve_c_svc calls it, on heart_scale
+ * and synthetic problems, with and without shrinking. Each invocation
+ * solves from alpha = 0 with a new kernel cache.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class svm_solver_benchmark
+{
+	@Param({"heart_scale", "synthetic_2000", "synthetic_5000"})
+	public String problem;
+
+	/** LINEAR, RBF */
+	@Param({"0", "2"})
+	public int kernel_type;
+
+	@Param({"1", "0"})
+	public int shrinking;
+
+	private svm_problem prob;
+	private svm_parameter param;
+	private byte[] y;
+	private double[] minus_ones;
+
+	@Setup
+	public void setup() throws IOException
+	{
+		svm.svm_set_print_string_function(svm_benchmark_data.QUIET);
+		prob = svm_benchmark_data.problem(problem);
+		int max_index = 0;
+		for(svm_node[] x : prob.x)
+			if(x.length > 0)
+				max_index = Math.max(max_index, x[x.length-1].index);
+		param = svm_benchmark_data.parameter(kernel_type, max_index);
+		param.shrinking = shrinking;
+		y = new byte[prob.l];
+		for(int i=0;i<prob.l;i++)
+			y[i] = (byte)(prob.y[i] > 0 ? 1 : -1);
+		minus_ones = new double[prob.l];
+		Arrays.fill(minus_ones, -1);
+	}
+
+	@TearDown
+	public void tear_down()
+	{
+		svm.svm_set_print_string_function(null);
+	}
+
+	@Benchmark
+	public Solver.SolutionInfo solve()
+	{
+		double[] alpha = new double[prob.l];
+		Solver.SolutionInfo si = new Solver.SolutionInfo();
+		new Solver().Solve(prob.l, new SVC_Q(prob, param, y), minus_ones, y,
+			alpha, param.C, param.C, param.eps, si, param.shrinking);
+		return si;
+	}
+}
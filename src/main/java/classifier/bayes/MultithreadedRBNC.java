@@ -0,0 +1,125 @@
+package classifier.bayes;
+
+import classifier.bayes.standalone.ParallelTasks;
+import classifier.bayes.standalone.RBNCCounts;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.LongWritable;
+import org.apache.hadoop.io.SequenceFile;
+import weka.core.Instances;
+
+import java.io.*;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.regex.Pattern;
+
+import static classifier.bayes.ParallelRBNCUtils.*;
+
+/**
+ * Multithreaded RBNC counting on a single node. The input file is split into one region per thread, aligned to line
+ * boundaries, and each thread counts its region into its own RBNCCounts, the counting of the ParallelCountingMapper.
+ * The threads never share a table, the thread-local counts are summed up at the end like the ParallelCountingReducer.
+ */
+public class MultithreadedRBNC {
+  /**
+   * args: dataset structures input output [numThreads]
+   * <p/>
+   * input is a local file, output is written in the format of the ParallelRBNC counting job, so it can be loaded with
+   * ParallelRBNC.loadModel or merged with the output of other counting jobs
+   */
+  public static void main(String[] args) throws Exception {
+    Configuration conf = new Configuration();
+    FileSystem fs = FileSystem.get(conf);
+    Instances dataset = new Instances(new InputStreamReader(fs.open(new Path(args[0]))), 10);
+    dataset.setClassIndex(dataset.numAttributes() - 1);
+    List<Map<Integer, Set<Integer>>> structures = readModelStructures(fs, conf, new Path(args[1]));
+    int numThreads = args.length > 4 ? Integer.parseInt(args[4]) : Runtime.getRuntime().availableProcessors();
+
+    RBNCCounts counts = count(dataset, structures, new File(args[2]), ParallelRBNC.SPLITTER, numThreads);
+    writeCounts(fs, conf, new Path(args[3]), counts);
+  }
+
+  /**
+   * Count the lines of the input with numThreads threads
+   */
+  public static RBNCCounts count(final Instances dataset, final List<Map<Integer, Set<Integer>>> structures,
+                                 final File input, final Pattern splitter, int numThreads) throws Exception {
+    long length = input.length();
+    int numRegions = Math.max(1, numThreads);
+    List<Callable<RBNCCounts>> tasks = new ArrayList<Callable<RBNCCounts>>();
+    for (int t = 0; t < numRegions; t++) {
+      final long start = length * t / numRegions;
+      final long end = length * (t + 1) / numRegions;
+      tasks.add(new Callable<RBNCCounts>() {
+        public RBNCCounts call() throws IOException {
+          RBNCCounts counts = new RBNCCounts(dataset, structures);
+          countRegion(input, start, end, splitter, dataset, counts);
+          return counts;
+        }
+      });
+    }
+    List<RBNCCounts> results = ParallelTasks.invokeAll(tasks, numThreads);
+    RBNCCounts counts = results.get(0);
+    for (int t = 1; t < results.size(); t++)
+      counts.add(results.get(t));
+    return counts;
+  }
+
+  /**
+   * Count the lines starting in [start, end) of the input. Like a text input split, the line running over start
+   * belongs to the previous region and the line running over end to this one.
+   */
+  static void countRegion(File input, long start, long end, Pattern splitter, Instances dataset,
+                          RBNCCounts counts) throws IOException {
+    FileInputStream in = new FileInputStream(input);
+    try {
+      long pos = Math.max(start - 1, 0);
+      in.getChannel().position(pos);
+      InputStream buffered = new BufferedInputStream(in, 1 << 16);
+      int b = 0;
+      if (start > 0) {
+        // skip the rest of the line running over start
+        while ((b = buffered.read()) != -1) {
+          pos++;
+          if (b == '\n')
+            break;
+        }
+      }
+      StringBuilder line = new StringBuilder();
+      while (pos < end && b != -1) {
+        line.setLength(0);
+        while ((b = buffered.read()) != -1) {
+          pos++;
+          if (b == '\n')
+            break;
+          line.append((char) b);
+        }
+        if (line.length() > 0 && line.charAt(line.length() - 1) == '\r')
+          line.setLength(line.length() - 1);
+        if (line.length() > 0)
+          counts.addInstance(parseValues(splitter, dataset, line.toString()));
+      }
+    } finally {
+      in.close();
+    }
+  }
+
+  /**
+   * Write the counts as the output of a counting job
+   */
+  public static void writeCounts(FileSystem fs, Configuration conf, Path output, RBNCCounts counts)
+          throws IOException {
+    SequenceFile.Writer writer = SequenceFile.createWriter(fs, conf, new Path(output, "part-r-00000"),
+            LongWritable.class, Arrays4DWritable.class);
+    try {
+      for (int i = 0; i < counts.numComponents(); i++)
+        writer.append(new LongWritable(i), new Arrays4DWritable(counts.getCounts().get(i)));
+    } finally {
+      writer.close();
+    }
+  }
+}
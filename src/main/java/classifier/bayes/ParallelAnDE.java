@@ -0,0 +1,78 @@
+package classifier.bayes;
+
+import classifier.bayes.standalone.AnDE;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.filecache.DistributedCache;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import weka.core.Instances;
+
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.*;
+
+import static classifier.bayes.ParallelRBNCUtils.*;
+
+/**
+ * Parallel AnDE (AODE for n = 1, A2DE for n = 2) with MapReduce.
+ * <p/>
+ * Each super-parent set is written as one component of the RBNC structures format, in which every attribute has
+ * the super-parents as its parents, so the joint counts of all components are computed in a single pass by the
+ * ParallelRBNC counting job (with combiners). The count tables are loaded back into an AnDE model with loadModel.
+ */
+public class ParallelAnDE {
+  /**
+   * args: dataset n structures input output
+   */
+  public static void main(String[] args) throws Exception {
+    Configuration conf = new Configuration();
+    FileSystem fs = FileSystem.get(conf);
+    Instances dataset = new Instances(new InputStreamReader(fs.open(new Path(args[0]))), 10);
+    dataset.setClassIndex(dataset.numAttributes() - 1);
+    int n = Integer.parseInt(args[1]);
+
+    // write the super-parent sets as structures
+    writeModelStructures(fs, conf, new Path(args[2]),
+            generateAnDEStructures(dataset.numAttributes(), dataset.classIndex(), n));
+
+    // add dataset description to distributedCache
+    DistributedCache.addCacheFile(new Path(args[0]).toUri(), conf);
+    // add structures to distributedCache
+    DistributedCache.addCacheFile(new Path(args[2]).toUri(), conf);
+
+    conf.set("mapred.compress.map.output", "true");
+    conf.set("mapred.output.compression.type", "BLOCK");
+
+    ParallelRBNC.runCountingJob(conf, args[3], new Path(args[4]));
+  }
+
+  /**
+   * One component per super-parent set (in the order of AnDE.enumerateSuperParents), where the parents of every
+   * other attribute, including the class, are the super-parents
+   */
+  public static List<Map<Integer, Set<Integer>>> generateAnDEStructures(int numAttributes, int classIndex, int n) {
+    List<Map<Integer, Set<Integer>>> structures = new ArrayList<Map<Integer, Set<Integer>>>();
+    for (int[] superParents : AnDE.enumerateSuperParents(numAttributes, classIndex, n)) {
+      Set<Integer> parents = new TreeSet<Integer>();
+      for (int superParent : superParents)
+        parents.add(superParent);
+      Map<Integer, Set<Integer>> component = new HashMap<Integer, Set<Integer>>();
+      for (int att = 0; att < numAttributes; att++)
+        if (!parents.contains(att))
+          component.put(att, parents);
+      structures.add(component);
+    }
+    return structures;
+  }
+
+  /**
+   * Load the output of the counting job into an AnDE model
+   */
+  public static AnDE loadModel(FileSystem fs, Configuration conf, Path output, Instances header, int n)
+          throws IOException {
+    AnDE ande = new AnDE();
+    ande.setNDependence(n);
+    ande.buildFromCounts(header, ParallelRBNC.readCounts(fs, conf, output));
+    return ande;
+  }
+}
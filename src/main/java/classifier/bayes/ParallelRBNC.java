@@ -10,16 +10,21 @@
 
 package classifier.bayes;
 
+import classifier.bayes.standalone.RBNC;
+import classifier.bayes.standalone.RBNCCounts;
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.filecache.DistributedCache;
+import org.apache.hadoop.fs.FileStatus;
 import org.apache.hadoop.fs.FileSystem;
 import org.apache.hadoop.fs.Path;
 import org.apache.hadoop.io.LongWritable;
+import org.apache.hadoop.io.SequenceFile;
 import org.apache.hadoop.io.Text;
 import org.apache.hadoop.mapreduce.Job;
 import org.apache.hadoop.mapreduce.Mapper;
 import org.apache.hadoop.mapreduce.Reducer;
 import org.apache.hadoop.mapreduce.lib.input.FileInputFormat;
+import org.apache.hadoop.mapreduce.lib.input.SequenceFileInputFormat;
 import org.apache.hadoop.mapreduce.lib.input.TextInputFormat;
 import org.apache.hadoop.mapreduce.lib.output.FileOutputFormat;
 import org.apache.hadoop.mapreduce.lib.output.SequenceFileOutputFormat;
@@ -30,9 +35,11 @@ import weka.core.Instances;
 import java.io.IOException;
 import java.io.InputStreamReader;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.TreeMap;
 import java.util.regex.Pattern;
 import static classifier.bayes.ParallelRBNCUtils.*;
 
@@ -45,10 +52,18 @@ public class ParallelRBNC {
   public static final String DATASET = "dataset";
   public static final String PARENTS = "structures";
   public static final String SPLIT_PATTERN = "splitPattern";
+  /** whether the attribute values are raw strings hashed by the mapper, see ParallelRBNCUtils.hashValues */
+  public static final String HASH_VALUES = "hashValues";
   public static final Pattern SPLITTER = Pattern.compile("[ ,\t]*[,|\t][ ,\t]*");
 
   /**
    * Count the frequencies of various combination of feature values (used for CPTs) in parallel using Map/Reduce
+   * <p/>
+   * args: dataset structures input output [previousOutput]
+   * <p/>
+   * input may be a comma separated list of paths. If previousOutput (the output of an earlier run with the same
+   * dataset and structures) is given, only the input is counted and the counts are merged with the previous ones,
+   * since the parameters of RBNC are additive counts.
    */
   public static void main(String[] args) throws Exception {
     Configuration conf = new Configuration();
@@ -61,15 +76,38 @@ public class ParallelRBNC {
     conf.set("mapred.compress.map.output", "true");
     conf.set("mapred.output.compression.type", "BLOCK");
 
-    String input = args[2];
-    String output = args[3];
+    runCounting(conf, args[2], args[3], args.length > 4 ? args[4] : null);
+  }
+
+  /**
+   * Count the input into output or, if previous is not null, count the input into output_delta and merge it with
+   * previous into output, output_delta being deleted afterwards
+   */
+  public static boolean runCounting(Configuration conf, String input, String output, String previous)
+          throws IOException, InterruptedException, ClassNotFoundException {
+    if (previous == null)
+      return runCountingJob(conf, input, new Path(output));
+    Path delta = new Path(output + "_delta");
+    try {
+      return runCountingJob(conf, input, delta)
+              && runMergingJob(conf, new Path[]{new Path(previous), delta}, new Path(output));
+    } finally {
+      delta.getFileSystem(conf).delete(delta, true);
+    }
+  }
+
+  /**
+   * Count the given input (a comma separated list of paths) into the count tables of each component
+   */
+  public static boolean runCountingJob(Configuration conf, String input, Path output) throws IOException,
+          InterruptedException, ClassNotFoundException {
     Job job = new Job(conf, "Parallel Counting Driver running over input: " + input);
     job.setJarByClass(ParallelRBNC.class);
 
     job.setOutputKeyClass(LongWritable.class);
     job.setOutputValueClass(Arrays4DWritable.class);
-    FileInputFormat.addInputPath(job, new Path(input));
-    FileOutputFormat.setOutputPath(job, new Path(output));
+    FileInputFormat.addInputPaths(job, input);
+    FileOutputFormat.setOutputPath(job, output);
 
     job.setInputFormatClass(TextInputFormat.class);
     job.setMapperClass(ParallelCountingMapper.class);
@@ -77,7 +115,59 @@ public class ParallelRBNC {
     job.setReducerClass(ParallelCountingReducer.class);
     job.setOutputFormatClass(SequenceFileOutputFormat.class);
 
-    job.waitForCompletion(true);
+    return job.waitForCompletion(true);
+  }
+
+  /**
+   * Sum up the count tables of several counting job outputs produced with the same dataset and structures
+   */
+  public static boolean runMergingJob(Configuration conf, Path[] inputs, Path output) throws IOException,
+          InterruptedException, ClassNotFoundException {
+    Job job = new Job(conf, "Parallel Counting Merger running over input: " + Arrays.toString(inputs));
+    job.setJarByClass(ParallelRBNC.class);
+
+    job.setOutputKeyClass(LongWritable.class);
+    job.setOutputValueClass(Arrays4DWritable.class);
+    FileInputFormat.setInputPaths(job, inputs);
+    FileOutputFormat.setOutputPath(job, output);
+
+    // identity mapper, the count tables are only summed up
+    job.setInputFormatClass(SequenceFileInputFormat.class);
+    job.setMapperClass(Mapper.class);
+    job.setCombinerClass(ParallelCountingReducer.class);
+    job.setReducerClass(ParallelCountingReducer.class);
+    job.setOutputFormatClass(SequenceFileOutputFormat.class);
+
+    return job.waitForCompletion(true);
+  }
+
+  /**
+   * Read the count tables of each component from the output of a counting job, in the order of the components
+   */
+  public static List<double[][][][]> readCounts(FileSystem fs, Configuration conf, Path output) throws IOException {
+    Map<Long, double[][][][]> components = new TreeMap<Long, double[][][][]>();
+    for (FileStatus status : fs.listStatus(output)) {
+      if (!status.getPath().getName().startsWith("part"))
+        continue;
+      SequenceFile.Reader reader = new SequenceFile.Reader(fs, status.getPath(), conf);
+      LongWritable key = new LongWritable();
+      Arrays4DWritable value = new Arrays4DWritable();
+      while (reader.next(key, value))
+        components.put(key.get(), value.getValues());
+      reader.close();
+    }
+    return new ArrayList<double[][][][]>(components.values());
+  }
+
+  /**
+   * Load the output of the counting job into a standalone RBNC model
+   */
+  public static RBNC loadModel(FileSystem fs, Configuration conf, Path output, Instances header,
+                               List<Map<Integer, Set<Integer>>> structures) throws IOException {
+    RBNC rbnc = new RBNC();
+    rbnc.setStructures(structures);
+    rbnc.buildFromCounts(header, structures, readCounts(fs, conf, output));
+    return rbnc;
   }
 
   /**
@@ -92,80 +182,55 @@ public class ParallelRBNC {
 
     private List<Map<Integer, Set<Integer>>> structures;
 
-    private double[] m_ClassCounts;
-
-    private List<double[][][][]> m_Distributions;
+    /** the count tables of all the components, shared with the standalone RBNC */
+    private RBNCCounts m_Counts;
 
     private int ensembleSize;
 
+    private boolean hashValues;
+
     @Override
     protected void setup(Context context) throws IOException, InterruptedException {
       super.setup(context);
       Configuration conf = context.getConfiguration();
+      hashValues = conf.getBoolean(ParallelRBNC.HASH_VALUES, false);
       FileSystem fs = FileSystem.getLocal(conf);
-      splitter = Pattern.compile(conf.get(ParallelRBNC.SPLIT_PATTERN, ParallelRBNC.SPLITTER.toString()));
       Path[] caches = DistributedCache.getLocalCacheFiles(conf);
       //read dataset
-      dataset = new Instances(new InputStreamReader(fs.open(caches[0])), 10);
+      Instances dataset = new Instances(new InputStreamReader(fs.open(caches[0])), 10);
       dataset.setClassIndex(dataset.numAttributes() - 1);
       //read structure
-      structures = ParallelRBNCUtils.readModelStructures(fs, conf, caches[1]);
-      // allocate CPTs space
-      int numAttributes = dataset.numAttributes();
-      int numClasses = dataset.numClasses();
-      m_ClassCounts = new double[numClasses];
-      ensembleSize = structures.size();
-      m_Distributions = new ArrayList<double[][][][]>(structures.size());
-      for (int i = 0; i < structures.size(); i++) {
-        double[][][][] component_Distribution = new double[numAttributes][][][];
-        for (Map.Entry<Integer, Set<Integer>> entry : structures.get(i).entrySet()) {
-          int att = entry.getKey();
-          int numOfAttValues = dataset.attribute(att).numValues();
-          int parentsCardinality = 1;
-          for (int attParent : entry.getValue())
-            parentsCardinality *= dataset.attribute(attParent).numValues();
-          component_Distribution[att] = new double[numClasses][parentsCardinality][numOfAttValues];
-        }
-        m_Distributions.add(component_Distribution);
-      }
+      configure(Pattern.compile(conf.get(ParallelRBNC.SPLIT_PATTERN, ParallelRBNC.SPLITTER.toString())), dataset,
+              ParallelRBNCUtils.readModelStructures(fs, conf, caches[1]));
 
       log.info("Model structure : " + structures);
       log.info("EnsembleSize : " + ensembleSize);
     }
 
+    /**
+     * the state set up from the job configuration, also used to run map without a job
+     */
+    void configure(Pattern splitter, Instances dataset, List<Map<Integer, Set<Integer>>> structures) {
+      this.splitter = splitter;
+      this.dataset = dataset;
+      this.structures = structures;
+      // allocate CPTs space
+      ensembleSize = structures.size();
+      m_Counts = new RBNCCounts(dataset, structures);
+    }
+
     @Override
     protected void map(LongWritable offset, Text input, Context context) throws IOException,
             InterruptedException {
-      String[] items = splitter.split(input.toString());
-      int[] values = new int[items.length];
-      for (int i = 0; i < items.length; i++) {
-        String item = items[i];
-        if (item.trim().length() == 0) {
-          throw new IllegalArgumentException("missing value is unsupported");
-        }
-        values[i] = dataset.attribute(i).indexOfValue(item);
-        values[i] = Integer.parseInt(item);
-      }
-      for (int i = 0; i < ensembleSize; i++) {
-        int classVal = values[dataset.classIndex()];
-        m_ClassCounts[classVal]++;
-        for (Map.Entry<Integer, Set<Integer>> entry : structures.get(i).entrySet()) {
-          int att = entry.getKey();
-          int attValue = values[att];
-          int parentsValueIndex = 0;
-          for (int attParent : entry.getValue()) {
-            parentsValueIndex = parentsValueIndex * dataset.attribute(attParent).numValues()
-                    + values[attParent];
-          }
-          m_Distributions.get(i)[att][classVal][parentsValueIndex][attValue]++;
-        }
-      }
+      String line = input.toString();
+      m_Counts.addInstance(hashValues ? ParallelRBNCUtils.hashValues(splitter, dataset, line)
+              : parseValues(splitter, dataset, line));
     }
 
     @Override
     protected void cleanup(Context context) throws IOException, InterruptedException {
       for (int i = 0; i < ensembleSize; i++)
-        context.write(new LongWritable(i), new Arrays4DWritable(m_Distributions.get(i)));
+        context.write(new LongWritable(i), new Arrays4DWritable(m_Counts.getCounts().get(i)));
     }
   }
 
@@ -193,10 +258,15 @@ public class ParallelRBNC {
       double[][][][] v1 = a1.getValues();
       double[][][][] v2 = a2.getValues();
       for (int i = 0; i < v1.length; i++) {
-        for (int j = 0; j < v1[i].length; j++)
+        if (v1[i] == null)
+          continue;
+        for (int j = 0; j < v1[i].length; j++) {
+          if (v1[i][j] == null)
+            continue;
           for (int m = 0; m < v1[i][j].length; m++)
             for (int n = 0; n < v1[i][j][m].length; n++)
               v1[i][j][m][n] += v2[i][j][m][n];
+        }
       }
     }
   }
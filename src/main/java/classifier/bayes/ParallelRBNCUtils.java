@@ -1,6 +1,7 @@
 package classifier.bayes;
 
-import com.google.common.collect.Sets;
+import classifier.bayes.standalone.RBNC;
+import libsvm.mapreduce.FeatureHasher;
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.fs.FSDataInputStream;
 import org.apache.hadoop.fs.FSDataOutputStream;
@@ -13,6 +14,7 @@ import weka.core.Instances;
 
 import java.io.*;
 import java.util.*;
+import java.util.regex.Pattern;
 
 /**
  * Utils for Parallel RBNC
@@ -201,6 +203,45 @@ public class ParallelRBNCUtils {
     }
   }
 
+  /**
+   * Parse one line of integer-coded attribute values
+   */
+  public static int[] parseValues(Pattern splitter, Instances dataset, String line) {
+    String[] items = splitter.split(line);
+    int[] values = new int[items.length];
+    for (int i = 0; i < items.length; i++) {
+      String item = items[i];
+      if (item.trim().length() == 0) {
+        throw new IllegalArgumentException("missing value is unsupported");
+      }
+      values[i] = dataset.attribute(i).indexOfValue(item);
+      values[i] = Integer.parseInt(item);
+    }
+    return values;
+  }
+
+  /**
+   * Parse one line of raw string attribute values with the hashing trick: the value of an attribute is the bucket of
+   * the string by an unsigned FeatureHasher, the same hashing as SVMPredictionJob, with as many buckets as the header
+   * declares values for the attribute. The class value is integer-coded as in parseValues. The lines need not be
+   * encoded against a dictionary beforehand.
+   */
+  public static int[] hashValues(Pattern splitter, Instances dataset, String line) {
+    String[] items = splitter.split(line);
+    int[] values = new int[items.length];
+    for (int i = 0; i < items.length; i++) {
+      String item = items[i].trim();
+      if (item.length() == 0) {
+        throw new IllegalArgumentException("missing value is unsupported");
+      }
+      if (i == dataset.classIndex())
+        values[i] = Integer.parseInt(item);
+      else
+        values[i] = new FeatureHasher(dataset.attribute(i).numValues(), false).index(item);
+    }
+    return values;
+  }
+
   /**
    * Read Parents List for each attribute from hdfs
    */
@@ -244,28 +285,14 @@ public class ParallelRBNCUtils {
   }
 
   /**
-   * Randomly structure learning
+   * Randomly structure learning, see RBNC.generateRandomStructures; the attributes are 0..numFeatures - 1 and the
+   * class attribute
    */
   public static void generateRandomStructure(int ensembleSize, int numFeatures, int m_MaxNumOfParents, int classAtt, String path) throws IOException {
     Configuration conf = new Configuration();
     FileSystem fs = FileSystem.get(conf);
-    List<Map<Integer, Set<Integer>>> structures = new ArrayList<Map<Integer, Set<Integer>>>();
-    for (int k = 0; k < ensembleSize; k++) {
-      Map<Integer, Set<Integer>> parentsMap = new HashMap<Integer, Set<Integer>>();
-      Random rnd = new Random();
-      for (int i = 0; i < numFeatures; i++) {
-        Set<Integer> parentsAttributesIndex = new TreeSet<Integer>();
-        int numOfParents = (i <= m_MaxNumOfParents ? i : m_MaxNumOfParents);
-        while (parentsAttributesIndex.size() < numOfParents)
-          parentsAttributesIndex.add(rnd.nextInt(i));
-        parentsMap.put(i, parentsAttributesIndex);
-        //add the class attribute
-        parentsAttributesIndex.add(classAtt);
-      }
-      //set class attribute to avoid null
-      parentsMap.put(classAtt, Sets.newHashSet(classAtt));
-      structures.add(parentsMap);
-    }
+    List<Map<Integer, Set<Integer>>> structures = RBNC.generateRandomStructures(Math.max(numFeatures, classAtt + 1),
+            classAtt, ensembleSize, m_MaxNumOfParents, new Random());
 
     // print component structure
     System.out.println(structures.size());
@@ -274,11 +301,18 @@ public class ParallelRBNCUtils {
   }
 
   public static Instances generateWekaFileHeader(int numOfAttributes, String outputFile) throws IOException {
+    return generateWekaFileHeader(numOfAttributes, 2, outputFile);
+  }
+
+  /**
+   * the header of binary class data whose attributes have numOfValues values, e.g. the number of buckets of hashValues
+   */
+  public static Instances generateWekaFileHeader(int numOfAttributes, int numOfValues, String outputFile) throws IOException {
     FastVector attributes = new FastVector();
     for (int i = 0; i < numOfAttributes; i++) {
       FastVector att = new FastVector();
-      att.addElement("0");
-      att.addElement("1");
+      for (int v = 0; v < numOfValues; v++)
+        att.addElement(String.valueOf(v));
       attributes.addElement(new Attribute("Attribute" + i, att));
     }
     FastVector classAtt = new FastVector();
@@ -0,0 +1,221 @@
+package classifier.bayes;
+
+import classifier.bayes.ParallelRBNC.ParallelCountingReducer;
+import classifier.bayes.standalone.RBNC;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.filecache.DistributedCache;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.LongWritable;
+import org.apache.hadoop.io.SequenceFile;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.mapreduce.Job;
+import org.apache.hadoop.mapreduce.Mapper;
+import org.apache.hadoop.mapreduce.lib.input.FileInputFormat;
+import org.apache.hadoop.mapreduce.lib.input.TextInputFormat;
+import org.apache.hadoop.mapreduce.lib.output.FileOutputFormat;
+import org.apache.hadoop.mapreduce.lib.output.SequenceFileOutputFormat;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import weka.core.Instances;
+
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.*;
+import java.util.regex.Pattern;
+
+import static classifier.bayes.ParallelRBNCUtils.*;
+
+/**
+ * Structure learning for RBNC with MapReduce. Instead of choosing the parents uniformly at random, the parents of
+ * each attribute are sampled with probability proportional to the conditional mutual information I(Xi;Xj|C), which
+ * is computed from the pairwise counts count(x_i,x_j,c) collected in a single pass over the data.
+ * The result is written in the same structures format as generateRandomStructure.
+ */
+public class ParallelStructureLearning {
+  private static final Logger log = LoggerFactory.getLogger(ParallelStructureLearning.class);
+
+  /**
+   * args: dataset input countsOutput ensembleSize maxNumOfParents structures [seed]
+   */
+  public static void main(String[] args) throws Exception {
+    Configuration conf = new Configuration();
+    FileSystem fs = FileSystem.get(conf);
+    // add dataset description to distributedCache
+    DistributedCache.addCacheFile(new Path(args[0]).toUri(), conf);
+
+    conf.set("mapred.compress.map.output", "true");
+    conf.set("mapred.output.compression.type", "BLOCK");
+
+    String input = args[1];
+    Path countsOutput = new Path(args[2]);
+    int ensembleSize = Integer.parseInt(args[3]);
+    int maxNumOfParents = Integer.parseInt(args[4]);
+    Path structuresPath = new Path(args[5]);
+    long seed = args.length > 6 ? Long.parseLong(args[6]) : System.currentTimeMillis();
+
+    if (!runPairwiseCountingJob(conf, input, countsOutput))
+      return;
+
+    Instances dataset = new Instances(new InputStreamReader(fs.open(new Path(args[0]))), 10);
+    dataset.setClassIndex(dataset.numAttributes() - 1);
+    double[][][][][] counts = readPairwiseCounts(fs, conf, countsOutput, dataset.numAttributes());
+    double[][] cmi = conditionalMutualInformation(counts, dataset.classIndex());
+    List<Map<Integer, Set<Integer>>> structures = sampleStructures(cmi, ensembleSize, maxNumOfParents,
+            dataset.classIndex(), new Random(seed));
+    log.info("Model structure : " + structures);
+    writeModelStructures(fs, conf, structuresPath, structures);
+  }
+
+  /**
+   * Count count(x_i,x_j,c) for every pair of attributes i < j
+   */
+  public static boolean runPairwiseCountingJob(Configuration conf, String input, Path output) throws IOException,
+          InterruptedException, ClassNotFoundException {
+    Job job = new Job(conf, "Parallel Pairwise Counting Driver running over input: " + input);
+    job.setJarByClass(ParallelStructureLearning.class);
+
+    job.setOutputKeyClass(LongWritable.class);
+    job.setOutputValueClass(Arrays4DWritable.class);
+    FileInputFormat.addInputPaths(job, input);
+    FileOutputFormat.setOutputPath(job, output);
+
+    job.setInputFormatClass(TextInputFormat.class);
+    job.setMapperClass(PairwiseCountingMapper.class);
+    job.setCombinerClass(ParallelCountingReducer.class);
+    job.setReducerClass(ParallelCountingReducer.class);
+    job.setOutputFormatClass(SequenceFileOutputFormat.class);
+
+    return job.waitForCompletion(true);
+  }
+
+  /**
+   * Read the output of the pairwise counting job, counts[i][j][x_i][x_j][c] for i < j
+   */
+  public static double[][][][][] readPairwiseCounts(FileSystem fs, Configuration conf, Path output,
+                                                    int numAttributes) throws IOException {
+    double[][][][][] counts = new double[numAttributes][][][][];
+    for (FileStatus status : fs.listStatus(output)) {
+      if (!status.getPath().getName().startsWith("part"))
+        continue;
+      SequenceFile.Reader reader = new SequenceFile.Reader(fs, status.getPath(), conf);
+      LongWritable key = new LongWritable();
+      Arrays4DWritable value = new Arrays4DWritable();
+      while (reader.next(key, value))
+        counts[(int) key.get()] = value.getValues();
+      reader.close();
+    }
+    return counts;
+  }
+
+  /**
+   * I(X_i;X_j|C) = sum P(x_i,x_j,c) log (P(x_i,x_j|c) / (P(x_i|c) P(x_j|c))) for every pair of attributes,
+   * the result is symmetric
+   */
+  public static double[][] conditionalMutualInformation(double[][][][][] counts, int classIndex) {
+    int numAttributes = counts.length;
+    double[][] cmi = new double[numAttributes][numAttributes];
+    for (int i = 0; i < numAttributes; i++) {
+      if (counts[i] == null)
+        continue;
+      for (int j = i + 1; j < numAttributes; j++) {
+        double[][][] nij = counts[i][j];
+        if (nij == null || i == classIndex || j == classIndex)
+          continue;
+        int numClasses = nij[0][0].length;
+        double[][] ni = new double[nij.length][numClasses];
+        double[][] nj = new double[nij[0].length][numClasses];
+        double[] nc = new double[numClasses];
+        double n = 0;
+        for (int vi = 0; vi < nij.length; vi++)
+          for (int vj = 0; vj < nij[vi].length; vj++)
+            for (int c = 0; c < numClasses; c++) {
+              ni[vi][c] += nij[vi][vj][c];
+              nj[vj][c] += nij[vi][vj][c];
+              nc[c] += nij[vi][vj][c];
+              n += nij[vi][vj][c];
+            }
+        if (n == 0)
+          continue;
+        double sum = 0;
+        for (int vi = 0; vi < nij.length; vi++)
+          for (int vj = 0; vj < nij[vi].length; vj++)
+            for (int c = 0; c < numClasses; c++)
+              if (nij[vi][vj][c] > 0)
+                sum += nij[vi][vj][c] / n * Math.log(nij[vi][vj][c] * nc[c] / (ni[vi][c] * nj[vj][c]));
+        cmi[i][j] = cmi[j][i] = Math.max(sum, 0);
+      }
+    }
+    return cmi;
+  }
+
+  /**
+   * Each component uses a random ordering of the attributes; the parents of an attribute are sampled without
+   * replacement from the attributes before it in the ordering with probability proportional to the CMI, see
+   * RBNC.generateRandomStructures.
+   */
+  public static List<Map<Integer, Set<Integer>>> sampleStructures(double[][] cmi, int ensembleSize,
+                                                                  int m_MaxNumOfParents, int classAtt, Random rnd) {
+    return RBNC.generateRandomStructures(cmi.length, classAtt, ensembleSize, m_MaxNumOfParents, cmi, rnd);
+  }
+
+  /**
+   * maps each instance into the pairwise count tables, emitted per attribute i as values[j][x_i][x_j][c]
+   */
+  public static class PairwiseCountingMapper extends Mapper<LongWritable, Text, LongWritable, Arrays4DWritable> {
+    private Pattern splitter;
+
+    private Instances dataset;
+
+    private double[][][][][] m_PairCounts;
+
+    @Override
+    protected void setup(Context context) throws IOException, InterruptedException {
+      super.setup(context);
+      Configuration conf = context.getConfiguration();
+      FileSystem fs = FileSystem.getLocal(conf);
+      splitter = Pattern.compile(conf.get(ParallelRBNC.SPLIT_PATTERN, ParallelRBNC.SPLITTER.toString()));
+      Path[] caches = DistributedCache.getLocalCacheFiles(conf);
+      //read dataset
+      dataset = new Instances(new InputStreamReader(fs.open(caches[0])), 10);
+      dataset.setClassIndex(dataset.numAttributes() - 1);
+      // allocate pairwise tables
+      int numAttributes = dataset.numAttributes();
+      int numClasses = dataset.numClasses();
+      m_PairCounts = new double[numAttributes][][][][];
+      for (int i = 0; i < numAttributes; i++) {
+        if (i == dataset.classIndex())
+          continue;
+        m_PairCounts[i] = new double[numAttributes][][][];
+        for (int j = i + 1; j < numAttributes; j++) {
+          if (j == dataset.classIndex())
+            continue;
+          m_PairCounts[i][j] = new double[dataset.attribute(i).numValues()][dataset.attribute(j).numValues()][numClasses];
+        }
+      }
+    }
+
+    @Override
+    protected void map(LongWritable offset, Text input, Context context) throws IOException,
+            InterruptedException {
+      int[] values = parseValues(splitter, dataset, input.toString());
+      int classVal = values[dataset.classIndex()];
+      for (int i = 0; i < m_PairCounts.length; i++) {
+        if (m_PairCounts[i] == null)
+          continue;
+        for (int j = i + 1; j < m_PairCounts.length; j++) {
+          if (m_PairCounts[i][j] != null)
+            m_PairCounts[i][j][values[i]][values[j]][classVal]++;
+        }
+      }
+    }
+
+    @Override
+    protected void cleanup(Context context) throws IOException, InterruptedException {
+      for (int i = 0; i < m_PairCounts.length; i++)
+        if (m_PairCounts[i] != null)
+          context.write(new LongWritable(i), new Arrays4DWritable(m_PairCounts[i]));
+    }
+  }
+}
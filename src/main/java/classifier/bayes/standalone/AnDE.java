@@ -1,17 +1,19 @@
 package classifier.bayes.standalone;
 
+import org.apache.mahout.math.map.OpenLongIntHashMap;
 import weka.classifiers.Classifier;
 import weka.core.Instance;
 import weka.core.Instances;
-import weka.core.Utils;
 import weka.core.WeightedInstancesHandler;
-import weka.estimators.DiscreteEstimator;
-import weka.estimators.Estimator;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.Callable;
 
-public class AnDE extends Classifier implements WeightedInstancesHandler {
+public class AnDE extends Classifier implements WeightedInstancesHandler,
+		BatchClassifier, CountBasedClassifier<AnDE.SuperParentCounts> {
 	/** for serialization */
 	public static final long serialVersionUID = -450879901061232190L;
 
@@ -21,8 +23,18 @@ public class AnDE extends Classifier implements WeightedInstancesHandler {
 	/** n-Dependence */
 	private int m_NDependence = 1;
 
+	/**
+	 * A super-parents value must occur this many times for a component to
+	 * predict, see SuperParentNEstimators; the same for any n, the pruning of
+	 * the sparse tables does not change it
+	 */
+	private int m_Limit = 1;
+
+	/** number of threads for training and batch prediction */
+	private int m_NumThreads = 1;
+
 	/** Store all the Component Classifiers in the ensemble */
-	private List<Classifier> m_Classifiers = new ArrayList<Classifier>();
+	private List<SuperParentNEstimators> m_Classifiers = new ArrayList<SuperParentNEstimators>();
 
 	@Override
 	public void buildClassifier(Instances instances) throws Exception {
@@ -32,53 +44,539 @@ public class AnDE extends Classifier implements WeightedInstancesHandler {
 		// remove instances with missing class
 		instances.deleteWithMissingClass();
 		Instances data = new Instances(instances);
+		build(data, data, null);
+	}
 
-		m_NumClasses = instances.numClasses();
-		switch (m_NDependence) {
-		case 1:
-			// construct AODE ensemble
-			for (int att = 0; att < instances.numAttributes(); att++) {
-				if (att != instances.classIndex()) {
-					SuperParentNEstimators componetCls = new SuperParentNEstimators();
-					componetCls.setSuperParentsAttIndex(new int[] { att });
-					// build component classifier
-					componetCls.buildClassifier(data);
-					m_Classifiers.add(componetCls);
-				}
-			}
-			break;
-		case 2:
-			// construct A2DE ensemble
-			for (int att1 = 0; att1 < instances.numAttributes(); att1++)
-				for (int att2 = att1 + 1; att2 < instances.numAttributes(); att2++) {
-					if (att1 != instances.classIndex()
-							&& att2 != instances.classIndex()) {
-						SuperParentNEstimators componetCls = new SuperParentNEstimators();
-						componetCls.setSuperParentsAttIndex(new int[] { att1,
-								att2 });
-						// build component classifier
-						componetCls.buildClassifier(data);
-						m_Classifiers.add(componetCls);
-					}
-				}
-			break;
-		default:
+	/**
+	 * Build the classifier from integer-coded instances, e.g. read by
+	 * MappedValuesReader, each of weight 1
+	 * 
+	 * @param header
+	 *            the dataset description
+	 */
+	public void buildFromValues(Instances header, int[][] values)
+			throws Exception {
+		build(header, null, values);
+	}
+
+	private void build(Instances header, Instances data, int[][] values)
+			throws Exception {
+		buildFromCounts(header, count(header, data, values));
+	}
+
+	/**
+	 * count either the instances or the values, null if there is no
+	 * super-parent set
+	 */
+	private SuperParentCounts count(Instances header, final Instances data,
+			final int[][] values) throws Exception {
+		List<int[]> superParents = enumerateSuperParents(header.numAttributes(),
+				header.classIndex(), m_NDependence);
+		if (superParents.isEmpty()) {
 			System.out.println("No Classifier is construted");
+			return null;
+		}
+
+		// AODE and A2DE use dense tables; beyond that the tables grow with the
+		// product of n cardinalities, so only the super-parents values that
+		// occur are stored, and those below m_Limit are not counted at all.
+		// The components ignore these values at prediction anyway, so the
+		// pruning only saves memory and the predictions are those of the
+		// unpruned tables
+		boolean sparse = m_NDependence > 2;
+		final SuperParentCounts counts = new SuperParentCounts(header,
+				superParents, sparse);
+		if (sparse && data != null)
+			counts.setPruning(data, m_Limit);
+		else if (sparse)
+			counts.setPruning(values, m_Limit);
+		// count all the components in a single pass over the data, each
+		// thread counts its own range of components
+		int numTasks = Math.max(1, Math.min(m_NumThreads, superParents.size()));
+		List<Callable<Object>> tasks = new ArrayList<Callable<Object>>();
+		for (int t = 0; t < numTasks; t++) {
+			final int from = superParents.size() * t / numTasks;
+			final int to = superParents.size() * (t + 1) / numTasks;
+			tasks.add(new Callable<Object>() {
+				public Object call() {
+					if (data != null)
+						counts.addInstances(data, from, to);
+					else
+						counts.addValues(values, from, to);
+					return null;
+				}
+			});
+		}
+		ParallelTasks.invokeAll(tasks, m_NumThreads);
+		return counts;
+	}
+
+	public SuperParentCounts countInstances(Instances instances)
+			throws Exception {
+		Instances data = new Instances(instances);
+		data.deleteWithMissingClass();
+		return count(data, data, null);
+	}
+
+	public SuperParentCounts subtractInstances(SuperParentCounts counts,
+			Instances instances) {
+		if (counts == null)
+			return null;
+		SuperParentCounts result = counts.copy();
+		result.subtractInstances(instances);
+		return result;
+	}
+
+	/** Build the ensemble from the counts, which are used as is */
+	public void buildFromCounts(Instances header, SuperParentCounts counts) {
+		m_NumClasses = header.numClasses();
+		m_Classifiers.clear();
+		if (counts == null)
+			return;
+		for (int i = 0; i < counts.superParents.length; i++) {
+			SuperParentNEstimators componetCls = new SuperParentNEstimators();
+			componetCls.setSuperParentsAttIndex(counts.superParents[i]);
+			componetCls.setLimit(m_Limit);
+			// build component classifier
+			componetCls.buildFromCounts(header, counts, i);
+			m_Classifiers.add(componetCls);
+		}
+	}
+
+	/**
+	 * Build the ensemble from the count tables of each component, in the
+	 * order of enumerateSuperParents, e.g. as computed by ParallelAnDE
+	 * 
+	 * @param header
+	 *            the dataset description
+	 * @param counts
+	 *            counts[att][class][superparents value][att value] of each
+	 *            component, counts[classIndex] holds the class and superparents
+	 *            counts
+	 */
+	public void buildFromCounts(Instances header, List<double[][][][]> counts) {
+		m_NumClasses = header.numClasses();
+		m_Classifiers.clear();
+		List<int[]> superParents = enumerateSuperParents(header.numAttributes(),
+				header.classIndex(), m_NDependence);
+		if (superParents.size() != counts.size())
+			throw new IllegalArgumentException("expect " + superParents.size()
+					+ " components but got " + counts.size());
+		for (int i = 0; i < superParents.size(); i++) {
+			SuperParentNEstimators componetCls = new SuperParentNEstimators();
+			componetCls.setSuperParentsAttIndex(superParents.get(i));
+			componetCls.setLimit(m_Limit);
+			componetCls.buildFromCounts(header, counts.get(i));
+			m_Classifiers.add(componetCls);
 		}
 	}
 
+	/**
+	 * All the combinations of n super-parents in lexicographic order, the
+	 * class attribute excluded
+	 */
+	public static List<int[]> enumerateSuperParents(int numAttributes,
+			int classIndex, int n) {
+		List<int[]> result = new ArrayList<int[]>();
+		int[] attributes = new int[numAttributes - 1];
+		for (int att = 0, k = 0; att < numAttributes; att++)
+			if (att != classIndex)
+				attributes[k++] = att;
+		if (n < 1 || n > attributes.length)
+			return result;
+
+		int[] pos = new int[n];
+		for (int i = 0; i < n; i++)
+			pos[i] = i;
+		while (true) {
+			int[] superParents = new int[n];
+			for (int i = 0; i < n; i++)
+				superParents[i] = attributes[pos[i]];
+			result.add(superParents);
+			// next combination
+			int i = n - 1;
+			while (i >= 0 && pos[i] == attributes.length - n + i)
+				i--;
+			if (i < 0)
+				break;
+			pos[i]++;
+			for (int j = i + 1; j < n; j++)
+				pos[j] = pos[j - 1] + 1;
+		}
+		return result;
+	}
+
+	/**
+	 * distributionForInstance of every instance, computed in parallel over
+	 * batches of instances with getNumThreads threads
+	 */
+	public double[][] distributionsForInstances(Instances instances)
+			throws Exception {
+		return ParallelTasks.distributionsForInstances(this, instances,
+				m_NumThreads);
+	}
+
 	@Override
 	public double[] distributionForInstance(Instance instance) throws Exception {
 		double[] distpro = new double[m_NumClasses];
-		for (Classifier cls : m_Classifiers) {
-			double[] pro = cls.distributionForInstance(instance);
-			for (int i = 0; i < pro.length; i++)
-				distpro[i] += pro[i];
-		}
-		Utils.normalize(distpro);
+		distributionForValues(toValues(instance), distpro, 0,
+				new double[m_NumClasses]);
 		return distpro;
 	}
 
+	public int numClasses() {
+		return m_NumClasses;
+	}
+
+	public void distributionsForValues(int[][] values, double[] output) {
+		double[] pro = new double[m_NumClasses];
+		for (int k = 0; k < values.length; k++)
+			distributionForValues(values[k], output, k * m_NumClasses, pro);
+	}
+
+	/**
+	 * the normalized sum of the component distributions, written to
+	 * distpro[offset, offset + m_NumClasses), using pro as scratch space
+	 */
+	private void distributionForValues(int[] values, double[] distpro,
+			int offset, double[] pro) {
+		Arrays.fill(distpro, offset, offset + m_NumClasses, 0);
+		for (SuperParentNEstimators cls : m_Classifiers) {
+			cls.distributionForValues(values, pro, 0);
+			for (int i = 0; i < m_NumClasses; i++)
+				distpro[offset + i] += pro[i];
+		}
+		normalize(distpro, offset, m_NumClasses);
+	}
+
+	/** the index of the value of each attribute of the instance */
+	static int[] toValues(Instance instance) {
+		int[] values = new int[instance.numAttributes()];
+		for (int att = 0; att < values.length; att++)
+			values[att] = (int) instance.value(att);
+		return values;
+	}
+
+	/**
+	 * weka.core.Utils.normalize of the range [from, from + length) of the
+	 * array
+	 */
+	static void normalize(double[] doubles, int from, int length) {
+		double sum = 0;
+		for (int i = from; i < from + length; i++)
+			sum += doubles[i];
+		if (Double.isNaN(sum))
+			throw new IllegalArgumentException(
+					"Can't normalize array. Sum is NaN.");
+		if (sum == 0)
+			throw new IllegalArgumentException(
+					"Can't normalize array. Sum is zero.");
+		for (int i = from; i < from + length; i++)
+			doubles[i] /= sum;
+	}
+
+	/**
+	 * Joint counts of several super-parent sets, filled in a single pass over
+	 * the data. For component i, classCounts[i][p * numClasses + c] is the
+	 * count of class c and super-parents value p, and counts[i][(p *
+	 * numClasses + c) * numAttValues + valueOffset[att] + v] is the count of
+	 * value v of attribute att given p and c.
+	 * <p>
+	 * In sparse mode p is replaced by a row, which is only allocated the first
+	 * time its super-parents value is counted, and rowIndex[i] maps the
+	 * super-parents value to 1 + its row. With setPruning, the super-parents
+	 * values containing an attribute value less frequent than the limit are
+	 * not counted, since they can not be more frequent than any of their
+	 * attribute values; classTotals still counts every instance, so the class
+	 * priors of the components are those of the unpruned tables.
+	 */
+	public static class SuperParentCounts implements java.io.Serializable {
+
+		/** for serialization */
+		public static final long serialVersionUID = 6151062296716339817L;
+
+		/** initial number of rows of a component in sparse mode */
+		private static final int INITIAL_ROWS = 16;
+
+		final int[][] superParents;
+
+		final int numClasses;
+
+		final int classIndex;
+
+		/** number of values of each attribute */
+		final int[] numValues;
+
+		/** offset of each attribute among all the attribute values */
+		final int[] valueOffset;
+
+		/** total number of values of all the non-class attributes */
+		final int numAttValues;
+
+		/** the non-class, non-super-parent attributes of each component */
+		final int[][] children;
+
+		/** number of combinations of the super-parents values */
+		final long[] parentsCardinality;
+
+		/** the super-parents value to 1 + its row, null in dense mode */
+		final OpenLongIntHashMap[] rowIndex;
+
+		/** number of rows used by each component */
+		final int[] numRows;
+
+		final double[][] classCounts;
+
+		/** class counts of all the instances of each component, pruned or not */
+		final double[][] classTotals;
+
+		final double[][] counts;
+
+		/** frequency of each attribute value, null if not pruned */
+		private double[] valueFrequencies;
+
+		private double limit;
+
+		/** a copy of other, the count tables and row indexes are copied */
+		private SuperParentCounts(SuperParentCounts other) {
+			superParents = other.superParents;
+			numClasses = other.numClasses;
+			classIndex = other.classIndex;
+			numValues = other.numValues;
+			valueOffset = other.valueOffset;
+			numAttValues = other.numAttValues;
+			children = other.children;
+			parentsCardinality = other.parentsCardinality;
+			valueFrequencies = other.valueFrequencies == null ? null
+					: other.valueFrequencies.clone();
+			limit = other.limit;
+			numRows = other.numRows.clone();
+			classCounts = new double[other.classCounts.length][];
+			classTotals = new double[other.classTotals.length][];
+			counts = new double[other.counts.length][];
+			for (int i = 0; i < counts.length; i++) {
+				classCounts[i] = other.classCounts[i].clone();
+				classTotals[i] = other.classTotals[i].clone();
+				counts[i] = other.counts[i].clone();
+			}
+			if (other.rowIndex == null) {
+				rowIndex = null;
+			} else {
+				rowIndex = new OpenLongIntHashMap[other.rowIndex.length];
+				for (int i = 0; i < rowIndex.length; i++)
+					rowIndex[i] = (OpenLongIntHashMap) other.rowIndex[i].clone();
+			}
+		}
+
+		public SuperParentCounts copy() {
+			return new SuperParentCounts(this);
+		}
+
+		public SuperParentCounts(Instances header, List<int[]> superParents) {
+			this(header, superParents, false);
+		}
+
+		public SuperParentCounts(Instances header, List<int[]> superParents,
+				boolean sparse) {
+			int numAttributes = header.numAttributes();
+			this.superParents = superParents.toArray(new int[superParents.size()][]);
+			numClasses = header.numClasses();
+			classIndex = header.classIndex();
+			numValues = new int[numAttributes];
+			valueOffset = new int[numAttributes];
+			int offset = 0;
+			for (int att = 0; att < numAttributes; att++) {
+				numValues[att] = header.attribute(att).numValues();
+				if (att == classIndex)
+					continue;
+				valueOffset[att] = offset;
+				offset += numValues[att];
+			}
+			numAttValues = offset;
+
+			int size = this.superParents.length;
+			children = new int[size][];
+			parentsCardinality = new long[size];
+			rowIndex = sparse ? new OpenLongIntHashMap[size] : null;
+			numRows = new int[size];
+			classCounts = new double[size][];
+			classTotals = new double[size][];
+			counts = new double[size][];
+			for (int i = 0; i < size; i++) {
+				int[] parents = this.superParents[i];
+				children[i] = new int[numAttributes - 1 - parents.length];
+				for (int att = 0, k = 0; att < numAttributes; att++)
+					if (att != classIndex
+							&& !SuperParentNEstimators.contains(parents, att))
+						children[i][k++] = att;
+				parentsCardinality[i] = 1;
+				for (int parent : parents)
+					parentsCardinality[i] *= numValues[parent];
+
+				int rows;
+				if (sparse) {
+					rowIndex[i] = new OpenLongIntHashMap();
+					rows = INITIAL_ROWS;
+				} else {
+					if (parentsCardinality[i] * numClasses * numAttValues > Integer.MAX_VALUE)
+						throw new IllegalArgumentException(
+								"too many super-parents values for dense counts: "
+										+ parentsCardinality[i]);
+					rows = (int) parentsCardinality[i];
+					numRows[i] = rows;
+				}
+				classCounts[i] = new double[rows * numClasses];
+				classTotals[i] = new double[numClasses];
+				counts[i] = new double[rows * numClasses * numAttValues];
+			}
+		}
+
+		/**
+		 * do not count the super-parents values containing an attribute value
+		 * whose frequency in the instances is less than limit
+		 */
+		public void setPruning(Instances instances, double limit) {
+			this.limit = limit;
+			valueFrequencies = new double[numAttValues];
+			for (int k = 0; k < instances.numInstances(); k++) {
+				Instance inst = instances.instance(k);
+				for (int att = 0; att < numValues.length; att++)
+					if (att != classIndex)
+						valueFrequencies[valueOffset[att] + (int) inst.value(att)] += inst
+								.weight();
+			}
+		}
+
+		/** setPruning for integer-coded instances of weight 1 */
+		public void setPruning(int[][] values, double limit) {
+			this.limit = limit;
+			valueFrequencies = new double[numAttValues];
+			for (int[] instance : values)
+				for (int att = 0; att < numValues.length; att++)
+					if (att != classIndex)
+						valueFrequencies[valueOffset[att] + instance[att]]++;
+		}
+
+		public void addInstances(Instances instances) {
+			addInstances(instances, 0, superParents.length);
+		}
+
+		/**
+		 * add the instances to the components [fromComponent, toComponent),
+		 * disjoint ranges may be counted concurrently
+		 */
+		public void addInstances(Instances instances, int fromComponent,
+				int toComponent) {
+			int numAttributes = instances.numAttributes();
+			int[] values = new int[numAttributes];
+			for (int k = 0; k < instances.numInstances(); k++) {
+				Instance inst = instances.instance(k);
+				for (int att = 0; att < numAttributes; att++)
+					values[att] = (int) inst.value(att);
+				addInstance(values, inst.weight(), fromComponent, toComponent);
+			}
+		}
+
+		/**
+		 * add the integer-coded instances to the components [fromComponent,
+		 * toComponent)
+		 */
+		public void addValues(int[][] values, int fromComponent,
+				int toComponent) {
+			for (int[] instance : values)
+				addInstance(instance, 1, fromComponent, toComponent);
+		}
+
+		/**
+		 * remove the instances with a class value, which must have been
+		 * added before. The pruning frequencies are reduced too: the rows
+		 * pruned before stay below the limit, and the counts predict as those
+		 * of the remaining instances alone
+		 */
+		public void subtractInstances(Instances instances) {
+			for (int k = 0; k < instances.numInstances(); k++) {
+				Instance inst = instances.instance(k);
+				if (!inst.classIsMissing())
+					addInstance(toValues(inst), -inst.weight());
+			}
+			// after the counts, which were pruned by the frequencies they
+			// were added with
+			if (valueFrequencies == null)
+				return;
+			for (int k = 0; k < instances.numInstances(); k++) {
+				Instance inst = instances.instance(k);
+				if (inst.classIsMissing())
+					continue;
+				for (int att = 0; att < numValues.length; att++)
+					if (att != classIndex)
+						valueFrequencies[valueOffset[att] + (int) inst.value(att)] -= inst
+								.weight();
+			}
+		}
+
+		/** add the integer-coded values of one instance */
+		public void addInstance(int[] values, double weight) {
+			addInstance(values, weight, 0, superParents.length);
+		}
+
+		/**
+		 * add the integer-coded values of one instance to the components
+		 * [fromComponent, toComponent)
+		 */
+		public void addInstance(int[] values, double weight,
+				int fromComponent, int toComponent) {
+			int classVal = values[classIndex];
+			for (int i = fromComponent; i < toComponent; i++) {
+				classTotals[i][classVal] += weight;
+				if (isPruned(superParents[i], values))
+					continue;
+				long parentsValueIndex = 0;
+				for (int parent : superParents[i])
+					parentsValueIndex = parentsValueIndex * numValues[parent]
+							+ values[parent];
+				int row = getRow(i, parentsValueIndex) * numClasses + classVal;
+				classCounts[i][row] += weight;
+
+				double[] componentCounts = counts[i];
+				int base = row * numAttValues;
+				for (int att : children[i])
+					componentCounts[base + valueOffset[att] + values[att]] += weight;
+			}
+		}
+
+		private boolean isPruned(int[] parents, int[] values) {
+			if (valueFrequencies == null)
+				return false;
+			for (int parent : parents)
+				if (valueFrequencies[valueOffset[parent] + values[parent]] < limit)
+					return true;
+			return false;
+		}
+
+		/** the row of the super-parents value, allocated if needed */
+		private int getRow(int i, long parentsValueIndex) {
+			if (rowIndex == null)
+				return (int) parentsValueIndex;
+			int row = rowIndex[i].get(parentsValueIndex) - 1;
+			if (row >= 0)
+				return row;
+
+			row = numRows[i]++;
+			rowIndex[i].put(parentsValueIndex, row + 1);
+			if (classCounts[i].length < numRows[i] * numClasses) {
+				int rows = 2 * row;
+				double[] newClassCounts = new double[rows * numClasses];
+				System.arraycopy(classCounts[i], 0, newClassCounts, 0,
+						classCounts[i].length);
+				classCounts[i] = newClassCounts;
+				double[] newCounts = new double[rows * numClasses * numAttValues];
+				System.arraycopy(counts[i], 0, newCounts, 0, counts[i].length);
+				counts[i] = newCounts;
+			}
+			return row;
+		}
+	}
+
 	/**
 	 * A Super Parent $n$-Dependence Estimator
 	 */
@@ -94,7 +592,7 @@ public class AnDE extends Classifier implements WeightedInstancesHandler {
 
 		private int m_ClassIndex;
 
-		private int m_ClassSuperParentDenominator;
+		private double m_ClassSuperParentDenominator;
 
 		private double m_SumOfInstances;
 
@@ -103,13 +601,37 @@ public class AnDE extends Classifier implements WeightedInstancesHandler {
 		/** Super-parent attribute index for each attribute */
 		private int[] m_SuperParentsAttIndex;
 
-		/** the class and superparent value counts for each combination */
+		/** the class and superparent value counts of each row */
 		private double[][] m_ClassSuperParentCounts;
 
-		/** the CPTs of the n-Dependence Bayesian Network Classifier */
-		private Estimator[][][] m_Distributions;
+		/**
+		 * the superparents value to 1 + its row, null if the rows are indexed
+		 * by the superparents value itself
+		 */
+		private OpenLongIntHashMap m_RowIndex;
+
+		/**
+		 * the CPTs of the n-Dependence Bayesian Network Classifier as flat
+		 * counts, see SuperParentCounts for the layout
+		 */
+		private double[] m_Counts;
+
+		/** number of values of each attribute */
+		private int[] m_NumValues;
+
+		/** offset of each attribute in a row of m_Counts */
+		private int[] m_ValueOffset;
+
+		/** length of a row of m_Counts */
+		private int m_NumAttValues;
 
-		/** The frequency of each attribute value for the dataset */
+		/** the attributes depending on the super-parents and the class */
+		private int[] m_Children;
+
+		/** prior count of each value of each attribute */
+		private double[] m_Priors;
+
+		/** The frequency of the superparents value of each row */
 		private double[] m_Frequencies;
 
 		/** An att's frequency must be this value or more to be a superParent */
@@ -132,114 +654,154 @@ public class AnDE extends Classifier implements WeightedInstancesHandler {
 			// remove instances with missing class
 			instances.deleteWithMissingClass();
 
-			// set the values of the given variables
-			m_NumAttributes = instances.numAttributes();
-			m_NumClasses = instances.numClasses();
-			m_ClassIndex = instances.classIndex();
-
-			// initialize m_Distributions
-			m_Distributions = new DiscreteEstimator[m_NumAttributes][][];
-
-			// calculate the number of combination of superparents
-			int parentsCardinality = 1;
-			for (int iParent = 0; iParent < m_SuperParentsAttIndex.length; iParent++)
-				parentsCardinality *= instances.attribute(
-						m_SuperParentsAttIndex[iParent]).numValues();
-
-			m_Frequencies = new double[parentsCardinality];
-			m_ClassSuperParentCounts = new double[m_NumClasses][parentsCardinality];
-			m_ClassSuperParentDenominator = m_NumClasses * parentsCardinality;
-
-			for (int att = 0; att < m_NumAttributes; att++) {
-				if (att == m_ClassIndex
-						|| contains(m_SuperParentsAttIndex, att))
-					continue;
+			SuperParentCounts counts = new SuperParentCounts(instances,
+					Collections.singletonList(m_SuperParentsAttIndex));
+			counts.addInstances(instances);
+			buildFromCounts(instances, counts, 0);
+		}
 
-				m_Distributions[att] = new DiscreteEstimator[m_NumClasses][parentsCardinality];
-				for (int m = 0; m < m_NumClasses; m++)
-					for (int n = 0; n < parentsCardinality; n++) {
-						int numValues = instances.attribute(att).numValues();
-						if (!m_Estimates) // using laplace estimation
-							m_Distributions[att][m][n] = new DiscreteEstimator(
-									numValues, true);
-						else
-							// using m-esitmation
-							m_Distributions[att][m][n] =
-							// new DiscreteEstimator( numValues, 0.5);
-							new DiscreteEstimator(numValues, m_Weight
-									/ numValues);
+		/**
+		 * Build the estimator from the counts of a counting job, see
+		 * AnDE.buildFromCounts
+		 */
+		public void buildFromCounts(Instances header, double[][][][] counts) {
+			SuperParentCounts flatCounts = new SuperParentCounts(header,
+					Collections.singletonList(m_SuperParentsAttIndex));
+			int numClasses = flatCounts.numClasses;
+			int numAttValues = flatCounts.numAttValues;
+
+			double[][][] classCounts = counts[flatCounts.classIndex];
+			for (int classVal = 0; classVal < numClasses; classVal++)
+				for (int p = 0; p < classCounts[classVal].length; p++)
+					for (double c : classCounts[classVal][p]) {
+						flatCounts.classCounts[0][p * numClasses + classVal] += c;
+						flatCounts.classTotals[0][classVal] += c;
 					}
-			}
 
-			m_ClassCounts = new double[m_NumClasses];
-			// calculate for each instance
-			for (int k = 0; k < instances.numInstances(); k++) {
-				Instance inst = instances.instance(k);
-				int classVal = (int) inst.classValue();
-				m_SumOfInstances += inst.weight();
-				m_ClassCounts[classVal] += inst.weight();
-
-				int parentsValueIndex = 0;
-				for (int iParent = 0; iParent < m_SuperParentsAttIndex.length; iParent++)
-					parentsValueIndex = parentsValueIndex
-							* inst.attribute(m_SuperParentsAttIndex[iParent])
-									.numValues()
-							+ (int) inst.value(m_SuperParentsAttIndex[iParent]);
-
-				m_Frequencies[parentsValueIndex] += inst.weight();
-				m_ClassSuperParentCounts[classVal][parentsValueIndex] += inst
-						.weight();
-
-				for (int att = 0; att < m_NumAttributes; att++) {
-					if (att == m_ClassIndex
-							|| contains(m_SuperParentsAttIndex, att))
-						continue;
-
-					m_Distributions[att][classVal][parentsValueIndex].addValue(
-							inst.value(att), inst.weight());
+			for (int att : flatCounts.children[0])
+				for (int classVal = 0; classVal < numClasses; classVal++)
+					for (int p = 0; p < counts[att][classVal].length; p++)
+						System.arraycopy(counts[att][classVal][p], 0,
+								flatCounts.counts[0], (p * numClasses + classVal)
+										* numAttValues + flatCounts.valueOffset[att],
+								counts[att][classVal][p].length);
+
+			buildFromCounts(header, flatCounts, 0);
+		}
+
+		/**
+		 * Build the estimator from the i-th component of the shared counts, the
+		 * count array is used as is and not copied
+		 */
+		public void buildFromCounts(Instances header, SuperParentCounts counts,
+				int i) {
+			// set the values of the given variables
+			m_NumAttributes = header.numAttributes();
+			m_NumClasses = header.numClasses();
+			m_ClassIndex = header.classIndex();
+			m_NumValues = counts.numValues;
+			m_ValueOffset = counts.valueOffset;
+			m_NumAttValues = counts.numAttValues;
+			m_Children = counts.children[i];
+			m_Counts = counts.counts[i];
+			m_RowIndex = counts.rowIndex == null ? null : counts.rowIndex[i];
+
+			// the number of combination of superparents
+			int numRows = counts.numRows[i];
+			m_Frequencies = new double[numRows];
+			m_ClassSuperParentCounts = new double[m_NumClasses][numRows];
+			m_ClassSuperParentDenominator = m_NumClasses
+					* (double) counts.parentsCardinality[i];
+			// the totals include the instances of the pruned rows
+			m_ClassCounts = counts.classTotals[i].clone();
+			m_SumOfInstances = 0;
+			for (double count : m_ClassCounts)
+				m_SumOfInstances += count;
+
+			double[] classCounts = counts.classCounts[i];
+			for (int row = 0; row < numRows; row++)
+				for (int classVal = 0; classVal < m_NumClasses; classVal++) {
+					double count = classCounts[row * m_NumClasses + classVal];
+					m_ClassSuperParentCounts[classVal][row] = count;
+					m_Frequencies[row] += count;
 				}
+
+			// the same priors as weka.estimators.DiscreteEstimator
+			m_Priors = new double[m_NumAttributes];
+			for (int att : m_Children) {
+				if (!m_Estimates) // using laplace estimation
+					m_Priors[att] = 1;
+				else
+					// using m-esitmation
+					m_Priors[att] = m_Weight / m_NumValues[att];
 			}
 		}
 
+		/**
+		 * P(att = value | class, superparents), where base is the start of the
+		 * (superparents, class) row in m_Counts, or -1 if it has no row, and
+		 * count its total count
+		 */
+		private double getProbability(int base, double count, int att, int value) {
+			double sumOfCounts = count + m_Priors[att] * m_NumValues[att];
+			if (sumOfCounts == 0)
+				return 0;
+			double valueCount = base < 0 ? 0 : m_Counts[base + m_ValueOffset[att]
+					+ value];
+			return (valueCount + m_Priors[att]) / sumOfCounts;
+		}
+
 		@Override
 		public double[] distributionForInstance(Instance inst) {
 			double[] distpro = new double[m_NumClasses];
+			distributionForValues(toValues(inst), distpro, 0);
+			return distpro;
+		}
 
-			int parentsValueIndex = 0;
+		/**
+		 * the distribution of the integer-coded instance, written to
+		 * distpro[offset, offset + m_NumClasses)
+		 */
+		public void distributionForValues(int[] values, double[] distpro,
+				int offset) {
+			Arrays.fill(distpro, offset, offset + m_NumClasses, 0);
+
+			long parentsValueIndex = 0;
 			for (int iParent = 0; iParent < m_SuperParentsAttIndex.length; iParent++) {
 				parentsValueIndex = parentsValueIndex
-						* inst.attribute(m_SuperParentsAttIndex[iParent])
-								.numValues()
-						+ (int) inst.value(m_SuperParentsAttIndex[iParent]);
+						* m_NumValues[m_SuperParentsAttIndex[iParent]]
+						+ values[m_SuperParentsAttIndex[iParent]];
 			}
+			// a superparents value without a row was never counted
+			int row = m_RowIndex == null ? (int) parentsValueIndex : m_RowIndex
+					.get(parentsValueIndex) - 1;
+			double frequency = row < 0 ? 0 : m_Frequencies[row];
 
-			if (m_Frequencies[parentsValueIndex] < m_Limit)
+			if (frequency < m_Limit)
 				// zero estimate which is equivalent to omit this component
 				// classifier's prediction
-				return distpro;
+				return;
 
 			for (int classVal = 0; classVal < m_NumClasses; classVal++) {
+				double pro;
+				double count = row < 0 ? 0
+						: m_ClassSuperParentCounts[classVal][row];
 				if (!m_Estimates) // using laplace estimation
-					distpro[classVal] = (m_ClassSuperParentCounts[classVal][parentsValueIndex] + 1)
+					pro = (count + 1)
 							/ (m_SumOfInstances + m_ClassSuperParentDenominator);
 				else
-					distpro[classVal] = (m_ClassSuperParentCounts[classVal][parentsValueIndex] + m_Weight
-							/ m_ClassSuperParentDenominator)
+					pro = (count + m_Weight / m_ClassSuperParentDenominator)
 							/ (m_SumOfInstances + m_Weight);
 
-				for (int att = 0; att < m_NumAttributes; att++) {
-					if (att == m_ClassIndex
-							|| contains(m_SuperParentsAttIndex, att))
-						continue;
-					distpro[classVal] *= m_Distributions[att][classVal][parentsValueIndex]
-							.getProbability(inst.value(att));
-				}
+				int base = row < 0 ? -1 : (row * m_NumClasses + classVal)
+						* m_NumAttValues;
+				for (int att : m_Children)
+					pro *= getProbability(base, count, att, values[att]);
+				distpro[offset + classVal] = pro;
 			}
 
 			if (!m_JointProbEstimate)
-				Utils.normalize(distpro);
-
-			return distpro;
+				normalize(distpro, offset, m_NumClasses);
 		}
 
 		/** Is the data array contains the given item */
@@ -259,6 +821,14 @@ public class AnDE extends Classifier implements WeightedInstancesHandler {
 			m_SuperParentsAttIndex = superParentsAttIndex;
 		}
 
+		public int getLimit() {
+			return m_Limit;
+		}
+
+		public void setLimit(int limit) {
+			m_Limit = limit;
+		}
+
 		public boolean isMEstimates() {
 			return m_Estimates;
 		}
@@ -276,6 +846,29 @@ public class AnDE extends Classifier implements WeightedInstancesHandler {
 		}
 	}
 
+	/** get the number of threads for training and batch prediction */
+	public int getNumThreads() {
+		return m_NumThreads;
+	}
+
+	/** set the number of threads for training and batch prediction, default 1 */
+	public void setNumThreads(int numThreads) {
+		m_NumThreads = numThreads;
+	}
+
+	/** get the minimum frequency of a super-parents value */
+	public int getLimit() {
+		return m_Limit;
+	}
+
+	/**
+	 * set the minimum frequency of a super-parents value for its component to
+	 * take part in a prediction, default 1
+	 */
+	public void setLimit(int limit) {
+		m_Limit = limit;
+	}
+
 	/** get the NDependence */
 	public int getNDependence() {
 		return m_NDependence;
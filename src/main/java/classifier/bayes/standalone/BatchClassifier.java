@@ -0,0 +1,26 @@
+package classifier.bayes.standalone;
+
+/**
+ * Classifiers that score blocks of integer-coded instances into a
+ * preallocated array, without creating weka Instance objects. The value of
+ * each attribute is the index of its nominal value, in the attribute order of
+ * the training data; the value of the class attribute is ignored.
+ */
+public interface BatchClassifier {
+
+	/** number of doubles written for each instance */
+	int numClasses();
+
+	/**
+	 * Fill output[k * numClasses() + c] with the probability of class c for
+	 * the instance values[k]. Nothing is allocated per instance, so the
+	 * output array can be reused between calls.
+	 *
+	 * @param values
+	 *            the integer-coded instances
+	 * @param output
+	 *            of length at least values.length * numClasses()
+	 */
+	void distributionsForValues(int[][] values, double[] output)
+			throws Exception;
+}
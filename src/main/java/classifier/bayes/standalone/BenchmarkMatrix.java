@@ -0,0 +1,364 @@
+package classifier.bayes.standalone;
+
+import weka.classifiers.Classifier;
+import weka.core.Instances;
+import weka.core.Utils;
+import weka.filters.Filter;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.Callable;
+
+/**
+ * The cross-validation of every classifier on every data set as a matrix of
+ * independent cells. Each data set is read and preprocessed once, then the
+ * (data set, classifier) cells are run on a thread pool, the cells of the
+ * largest data sets first so that the small ones fill the idle threads at the
+ * end. Each cell records its accuracy, standard deviation, wall time, the
+ * peak heap used while it ran and the CostStatistics of its folds; when
+ * several cells run at once, their peaks include the memory of the other
+ * cells.
+ */
+public class BenchmarkMatrix {
+
+	/** the interval between two samples of the heap used, in milliseconds */
+	private static final long SAMPLING_INTERVAL = 10;
+
+	/** the result of a (data set, classifier) cell */
+	public static class Cell {
+		public final String dataset;
+		public final String classifier;
+		public double accuracy = Double.NaN;
+		public double deviation = Double.NaN;
+		public long wallTimeMillis;
+		public long peakHeapBytes;
+		public final CostStatistics costs = new CostStatistics();
+		/** the exception of a failed cell, null otherwise */
+		public String error;
+
+		Cell(String dataset, String classifier) {
+			this.dataset = dataset;
+			this.classifier = classifier;
+		}
+	}
+
+	private final String[] m_Names;
+
+	private final Classifier[] m_Classifiers;
+
+	private final int m_NumThreads;
+
+	/** the largest heap used sampled while each running cell ran */
+	private final List<long[]> m_Running = new ArrayList<long[]>();
+
+	/**
+	 * the classifiers are templates copied by each cell, and names[i] is the
+	 * name of classifiers[i] in the report
+	 */
+	public BenchmarkMatrix(String[] names, Classifier[] classifiers,
+			int numThreads) {
+		if (names.length != classifiers.length)
+			throw new IllegalArgumentException(
+					"one name is needed for each classifier");
+		m_Names = names;
+		m_Classifiers = classifiers;
+		m_NumThreads = numThreads;
+	}
+
+	/**
+	 * Read the data set, the last attribute being the class, and apply the
+	 * preprocessing of printAccuracy: ReplaceMissingValues, supervised MDL
+	 * Discretize and Remove
+	 */
+	public static Instances preprocess(File file) throws Exception {
+		BufferedReader reader = new BufferedReader(new FileReader(file));
+		Instances data;
+		try {
+			data = new Instances(reader);
+		} finally {
+			reader.close();
+		}
+		data.setClassIndex(data.numAttributes() - 1);
+
+		// Replace missing values
+		Filter m_ReplaceMissingValues = new weka.filters.unsupervised.attribute.ReplaceMissingValues();
+		m_ReplaceMissingValues.setInputFormat(data);
+		data = Filter.useFilter(data, m_ReplaceMissingValues);
+
+		// Discretize the numerical attribute using MDL
+		Filter m_Discretize = new weka.filters.supervised.attribute.Discretize();
+		m_Discretize.setInputFormat(data);
+		data = Filter.useFilter(data, m_Discretize);
+
+		// Remove unuseful attributes
+		Filter m_Remove = new weka.filters.unsupervised.attribute.Remove();
+		m_Remove.setInputFormat(data);
+		return Filter.useFilter(data, m_Remove);
+	}
+
+	/**
+	 * Run all the cells; the cells are returned by data set, in the order of
+	 * the files, then by classifier. A data set which can not be read gives
+	 * failed cells.
+	 */
+	public List<Cell> run(File[] files) throws Exception {
+		// preprocess each data set once
+		List<Callable<Object>> reads = new ArrayList<Callable<Object>>();
+		for (final File file : files)
+			reads.add(new Callable<Object>() {
+				public Object call() {
+					try {
+						return preprocess(file);
+					} catch (Exception e) {
+						return e;
+					}
+				}
+			});
+		List<Object> datasets = ParallelTasks.invokeAll(reads, m_NumThreads);
+
+		final List<Cell> cells = new ArrayList<Cell>();
+		List<Integer> order = new ArrayList<Integer>();
+		for (int d = 0; d < files.length; d++)
+			for (int c = 0; c < m_Classifiers.length; c++) {
+				Cell cell = new Cell(files[d].getName(), m_Names[c]);
+				if (datasets.get(d) instanceof Exception)
+					cell.error = datasets.get(d).toString();
+				else
+					order.add(cells.size());
+				cells.add(cell);
+			}
+
+		// the largest data sets first
+		final long[] sizes = new long[files.length];
+		for (int d = 0; d < files.length; d++)
+			if (datasets.get(d) instanceof Instances) {
+				Instances data = (Instances) datasets.get(d);
+				sizes[d] = (long) data.numInstances() * data.numAttributes();
+			}
+		final int numClassifiers = m_Classifiers.length;
+		Collections.sort(order, new Comparator<Integer>() {
+			public int compare(Integer c1, Integer c2) {
+				long s1 = sizes[c1 / numClassifiers];
+				long s2 = sizes[c2 / numClassifiers];
+				return s1 > s2 ? -1 : s1 < s2 ? 1 : c1.compareTo(c2);
+			}
+		});
+
+		List<Callable<Object>> tasks = new ArrayList<Callable<Object>>();
+		for (int index : order) {
+			final Cell cell = cells.get(index);
+			final Instances data = (Instances) datasets.get(index
+					/ numClassifiers);
+			final Classifier classifier = m_Classifiers[index % numClassifiers];
+			tasks.add(new Callable<Object>() {
+				public Object call() {
+					runCell(cell, classifier, data);
+					return null;
+				}
+			});
+		}
+
+		Thread sampler = startSampler();
+		try {
+			ParallelTasks.invokeAll(tasks, m_NumThreads);
+		} finally {
+			sampler.interrupt();
+		}
+		return cells;
+	}
+
+	/**
+	 * the cross-validation of one cell, its folds are run in this thread since
+	 * the cells already use all the threads
+	 */
+	private void runCell(Cell cell, Classifier classifier, Instances data) {
+		long[] peak = new long[] { heapUsed() };
+		synchronized (m_Running) {
+			m_Running.add(peak);
+		}
+		long start = System.nanoTime();
+		try {
+			double[] result = Evaluation.crossValidateModel(classifier, data, 1,
+					cell.costs);
+			cell.accuracy = result[0];
+			cell.deviation = result[1];
+		} catch (Exception e) {
+			cell.error = e.toString();
+		} finally {
+			cell.wallTimeMillis = (System.nanoTime() - start) / 1000000;
+			synchronized (m_Running) {
+				m_Running.remove(peak);
+				cell.peakHeapBytes = Math.max(peak[0], heapUsed());
+			}
+		}
+	}
+
+	private static long heapUsed() {
+		MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+		return memory.getHeapMemoryUsage().getUsed();
+	}
+
+	/** a daemon thread updating the peak of the running cells */
+	private Thread startSampler() {
+		Thread sampler = new Thread("benchmark heap sampler") {
+			public void run() {
+				try {
+					while (!isInterrupted()) {
+						long used = heapUsed();
+						synchronized (m_Running) {
+							for (long[] peak : m_Running)
+								peak[0] = Math.max(peak[0], used);
+						}
+						Thread.sleep(SAMPLING_INTERVAL);
+					}
+				} catch (InterruptedException e) {
+					// the cells are done
+				}
+			}
+		};
+		sampler.setDaemon(true);
+		sampler.start();
+		return sampler;
+	}
+
+	/**
+	 * The accuracy table of printAccuracy: one line per data set with
+	 * accuracy:deviation in percent for each classifier
+	 */
+	public static void writeTable(List<Cell> cells, int numClassifiers,
+			PrintWriter out) {
+		for (int i = 0; i < cells.size(); i += numClassifiers) {
+			out.print(cells.get(i).dataset + ", ");
+			for (int c = 0; c < numClassifiers; c++) {
+				Cell cell = cells.get(i + c);
+				out.print(Utils.roundDouble(cell.accuracy * 100, 2) + ":"
+						+ Utils.roundDouble(cell.deviation * 100, 2));
+				out.print(", ");
+			}
+			out.println();
+		}
+	}
+
+	/** one line per cell */
+	public static void writeCsv(List<Cell> cells, File output)
+			throws IOException {
+		PrintWriter out = new PrintWriter(output, "UTF-8");
+		try {
+			out.println("dataset,classifier,accuracy,deviation,wallTimeMillis,peakHeapBytes,"
+					+ "buildMillisMean,buildMillisP90,predictMicrosP50,predictMicrosP99,"
+					+ "instancesPerSecond,buildAllocatedBytes,predictAllocatedBytes,error");
+			for (Cell cell : cells) {
+				CostStatistics.Histogram build = cell.costs.getBuildTimes();
+				CostStatistics.Histogram predict = cell.costs
+						.getPredictLatencies();
+				out.println(csv(cell.dataset) + "," + csv(cell.classifier) + ","
+						+ cell.accuracy + "," + cell.deviation + ","
+						+ cell.wallTimeMillis + "," + cell.peakHeapBytes + ","
+						+ build.mean() / 1e6 + "," + build.percentile(90) / 1e6
+						+ "," + predict.percentile(50) / 1e3 + ","
+						+ predict.percentile(99) / 1e3 + ","
+						+ cell.costs.instancesPerSecond() + ","
+						+ cell.costs.getBuildAllocatedBytes() + ","
+						+ cell.costs.getPredictAllocatedBytes() + ","
+						+ (cell.error == null ? "" : csv(cell.error)));
+			}
+		} finally {
+			out.close();
+		}
+	}
+
+	/** an array of one object per cell */
+	public static void writeJson(List<Cell> cells, File output)
+			throws IOException {
+		PrintWriter out = new PrintWriter(output, "UTF-8");
+		try {
+			out.println("[");
+			for (int i = 0; i < cells.size(); i++) {
+				Cell cell = cells.get(i);
+				CostStatistics.Histogram build = cell.costs.getBuildTimes();
+				CostStatistics.Histogram predict = cell.costs
+						.getPredictLatencies();
+				out.print("  {\"dataset\": " + json(cell.dataset)
+						+ ", \"classifier\": " + json(cell.classifier)
+						+ ", \"accuracy\": " + json(cell.accuracy)
+						+ ", \"deviation\": " + json(cell.deviation)
+						+ ", \"wallTimeMillis\": " + cell.wallTimeMillis
+						+ ", \"peakHeapBytes\": " + cell.peakHeapBytes
+						+ ", \"buildNanos\": " + json(build)
+						+ ", \"predictNanos\": " + json(predict)
+						+ ", \"instancesPerSecond\": "
+						+ json(cell.costs.instancesPerSecond())
+						+ ", \"buildAllocatedBytes\": "
+						+ cell.costs.getBuildAllocatedBytes()
+						+ ", \"predictAllocatedBytes\": "
+						+ cell.costs.getPredictAllocatedBytes()
+						+ ", \"error\": "
+						+ (cell.error == null ? "null" : json(cell.error)) + "}");
+				out.println(i + 1 < cells.size() ? "," : "");
+			}
+			out.println("]");
+		} finally {
+			out.close();
+		}
+	}
+
+	/** count, mean and percentiles of the histogram */
+	private static String json(CostStatistics.Histogram histogram) {
+		return "{\"count\": " + histogram.count() + ", \"mean\": "
+				+ json(histogram.mean()) + ", \"p50\": "
+				+ histogram.percentile(50) + ", \"p90\": "
+				+ histogram.percentile(90) + ", \"p99\": "
+				+ histogram.percentile(99) + ", \"max\": " + histogram.max()
+				+ "}";
+	}
+
+	/** the CostStatistics of each cell, with their histograms */
+	public static void writeCosts(List<Cell> cells, File output)
+			throws IOException {
+		PrintWriter out = new PrintWriter(output, "UTF-8");
+		try {
+			for (Cell cell : cells) {
+				out.println(cell.dataset + ", " + cell.classifier + ":");
+				out.print(cell.costs);
+				out.println();
+			}
+		} finally {
+			out.close();
+		}
+	}
+
+	private static String csv(String s) {
+		if (s.indexOf(',') < 0 && s.indexOf('"') < 0 && s.indexOf('\n') < 0)
+			return s;
+		return '"' + s.replace("\"", "\"\"") + '"';
+	}
+
+	/** NaN, the accuracy of a failed cell, is not a JSON number */
+	private static String json(double d) {
+		return Double.isNaN(d) || Double.isInfinite(d) ? "null" : String
+				.valueOf(d);
+	}
+
+	private static String json(String s) {
+		StringBuilder sb = new StringBuilder("\"");
+		for (int i = 0; i < s.length(); i++) {
+			char ch = s.charAt(i);
+			if (ch == '"' || ch == '\\')
+				sb.append('\\').append(ch);
+			else if (ch < 0x20)
+				sb.append(String.format("\\u%04x", (int) ch));
+			else
+				sb.append(ch);
+		}
+		return sb.append('"').toString();
+	}
+}
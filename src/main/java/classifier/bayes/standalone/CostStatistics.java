@@ -0,0 +1,219 @@
+package classifier.bayes.standalone;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+
+/**
+ * The cost of a cross-validation, collected by Evaluation: the build time and
+ * the bytes allocated to build each fold model, and the latency of each
+ * prediction and the bytes allocated by the predictions. The allocations are
+ * those of the thread running the fold, as counted by the ThreadMXBean of the
+ * JVM; the threads of a classifier using several threads are not counted.
+ * The folds may be added concurrently.
+ */
+public class CostStatistics {
+
+	private static final ThreadMXBean THREADS = ManagementFactory
+			.getThreadMXBean();
+
+	/** build time of each fold, in nanoseconds */
+	private final Histogram m_BuildTimes = new Histogram();
+
+	/** latency of each prediction, in nanoseconds */
+	private final Histogram m_PredictLatencies = new Histogram();
+
+	private long m_BuildAllocatedBytes;
+
+	private long m_PredictAllocatedBytes;
+
+	/** false once a fold was run without allocation counts */
+	private boolean m_AllocationsCounted = true;
+
+	/**
+	 * the bytes allocated by the current thread so far, or -1 if the JVM does
+	 * not count them
+	 */
+	public static long currentThreadAllocatedBytes() {
+		if (THREADS instanceof com.sun.management.ThreadMXBean) {
+			com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) THREADS;
+			if (threads.isThreadAllocatedMemorySupported()
+					&& threads.isThreadAllocatedMemoryEnabled())
+				return threads.getThreadAllocatedBytes(Thread.currentThread()
+						.getId());
+		}
+		return -1;
+	}
+
+	/**
+	 * add the costs of a fold; the allocated bytes are -1 when they were not
+	 * counted
+	 */
+	public synchronized void addFold(long buildNanos, long buildBytes,
+			Histogram predictLatencies, long predictBytes) {
+		m_BuildTimes.record(buildNanos);
+		m_PredictLatencies.add(predictLatencies);
+		if (buildBytes < 0 || predictBytes < 0)
+			m_AllocationsCounted = false;
+		m_BuildAllocatedBytes += buildBytes;
+		m_PredictAllocatedBytes += predictBytes;
+	}
+
+	public synchronized Histogram getBuildTimes() {
+		return m_BuildTimes.copy();
+	}
+
+	public synchronized Histogram getPredictLatencies() {
+		return m_PredictLatencies.copy();
+	}
+
+	/** the bytes allocated by all the builds, or -1 if not counted */
+	public synchronized long getBuildAllocatedBytes() {
+		return m_AllocationsCounted ? m_BuildAllocatedBytes : -1;
+	}
+
+	/** the bytes allocated by all the predictions, or -1 if not counted */
+	public synchronized long getPredictAllocatedBytes() {
+		return m_AllocationsCounted ? m_PredictAllocatedBytes : -1;
+	}
+
+	/** predictions per second of prediction time */
+	public synchronized double instancesPerSecond() {
+		return m_PredictLatencies.total() == 0 ? 0 : m_PredictLatencies
+				.count() * 1e9 / m_PredictLatencies.total();
+	}
+
+	public synchronized String toString() {
+		StringBuilder sb = new StringBuilder();
+		sb.append("build time per fold: ").append(
+				m_BuildTimes.summary(1000000, "ms")).append('\n');
+		sb.append(m_BuildTimes.toString(1000000, "ms"));
+		sb.append("prediction latency: ").append(
+				m_PredictLatencies.summary(1000, "us")).append('\n');
+		sb.append(m_PredictLatencies.toString(1000, "us"));
+		sb.append(String.format("instances/second: %.1f%n",
+				instancesPerSecond()));
+		if (m_AllocationsCounted)
+			sb.append("allocated bytes: build ").append(m_BuildAllocatedBytes)
+					.append(", prediction ").append(m_PredictAllocatedBytes)
+					.append('\n');
+		return sb.toString();
+	}
+
+	/**
+	 * A histogram of non-negative longs with logarithmic buckets: 8 buckets
+	 * per power of two, so a percentile is within 12.5% of the exact value.
+	 * The exact count, total and maximum are kept. Not thread-safe.
+	 */
+	public static class Histogram {
+
+		/** log2 of the number of buckets per power of two */
+		private static final int SUB_BITS = 3;
+
+		private static final int SUB = 1 << SUB_BITS;
+
+		private final long[] m_Counts = new long[(64 - SUB_BITS) * SUB];
+
+		private long m_Count;
+
+		private long m_Total;
+
+		private long m_Max;
+
+		public void record(long value) {
+			value = Math.max(0, value);
+			m_Counts[bucket(value)]++;
+			m_Count++;
+			m_Total += value;
+			m_Max = Math.max(m_Max, value);
+		}
+
+		public void add(Histogram other) {
+			for (int i = 0; i < m_Counts.length; i++)
+				m_Counts[i] += other.m_Counts[i];
+			m_Count += other.m_Count;
+			m_Total += other.m_Total;
+			m_Max = Math.max(m_Max, other.m_Max);
+		}
+
+		public Histogram copy() {
+			Histogram copy = new Histogram();
+			copy.add(this);
+			return copy;
+		}
+
+		/** the values below SUB have a bucket each */
+		static int bucket(long value) {
+			if (value < SUB)
+				return (int) value;
+			int exp = 63 - Long.numberOfLeadingZeros(value);
+			return (exp - SUB_BITS + 1) * SUB
+					+ (int) ((value >>> (exp - SUB_BITS)) - SUB);
+		}
+
+		/** the largest value of the bucket */
+		static long upperBound(int bucket) {
+			if (bucket < SUB)
+				return bucket;
+			int shift = bucket / SUB - 1;
+			long low = (long) (SUB + bucket % SUB) << shift;
+			return low + (1L << shift) - 1;
+		}
+
+		public long count() {
+			return m_Count;
+		}
+
+		public long total() {
+			return m_Total;
+		}
+
+		public long max() {
+			return m_Max;
+		}
+
+		public double mean() {
+			return m_Count == 0 ? 0 : (double) m_Total / m_Count;
+		}
+
+		/**
+		 * the upper bound of the bucket of the value of rank ceil(p% *
+		 * count), at most the maximum; 0 for an empty histogram
+		 */
+		public long percentile(double p) {
+			long rank = Math.max(1, (long) Math.ceil(p / 100 * m_Count));
+			long seen = 0;
+			for (int i = 0; i < m_Counts.length; i++) {
+				seen += m_Counts[i];
+				if (seen >= rank)
+					return Math.min(upperBound(i), m_Max);
+			}
+			return m_Max;
+		}
+
+		/** count, mean and percentiles in the given unit */
+		public String summary(double unitNanos, String unit) {
+			return String.format(
+					"n=%d mean=%.3f p50=%.3f p90=%.3f p99=%.3f max=%.3f (%s)",
+					m_Count, mean() / unitNanos, percentile(50) / unitNanos,
+					percentile(90) / unitNanos, percentile(99) / unitNanos,
+					m_Max / unitNanos, unit);
+		}
+
+		/** one line per non-empty power of two range, in the given unit */
+		public String toString(double unitNanos, String unit) {
+			StringBuilder sb = new StringBuilder();
+			for (int first = 0; first < m_Counts.length; first += SUB) {
+				long count = 0;
+				for (int i = first; i < first + SUB; i++)
+					count += m_Counts[i];
+				if (count == 0)
+					continue;
+				long low = first == 0 ? 0 : upperBound(first - 1) + 1;
+				sb.append(String.format("  [%.3f, %.3f] %s: %d%n", low
+						/ unitNanos, upperBound(first + SUB - 1) / unitNanos,
+						unit, count));
+			}
+			return sb.toString();
+		}
+	}
+}
@@ -0,0 +1,31 @@
+package classifier.bayes.standalone;
+
+import weka.core.Instances;
+
+/**
+ * Classifiers whose model only depends on additive counts of the training
+ * instances. The model of the training data without some instances can then
+ * be built from the counts of all the training data minus the counts of those
+ * instances, which Evaluation uses to build the fold models of a
+ * cross-validation without counting each training set again.
+ *
+ * @param <C>
+ *            the type of the counts
+ */
+public interface CountBasedClassifier<C> {
+
+	/**
+	 * count the instances with a class value, using the options of this
+	 * classifier
+	 */
+	C countInstances(Instances instances) throws Exception;
+
+	/**
+	 * a copy of the counts minus the counts of the instances, which must have
+	 * been counted into them
+	 */
+	C subtractInstances(C counts, Instances instances) throws Exception;
+
+	/** build the model from the counts, which may be kept by the model */
+	void buildFromCounts(Instances header, C counts) throws Exception;
+}
@@ -8,14 +8,11 @@ import weka.classifiers.trees.J48;
 import weka.classifiers.trees.RandomForest;
 import weka.core.Instance;
 import weka.core.Instances;
-import weka.core.Utils;
-import weka.filters.Filter;
 
-import java.io.BufferedReader;
 import java.io.File;
-import java.io.FileReader;
-import java.io.PrintStream;
+import java.io.PrintWriter;
 import java.util.*;
+import java.util.concurrent.Callable;
 
 /**
  * Cross-validation for calculating the accuracy and standard deviation for each
@@ -25,44 +22,168 @@ public class Evaluation {
 
   /**
    * Cross-validation for calculating the accuracy and standard deviation for
-   * each classifier
+   * each classifier, with one thread per available processor
    */
   public static double[] crossValidateModel(Classifier classifier,
                                             Instances data) throws Exception {
+    return crossValidateModel(classifier, data, Runtime.getRuntime()
+            .availableProcessors());
+  }
+
+  /**
+   * Cross-validation for calculating the accuracy and standard deviation for
+   * each classifier. Each run is a task on numThreads threads that splits its
+   * folds in turn, with the same random numbers as a sequential run, and
+   * builds and tests the fold models one at a time, so the results do not
+   * depend on numThreads and at most numThreads folds are held at once.
+   * Without noise, the fold models of a CountBasedClassifier are built from
+   * the counts of the data minus the counts of the test fold, the data being
+   * counted once.
+   */
+  public static double[] crossValidateModel(Classifier classifier,
+                                            Instances data, int numThreads) throws Exception {
+    return crossValidateModel(classifier, data, numThreads, null);
+  }
+
+  /**
+   * crossValidateModel, adding the build time, prediction latencies and
+   * allocations of each fold to costs unless it is null. The build of a
+   * CountBasedClassifier fold is the subtraction of the test fold and the
+   * build from the counts.
+   */
+  public static double[] crossValidateModel(final Classifier classifier,
+                                            final Instances data, int numThreads,
+                                            final CostStatistics costs) throws Exception {
     int number = 10; // number of runs for cross-validation
-    int folds = 10; // number of n-fold in the cross-validation
-    double noiseRate = 0.00; // the percentage of introduced noise in the
+    final int folds = 10; // number of n-fold in the cross-validation
+    final double noiseRate = 0.00; // the percentage of introduced noise in the
     // class label
 
-    List<Double> results = new ArrayList<Double>();
+    if (classifier instanceof CountBasedClassifier && noiseRate == 0.00)
+      return crossValidateCounts((CountBasedClassifier<?>) classifier, data,
+              number, folds, numThreads, costs);
+
+    List<Callable<List<Double>>> tasks = new ArrayList<Callable<List<Double>>>();
     for (int seed = 0; seed < number; seed++) {
-      Instances tempData = new Instances(data);
-      Random random = new Random(seed + 1);
-      tempData.randomize(random);
-      if (tempData.classAttribute().isNominal()) {
-        tempData.stratify(folds);
-      }
+      final int runSeed = seed;
+      tasks.add(new Callable<List<Double>>() {
+        public List<Double> call() throws Exception {
+          Instances tempData = new Instances(data);
+          Random random = new Random(runSeed + 1);
+          tempData.randomize(random);
+          if (tempData.classAttribute().isNominal()) {
+            tempData.stratify(folds);
+          }
 
-      for (int i = 0; i < folds; i++) { // cross-validation
-        Instances tempTrain = tempData.trainCV(folds, i, random);
-        Instances tempTest = tempData.testCV(folds, i);
-        Classifier copiedClassifier = Classifier.makeCopy(classifier);
-        if (noiseRate > 0.00)
-          tempTrain = introduceRandomNoise(tempTrain, noiseRate); //
-        copiedClassifier.buildClassifier(tempTrain);
-
-        int correctNum = 0;
-        for (int j = 0; j < tempTest.numInstances(); j++) {
-          Instance instance = tempTest.instance(j);
-          if (copiedClassifier.classifyInstance(instance) == instance
-                  .classValue())
-            correctNum++;
+          List<Double> accuracies = new ArrayList<Double>(folds);
+          for (int i = 0; i < folds; i++) { // cross-validation
+            Instances tempTrain = tempData.trainCV(folds, i, random);
+            Instances tempTest = tempData.testCV(folds, i);
+            if (noiseRate > 0.00)
+              tempTrain = introduceRandomNoise(tempTrain, noiseRate); //
+            accuracies.add(accuracy(classifier, tempTrain, tempTest, costs));
+          }
+          return accuracies;
         }
-        results.add(correctNum * 1.0 / tempTest.numInstances());
+      });
+    }
+    // the results are in the order of the tasks
+    return computeAveAndVariance(concat(ParallelTasks.invokeAll(tasks,
+            numThreads)));
+  }
 
-      }
+  /**
+   * Cross-validation by fold subtraction, with the same folds as
+   * crossValidateModel
+   */
+  private static <C> double[] crossValidateCounts(
+          final CountBasedClassifier<C> classifier, final Instances data,
+          int number, final int folds, int numThreads,
+          final CostStatistics costs) throws Exception {
+    final Instances header = new Instances(data, 0);
+    final C counts = classifier.countInstances(data);
+
+    List<Callable<List<Double>>> tasks = new ArrayList<Callable<List<Double>>>();
+    for (int seed = 0; seed < number; seed++) {
+      final int runSeed = seed;
+      tasks.add(new Callable<List<Double>>() {
+        @SuppressWarnings("unchecked")
+        public List<Double> call() throws Exception {
+          Instances tempData = new Instances(data);
+          Random random = new Random(runSeed + 1);
+          tempData.randomize(random);
+          if (tempData.classAttribute().isNominal()) {
+            tempData.stratify(folds);
+          }
+
+          List<Double> accuracies = new ArrayList<Double>(folds);
+          for (int i = 0; i < folds; i++) {
+            // the test folds do not depend on the random numbers trainCV uses
+            Instances tempTest = tempData.testCV(folds, i);
+            Classifier copy = Classifier.makeCopy((Classifier) classifier);
+            CountBasedClassifier<C> foldClassifier = (CountBasedClassifier<C>) copy;
+            long bytes = CostStatistics.currentThreadAllocatedBytes();
+            long start = System.nanoTime();
+            foldClassifier.buildFromCounts(header, foldClassifier
+                    .subtractInstances(counts, tempTest));
+            long buildNanos = System.nanoTime() - start;
+            accuracies.add(accuracy(copy, tempTest, costs, buildNanos,
+                    bytes < 0 ? -1
+                            : CostStatistics.currentThreadAllocatedBytes() - bytes));
+          }
+          return accuracies;
+        }
+      });
+    }
+    return computeAveAndVariance(concat(ParallelTasks.invokeAll(tasks,
+            numThreads)));
+  }
+
+  /** the accuracies of the runs, run after run */
+  private static List<Double> concat(List<List<Double>> runs) {
+    List<Double> results = new ArrayList<Double>();
+    for (List<Double> run : runs)
+      results.addAll(run);
+    return results;
+  }
+
+  /**
+   * The accuracy on the test data of a copy of the classifier built on the
+   * train data
+   */
+  private static double accuracy(Classifier classifier, Instances train,
+                                 Instances test, CostStatistics costs) throws Exception {
+    Classifier copiedClassifier = Classifier.makeCopy(classifier);
+    long bytes = CostStatistics.currentThreadAllocatedBytes();
+    long start = System.nanoTime();
+    copiedClassifier.buildClassifier(train);
+    long buildNanos = System.nanoTime() - start;
+    return accuracy(copiedClassifier, test, costs, buildNanos, bytes < 0 ? -1
+            : CostStatistics.currentThreadAllocatedBytes() - bytes);
+  }
+
+  /**
+   * The accuracy of the built classifier on the test data, the costs of the
+   * fold are added to costs unless it is null
+   */
+  private static double accuracy(Classifier copiedClassifier, Instances test,
+                                 CostStatistics costs, long buildNanos,
+                                 long buildBytes) throws Exception {
+    CostStatistics.Histogram latencies = new CostStatistics.Histogram();
+    long bytes = CostStatistics.currentThreadAllocatedBytes();
+    int correctNum = 0;
+    for (int j = 0; j < test.numInstances(); j++) {
+      Instance instance = test.instance(j);
+      long start = System.nanoTime();
+      double predicted = copiedClassifier.classifyInstance(instance);
+      latencies.record(System.nanoTime() - start);
+      if (predicted == instance.classValue())
+        correctNum++;
     }
-    return computeAveAndVariance(results);
+    if (costs != null)
+      costs.addFold(buildNanos, buildBytes, latencies, bytes < 0 ? -1
+              : CostStatistics.currentThreadAllocatedBytes() - bytes);
+    return correctNum * 1.0 / test.numInstances();
   }
 
   /**
@@ -112,18 +233,25 @@ public class Evaluation {
   }
 
   /**
-   * Print the result into .csv format file
+   * Print the result into .csv format file, with one thread per available
+   * processor
    */
   public static void printAccuracy(String datasetsDir, String output, String begin, String end) throws Exception {
-    System.setOut(new PrintStream(output));
-    System.setErr(new PrintStream(output));
+    printAccuracy(datasetsDir, output, begin, end, Runtime.getRuntime()
+            .availableProcessors());
+  }
+
+  /**
+   * Print the result into .csv format file. The (data set, classifier) cells
+   * are run by a BenchmarkMatrix on numThreads threads, and the time and
+   * memory of each cell are reported in output.cells.csv and output.json,
+   * with the histograms of its build times and prediction latencies in
+   * output.costs.txt.
+   */
+  public static void printAccuracy(String datasetsDir, String output, String begin, String end,
+                                   int numThreads) throws Exception {
     File[] files = new File(datasetsDir).listFiles();
 //    File[] files = new File[] { new File("D:\\workspace\\data\\weka-uci\\iris.arff")};
-//    Arrays.sort(files, new Comparator<File>() {
-//      public int compare(File arg0, File arg1) {
-//        return arg0.getName().compareTo(arg1.getName());
-//      }
-//    });
     files = generateFileList(files, begin, end);
 
     // Bayes network clasifiers
@@ -149,42 +277,23 @@ public class Evaluation {
     randomForest100.setNumTrees(100);
 
     Classifier[] classifiers = new Classifier[]{rbnc3, rbnc2, rbnc1, nb, hnb, aode, a2de, nb, c45, randomForest10, randomForest100};
+    String[] names = new String[]{"RBNC3", "RBNC2", "RBNC1", "NB", "HNB", "AODE", "A2DE", "NB", "C4.5", "RF10", "RF100"};
 
     // compute the classification accuracy and standard deviation of each
     // algorithm on each data set
-    for (File file : files) {
-      try {
-        Instances data = new Instances(new BufferedReader(new FileReader(file)));
-        data.setClassIndex(data.numAttributes() - 1);
-
-        // Replace missing values
-        Filter m_ReplaceMissingValues = new weka.filters.unsupervised.attribute.ReplaceMissingValues();
-        m_ReplaceMissingValues.setInputFormat(data);
-        data = Filter.useFilter(data, m_ReplaceMissingValues);
-
-        // Discretize the numerical attribute using MDL
-        Filter m_Discretize = new weka.filters.supervised.attribute.Discretize();
-        // Filter m_Discretize = new
-        // weka.filters.unsupervised.attribute.Discretize();
-        m_Discretize.setInputFormat(data);
-        data = Filter.useFilter(data, m_Discretize);
-
-        // Remove unuseful attributes
-        Filter m_Remove = new weka.filters.unsupervised.attribute.Remove();
-        m_Remove.setInputFormat(data);
-        data = Filter.useFilter(data, m_Remove);
-
-        System.out.print(file.getName() + ", ");
-        for (Classifier classifier : classifiers) {
-          double[] result = crossValidateModel(classifier, data);
-          System.out.print(Utils.roundDouble(result[0] * 100, 2) + ":" + Utils.roundDouble(result[1] * 100, 2));
-          System.out.print(", ");
-        }
-        System.out.println();
-      } catch (Exception e) {
-        e.printStackTrace();
-      }
+    List<BenchmarkMatrix.Cell> cells = new BenchmarkMatrix(names, classifiers, numThreads).run(files);
+    PrintWriter out = new PrintWriter(output);
+    try {
+      BenchmarkMatrix.writeTable(cells, classifiers.length, out);
+    } finally {
+      out.close();
     }
+    BenchmarkMatrix.writeCsv(cells, new File(output + ".cells.csv"));
+    BenchmarkMatrix.writeJson(cells, new File(output + ".json"));
+    BenchmarkMatrix.writeCosts(cells, new File(output + ".costs.txt"));
+    for (BenchmarkMatrix.Cell cell : cells)
+      if (cell.error != null)
+        System.err.println(cell.dataset + ", " + cell.classifier + ": " + cell.error);
   }
 
   public static File[] generateFileList(File[] files, String begin, String end) throws Exception {
@@ -209,7 +318,10 @@ public class Evaluation {
   // Test
   public static void main(String[] args) throws Exception {
 //    args = new String[]{"D:\\workspace\\data\\weka-uci", "D:\\workspace\\data\\test.out", "zoo.arff", "zz"};
-    printAccuracy(args[0], args[1], args[2], args[3]);
+    if (args.length > 4)
+      printAccuracy(args[0], args[1], args[2], args[3], Integer.parseInt(args[4]));
+    else
+      printAccuracy(args[0], args[1], args[2], args[3]);
 
   }
 }
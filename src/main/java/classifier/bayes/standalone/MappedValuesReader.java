@@ -0,0 +1,150 @@
+package classifier.bayes.standalone;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+
+/**
+ * Reads integer-coded instances, one per line separated by commas, tabs or
+ * '|' as in the input of ParallelRBNC, by memory-mapping the file
+ * and parsing chunks aligned to line boundaries in parallel. Each instance is
+ * an int[] of the value indexes, ready for buildFromValues.
+ */
+public class MappedValuesReader {
+
+	/** nominal size of a chunk, a chunk is mapped as a whole */
+	private static final long CHUNK_SIZE = 1L << 26;
+
+	public static int[][] read(File input, int numThreads) throws Exception {
+		RandomAccessFile file = new RandomAccessFile(input, "r");
+		try {
+			final FileChannel channel = file.getChannel();
+			long size = channel.size();
+			int numChunks = (int) Math.max(Math.max(1, numThreads), (size
+					+ CHUNK_SIZE - 1)
+					/ CHUNK_SIZE);
+			final long[] bounds = lineBounds(channel, numChunks);
+
+			List<Callable<int[][]>> tasks = new ArrayList<Callable<int[][]>>();
+			for (int c = 0; c < numChunks; c++) {
+				final int k = c;
+				tasks.add(new Callable<int[][]>() {
+					public int[][] call() throws IOException {
+						if (bounds[k + 1] == bounds[k])
+							return new int[0][];
+						return parse(channel.map(FileChannel.MapMode.READ_ONLY,
+								bounds[k], bounds[k + 1] - bounds[k]));
+					}
+				});
+			}
+			List<int[][]> chunks = ParallelTasks.invokeAll(tasks, numThreads);
+
+			int numInstances = 0;
+			for (int[][] chunk : chunks)
+				numInstances += chunk.length;
+			int[][] values = new int[numInstances][];
+			int k = 0;
+			for (int[][] chunk : chunks) {
+				System.arraycopy(chunk, 0, values, k, chunk.length);
+				k += chunk.length;
+			}
+			return values;
+		} finally {
+			file.close();
+		}
+	}
+
+	/**
+	 * the start of each chunk, moved forward to the start of a line, and the
+	 * size of the file
+	 */
+	static long[] lineBounds(FileChannel channel, int numChunks)
+			throws IOException {
+		long size = channel.size();
+		long[] bounds = new long[numChunks + 1];
+		bounds[numChunks] = size;
+		ByteBuffer buf = ByteBuffer.allocate(4096);
+		for (int c = 1; c < numChunks; c++) {
+			// the line running over the nominal start belongs to the
+			// previous chunk
+			long pos = Math.max(size * c / numChunks, bounds[c - 1]);
+			if (pos > 0)
+				pos--;
+			search: while (pos < size) {
+				buf.clear();
+				int n = channel.read(buf, pos);
+				if (n <= 0) {
+					pos = size;
+					break;
+				}
+				for (int i = 0; i < n; i++)
+					if (buf.get(i) == '\n') {
+						pos += i + 1;
+						break search;
+					}
+				pos += n;
+			}
+			bounds[c] = Math.min(pos, size);
+		}
+		return bounds;
+	}
+
+	/**
+	 * the instances of one chunk; like ParallelRBNC.SPLITTER, a separator is
+	 * a ',', '|' or tab, spaces and further commas and tabs around it belong
+	 * to it, and spaces alone do not separate values
+	 */
+	private static int[][] parse(MappedByteBuffer buf) {
+		List<int[]> instances = new ArrayList<int[]>();
+		int[] line = new int[64];
+		int pos = 0, limit = buf.limit();
+		while (pos < limit) {
+			int numValues = 0;
+			boolean inValue = false;
+			// whether the last value was ended by a space, not a separator
+			boolean unseparated = false;
+			int value = 0;
+			for (byte b; pos < limit && (b = buf.get(pos)) != '\n'; pos++) {
+				if (b >= '0' && b <= '9') {
+					if (unseparated)
+						throw new NumberFormatException(
+								"values separated by spaces only");
+					value = value * 10 + (b - '0');
+					inValue = true;
+				} else if (b == ',' || b == '\t' || b == '|' || b == ' '
+						|| b == '\r') {
+					if (inValue) {
+						if (numValues == line.length)
+							line = Arrays.copyOf(line, 2 * numValues);
+						line[numValues++] = value;
+					}
+					value = 0;
+					if (b == ' ' || b == '\r')
+						unseparated |= inValue;
+					else
+						unseparated = false;
+					inValue = false;
+				} else {
+					throw new NumberFormatException(
+							"not an integer-coded value: " + (char) b);
+				}
+			}
+			if (inValue) {
+				if (numValues == line.length)
+					line = Arrays.copyOf(line, 2 * numValues);
+				line[numValues++] = value;
+			}
+			if (numValues > 0)
+				instances.add(Arrays.copyOf(line, numValues));
+			pos++;
+		}
+		return instances.toArray(new int[instances.size()][]);
+	}
+}
@@ -0,0 +1,75 @@
+package classifier.bayes.standalone;
+
+import weka.classifiers.Classifier;
+import weka.core.Instances;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+
+/**
+ * Runs independent tasks on a fixed thread pool. The results are collected in
+ * the order of the tasks, so they do not depend on the scheduling.
+ */
+public class ParallelTasks {
+
+	/**
+	 * Run the tasks with the given number of threads, or in the calling thread
+	 * if numThreads <= 1
+	 */
+	public static <T> List<T> invokeAll(List<? extends Callable<T>> tasks,
+			int numThreads) throws Exception {
+		List<T> results = new ArrayList<T>(tasks.size());
+		if (numThreads <= 1 || tasks.size() <= 1) {
+			for (Callable<T> task : tasks)
+				results.add(task.call());
+			return results;
+		}
+
+		ExecutorService executor = Executors.newFixedThreadPool(Math.min(
+				numThreads, tasks.size()));
+		try {
+			for (Future<T> future : executor.invokeAll(tasks)) {
+				try {
+					results.add(future.get());
+				} catch (ExecutionException e) {
+					if (e.getCause() instanceof Exception)
+						throw (Exception) e.getCause();
+					throw new RuntimeException(e.getCause());
+				}
+			}
+		} finally {
+			executor.shutdown();
+		}
+		return results;
+	}
+
+	/**
+	 * distributionForInstance of every instance, computed in parallel over
+	 * batches of instances; the classifier must be safe for concurrent
+	 * prediction
+	 */
+	public static double[][] distributionsForInstances(
+			final Classifier classifier, final Instances instances,
+			int numThreads) throws Exception {
+		final double[][] result = new double[instances.numInstances()][];
+		int numBatches = Math.max(1, numThreads * 4);
+		int batchSize = Math.max(1, (result.length + numBatches - 1)
+				/ numBatches);
+		List<Callable<Object>> tasks = new ArrayList<Callable<Object>>();
+		for (int start = 0; start < result.length; start += batchSize) {
+			final int from = start;
+			final int to = Math.min(start + batchSize, result.length);
+			tasks.add(new Callable<Object>() {
+				public Object call() throws Exception {
+					for (int k = from; k < to; k++)
+						result[k] = classifier.distributionForInstance(instances
+								.instance(k));
+					return null;
+				}
+			});
+		}
+		invokeAll(tasks, numThreads);
+		return result;
+	}
+}
@@ -0,0 +1,451 @@
+package classifier.bayes.standalone;
+
+import weka.classifiers.Classifier;
+import weka.core.Instance;
+import weka.core.Instances;
+import weka.core.WeightedInstancesHandler;
+
+import java.util.*;
+import java.util.concurrent.Callable;
+
+/**
+ * Randomized Bayesian Network Classifiers on plain count tables. The
+ * components are the same random networks as RandomBayesNetClassifiers, but
+ * they are kept as RBNCCounts, the layout of the ParallelCountingMapper,
+ * instead of weka BayesNet objects, so a model can also be built from the
+ * output of ParallelRBNC. The probabilities are estimated like the
+ * SimpleEstimator of BayesNet, (count + alpha) / (total + alpha * numValues).
+ */
+public class RBNC extends Classifier implements WeightedInstancesHandler,
+		BatchClassifier, CountBasedClassifier<RBNCCounts> {
+	/** for serialization */
+	public static final long serialVersionUID = -2093760405734218813L;
+
+	/** ensemble size */
+	private int m_Size = 20;
+
+	/** Holds upper bound on number of parents, the class excluded */
+	private int m_MaxNrOfParents = 2;
+
+	/** seed of the random structures */
+	private int m_Seed = 1;
+
+	/** prior count of each value */
+	private double m_Alpha = 0.5;
+
+	/** number of threads for training and batch prediction */
+	private int m_NumThreads = 1;
+
+	/** the structures to use instead of random ones, if set */
+	private List<Map<Integer, Set<Integer>>> m_Structures;
+
+	private int m_NumClasses;
+
+	private int m_ClassIndex;
+
+	private RBNCCounts m_Counts;
+
+	/**
+	 * log P(att | class, parents) of each attribute of each component, at
+	 * m_LogProbs[i][k][(class * parentsCardinality + parents value) *
+	 * numValues + value]; for the class attribute log P(class | parents) at
+	 * [parents value * numClasses + class], the class excluded from its
+	 * parents
+	 */
+	private double[][][] m_LogProbs;
+
+	@Override
+	public void buildClassifier(Instances instances) throws Exception {
+		// can classifier handle the data?
+		getCapabilities().testWithFail(instances);
+
+		// remove instances with missing class
+		Instances data = new Instances(instances);
+		data.deleteWithMissingClass();
+		build(data, data, null);
+	}
+
+	/**
+	 * Build the classifier from integer-coded instances, e.g. read by
+	 * MappedValuesReader, each of weight 1
+	 * 
+	 * @param header
+	 *            the dataset description
+	 */
+	public void buildFromValues(Instances header, int[][] values)
+			throws Exception {
+		build(header, null, values);
+	}
+
+	private void build(Instances header, Instances data, int[][] values)
+			throws Exception {
+		buildFromCounts(count(header, data, values));
+	}
+
+	/** count either the instances or the values */
+	private RBNCCounts count(Instances header, final Instances data,
+			final int[][] values) throws Exception {
+		List<Map<Integer, Set<Integer>>> structures = m_Structures;
+		if (structures == null)
+			structures = generateRandomStructures(header.numAttributes(),
+					header.classIndex(), m_Size, m_MaxNrOfParents, new Random(
+							m_Seed));
+
+		// each thread counts its own range of components
+		final RBNCCounts counts = new RBNCCounts(header, structures);
+		int numTasks = Math.max(1, Math.min(m_NumThreads, structures.size()));
+		List<Callable<Object>> tasks = new ArrayList<Callable<Object>>();
+		for (int t = 0; t < numTasks; t++) {
+			final int from = structures.size() * t / numTasks;
+			final int to = structures.size() * (t + 1) / numTasks;
+			tasks.add(new Callable<Object>() {
+				public Object call() {
+					if (data != null)
+						counts.addInstances(data, from, to);
+					else
+						counts.addValues(values, from, to);
+					return null;
+				}
+			});
+		}
+		ParallelTasks.invokeAll(tasks, m_NumThreads);
+		return counts;
+	}
+
+	public RBNCCounts countInstances(Instances instances) throws Exception {
+		Instances data = new Instances(instances);
+		data.deleteWithMissingClass();
+		return count(data, data, null);
+	}
+
+	public RBNCCounts subtractInstances(RBNCCounts counts, Instances instances) {
+		RBNCCounts result = counts.copy();
+		result.subtractInstances(instances);
+		return result;
+	}
+
+	public void buildFromCounts(Instances header, RBNCCounts counts) {
+		buildFromCounts(counts);
+	}
+
+	/**
+	 * Build the ensemble from the count tables of each component, e.g. as
+	 * computed by ParallelRBNC
+	 */
+	public void buildFromCounts(Instances header,
+			List<Map<Integer, Set<Integer>>> structures,
+			List<double[][][][]> counts) {
+		if (structures.size() != counts.size())
+			throw new IllegalArgumentException("expect " + structures.size()
+					+ " components but got " + counts.size());
+		RBNCCounts rbncCounts = new RBNCCounts(header, structures);
+		for (int i = 0; i < counts.size(); i++)
+			rbncCounts.getCounts().set(i, counts.get(i));
+		buildFromCounts(rbncCounts);
+	}
+
+	/** Build the ensemble from the counts, which are kept by the model */
+	public void buildFromCounts(RBNCCounts counts) {
+		m_Counts = counts;
+		m_NumClasses = counts.numClasses();
+		m_ClassIndex = counts.classIndex();
+		int[] numValues = counts.numValues();
+		m_LogProbs = new double[counts.numComponents()][][];
+		for (int i = 0; i < counts.numComponents(); i++) {
+			int[] attributes = counts.attributes(i);
+			int[][] parents = counts.parents(i);
+			m_LogProbs[i] = new double[attributes.length][];
+			for (int k = 0; k < attributes.length; k++) {
+				double[][][] table = counts.getCounts().get(i)[attributes[k]];
+				if (attributes[k] == m_ClassIndex)
+					m_LogProbs[i][k] = classLogProbs(table, parents[k],
+							numValues);
+				else
+					m_LogProbs[i][k] = logProbs(table);
+			}
+		}
+	}
+
+	/** log P(att | class, parents) of the table[class][parents][value] */
+	private double[] logProbs(double[][][] table) {
+		int parentsCardinality = table[0].length;
+		int numValues = table[0][0].length;
+		double[] logProbs = new double[m_NumClasses * parentsCardinality
+				* numValues];
+		for (int classVal = 0; classVal < m_NumClasses; classVal++)
+			for (int p = 0; p < parentsCardinality; p++) {
+				double[] row = table[classVal][p];
+				double total = 0;
+				for (double count : row)
+					total += count;
+				int base = (classVal * parentsCardinality + p) * numValues;
+				for (int v = 0; v < numValues; v++)
+					logProbs[base + v] = Math.log((row[v] + m_Alpha)
+							/ (total + m_Alpha * numValues));
+			}
+		return logProbs;
+	}
+
+	/**
+	 * log P(class | parents) of the class attribute, the class is one of its
+	 * own parents in the count table but not in the result
+	 */
+	private double[] classLogProbs(double[][][] table, int[] parents,
+			int[] numValues) {
+		int otherCardinality = 1;
+		for (int attParent : parents)
+			if (attParent != m_ClassIndex)
+				otherCardinality *= numValues[attParent];
+		double[] counts = new double[otherCardinality * m_NumClasses];
+		for (int classVal = 0; classVal < m_NumClasses; classVal++)
+			for (int p = 0; p < table[classVal].length; p++) {
+				// the index of the parents value without the class
+				int rest = p, other = 0, radix = 1;
+				for (int j = parents.length - 1; j >= 0; j--) {
+					int digit = rest % numValues[parents[j]];
+					rest /= numValues[parents[j]];
+					if (parents[j] != m_ClassIndex) {
+						other += digit * radix;
+						radix *= numValues[parents[j]];
+					}
+				}
+				for (double count : table[classVal][p])
+					counts[other * m_NumClasses + classVal] += count;
+			}
+
+		double[] logProbs = new double[counts.length];
+		for (int other = 0; other < otherCardinality; other++) {
+			double total = 0;
+			for (int classVal = 0; classVal < m_NumClasses; classVal++)
+				total += counts[other * m_NumClasses + classVal];
+			for (int classVal = 0; classVal < m_NumClasses; classVal++)
+				logProbs[other * m_NumClasses + classVal] = Math
+						.log((counts[other * m_NumClasses + classVal] + m_Alpha)
+								/ (total + m_Alpha * m_NumClasses));
+		}
+		return logProbs;
+	}
+
+	/**
+	 * Random structures: each component uses a random ordering of the
+	 * attributes, and the parents of an attribute are chosen uniformly from
+	 * the attributes before it, in addition to the class
+	 */
+	public static List<Map<Integer, Set<Integer>>> generateRandomStructures(
+			int numAttributes, int classIndex, int size, int maxNrOfParents,
+			Random random) {
+		return generateRandomStructures(numAttributes, classIndex, size,
+				maxNrOfParents, null, random);
+	}
+
+	/**
+	 * Random structures whose parents are sampled without replacement from the
+	 * attributes before each attribute in the ordering, with probability
+	 * proportional to weights[att][parent], e.g. the conditional mutual
+	 * information of ParallelStructureLearning; uniformly if weights is null
+	 * or the weights of all the candidates are zero
+	 */
+	public static List<Map<Integer, Set<Integer>>> generateRandomStructures(
+			int numAttributes, int classIndex, int size, int maxNrOfParents,
+			double[][] weights, Random random) {
+		List<Integer> attributes = new ArrayList<Integer>();
+		for (int att = 0; att < numAttributes; att++)
+			if (att != classIndex)
+				attributes.add(att);
+
+		List<Map<Integer, Set<Integer>>> structures = new ArrayList<Map<Integer, Set<Integer>>>();
+		for (int i = 0; i < size; i++) {
+			Map<Integer, Set<Integer>> parentsMap = new HashMap<Integer, Set<Integer>>();
+			List<Integer> order = new ArrayList<Integer>(attributes);
+			Collections.shuffle(order, random);
+			for (int pos = 0; pos < order.size(); pos++) {
+				int att = order.get(pos);
+				Set<Integer> parents = new TreeSet<Integer>();
+				List<Integer> candidates = new ArrayList<Integer>(order.subList(
+						0, pos));
+				int numOfParents = Math.min(pos, maxNrOfParents);
+				while (parents.size() < numOfParents) {
+					int chosen = weights == null ? random.nextInt(candidates
+							.size()) : sampleByWeight(weights[att], candidates,
+							random);
+					parents.add(candidates.remove(chosen));
+				}
+				// add the class attribute
+				parents.add(classIndex);
+				parentsMap.put(att, parents);
+			}
+			// set class attribute to avoid null
+			parentsMap.put(classIndex, new TreeSet<Integer>(Collections
+					.singleton(classIndex)));
+			structures.add(parentsMap);
+		}
+		return structures;
+	}
+
+	/** position of the sampled candidate, uniform if all the weights are zero */
+	private static int sampleByWeight(double[] weights,
+			List<Integer> candidates, Random random) {
+		double total = 0;
+		for (int candidate : candidates)
+			total += weights[candidate];
+		if (total <= 0)
+			return random.nextInt(candidates.size());
+		double r = random.nextDouble() * total;
+		for (int i = 0; i < candidates.size(); i++) {
+			r -= weights[candidates.get(i)];
+			if (r < 0)
+				return i;
+		}
+		return candidates.size() - 1;
+	}
+
+	@Override
+	public double[] distributionForInstance(Instance instance) {
+		double[] distpro = new double[m_NumClasses];
+		distributionForValues(AnDE.toValues(instance), distpro, 0,
+				new double[m_NumClasses]);
+		return distpro;
+	}
+
+	/**
+	 * distributionForInstance of every instance, computed in parallel over
+	 * batches of instances with getNumThreads threads
+	 */
+	public double[][] distributionsForInstances(Instances instances)
+			throws Exception {
+		return ParallelTasks.distributionsForInstances(this, instances,
+				m_NumThreads);
+	}
+
+	public int numClasses() {
+		return m_NumClasses;
+	}
+
+	public void distributionsForValues(int[][] values, double[] output) {
+		double[] pro = new double[m_NumClasses];
+		for (int k = 0; k < values.length; k++)
+			distributionForValues(values[k], output, k * m_NumClasses, pro);
+	}
+
+	/**
+	 * the normalized sum of the normalized component distributions, written
+	 * to distpro[offset, offset + m_NumClasses), using pro as scratch space
+	 */
+	private void distributionForValues(int[] values, double[] distpro,
+			int offset, double[] pro) {
+		Arrays.fill(distpro, offset, offset + m_NumClasses, 0);
+		int[] numValues = m_Counts.numValues();
+		for (int i = 0; i < m_LogProbs.length; i++) {
+			int[] attributes = m_Counts.attributes(i);
+			int[][] parents = m_Counts.parents(i);
+			for (int classVal = 0; classVal < m_NumClasses; classVal++) {
+				double logfP = 0;
+				for (int k = 0; k < attributes.length; k++) {
+					int att = attributes[k];
+					int p = 0;
+					if (att == m_ClassIndex) {
+						for (int attParent : parents[k])
+							if (attParent != m_ClassIndex)
+								p = p * numValues[attParent] + values[attParent];
+						logfP += m_LogProbs[i][k][p * m_NumClasses + classVal];
+					} else {
+						int parentsCardinality = 1;
+						for (int attParent : parents[k]) {
+							p = p * numValues[attParent]
+									+ (attParent == m_ClassIndex ? classVal
+											: values[attParent]);
+							parentsCardinality *= numValues[attParent];
+						}
+						logfP += m_LogProbs[i][k][(classVal * parentsCardinality + p)
+								* numValues[att] + values[att]];
+					}
+				}
+				pro[classVal] = logfP;
+			}
+			// transform from log-space to normal-space
+			double max = pro[0];
+			for (int classVal = 1; classVal < m_NumClasses; classVal++)
+				if (pro[classVal] > max)
+					max = pro[classVal];
+			double sum = 0;
+			for (int classVal = 0; classVal < m_NumClasses; classVal++) {
+				pro[classVal] = Math.exp(pro[classVal] - max);
+				sum += pro[classVal];
+			}
+			// skip a component without a finite estimate
+			if (Double.isNaN(sum))
+				continue;
+			for (int classVal = 0; classVal < m_NumClasses; classVal++)
+				distpro[offset + classVal] += pro[classVal] / sum;
+		}
+		AnDE.normalize(distpro, offset, m_NumClasses);
+	}
+
+	/** the counts the model was built from */
+	public RBNCCounts getCounts() {
+		return m_Counts;
+	}
+
+	/** get the number of component classifiers */
+	public int getSize() {
+		return m_Size;
+	}
+
+	/** set the number of component classifiers, default 20 */
+	public void setSize(int size) {
+		m_Size = size;
+	}
+
+	/** get the max number of parents, the class excluded */
+	public int getMaxNrOfParents() {
+		return m_MaxNrOfParents;
+	}
+
+	/** set the max number of parents, the class excluded, default 2 */
+	public void setMaxNrOfParents(int maxNrOfParents) {
+		m_MaxNrOfParents = maxNrOfParents;
+	}
+
+	/** get the seed of the random structures */
+	public int getSeed() {
+		return m_Seed;
+	}
+
+	/** set the seed of the random structures, default 1 */
+	public void setSeed(int seed) {
+		m_Seed = seed;
+	}
+
+	/** get the prior count of each value */
+	public double getAlpha() {
+		return m_Alpha;
+	}
+
+	/** set the prior count of each value, default 0.5 as in BayesNet */
+	public void setAlpha(double alpha) {
+		m_Alpha = alpha;
+	}
+
+	/** get the number of threads for training and batch prediction */
+	public int getNumThreads() {
+		return m_NumThreads;
+	}
+
+	/** set the number of threads for training and batch prediction, default 1 */
+	public void setNumThreads(int numThreads) {
+		m_NumThreads = numThreads;
+	}
+
+	/** get the structures used instead of random ones, null if random */
+	public List<Map<Integer, Set<Integer>>> getStructures() {
+		return m_Structures;
+	}
+
+	/**
+	 * set the structures to use instead of random ones, in the format of
+	 * ParallelRBNCUtils.readModelStructures
+	 */
+	public void setStructures(List<Map<Integer, Set<Integer>>> structures) {
+		m_Structures = structures;
+	}
+}
@@ -0,0 +1,218 @@
+package classifier.bayes.standalone;
+
+import weka.core.Instance;
+import weka.core.Instances;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The count tables of the components of RBNC, shared by the standalone RBNC
+ * and the ParallelCountingMapper. The structure of each component maps an
+ * attribute to its parents, the class being one of the parents of every
+ * attribute (and the only parent of itself), see ParallelRBNCUtils. The count
+ * of value v of attribute att given class c and parents value p is
+ * getCounts().get(i)[att][c][p][v], where p enumerates the values of the
+ * parents in the iteration order of the parent set.
+ */
+public class RBNCCounts implements java.io.Serializable {
+
+	/** for serialization */
+	public static final long serialVersionUID = -3046925327651530742L;
+
+	private final int m_ClassIndex;
+
+	private final int m_NumClasses;
+
+	/** number of values of each attribute */
+	private final int[] m_NumValues;
+
+	/** the attributes of each component */
+	private final int[][] m_Attributes;
+
+	/** the parents of each attribute of each component */
+	private final int[][][] m_Parents;
+
+	private final List<double[][][][]> m_Counts;
+
+	public RBNCCounts(Instances header,
+			List<Map<Integer, Set<Integer>>> structures) {
+		int numAttributes = header.numAttributes();
+		m_ClassIndex = header.classIndex();
+		m_NumClasses = header.numClasses();
+		m_NumValues = new int[numAttributes];
+		for (int att = 0; att < numAttributes; att++)
+			m_NumValues[att] = header.attribute(att).numValues();
+
+		int size = structures.size();
+		m_Attributes = new int[size][];
+		m_Parents = new int[size][][];
+		m_Counts = new ArrayList<double[][][][]>(size);
+		for (int i = 0; i < size; i++) {
+			Map<Integer, Set<Integer>> structure = structures.get(i);
+			m_Attributes[i] = new int[structure.size()];
+			m_Parents[i] = new int[structure.size()][];
+			double[][][][] componentCounts = new double[numAttributes][][][];
+			int k = 0;
+			for (Map.Entry<Integer, Set<Integer>> entry : structure.entrySet()) {
+				int att = entry.getKey();
+				int[] parents = new int[entry.getValue().size()];
+				int parentsCardinality = 1;
+				int j = 0;
+				for (int attParent : entry.getValue()) {
+					parents[j++] = attParent;
+					parentsCardinality *= m_NumValues[attParent];
+				}
+				m_Attributes[i][k] = att;
+				m_Parents[i][k++] = parents;
+				componentCounts[att] = new double[m_NumClasses][parentsCardinality][m_NumValues[att]];
+			}
+			m_Counts.add(componentCounts);
+		}
+	}
+
+	/** a copy of other, the count tables are copied */
+	private RBNCCounts(RBNCCounts other) {
+		m_ClassIndex = other.m_ClassIndex;
+		m_NumClasses = other.m_NumClasses;
+		m_NumValues = other.m_NumValues;
+		m_Attributes = other.m_Attributes;
+		m_Parents = other.m_Parents;
+		m_Counts = new ArrayList<double[][][][]>(other.m_Counts.size());
+		for (double[][][][] componentCounts : other.m_Counts) {
+			double[][][][] copy = new double[componentCounts.length][][][];
+			for (int att = 0; att < copy.length; att++) {
+				if (componentCounts[att] == null)
+					continue;
+				copy[att] = new double[componentCounts[att].length][][];
+				for (int c = 0; c < copy[att].length; c++) {
+					copy[att][c] = new double[componentCounts[att][c].length][];
+					for (int p = 0; p < copy[att][c].length; p++)
+						copy[att][c][p] = componentCounts[att][c][p].clone();
+				}
+			}
+			m_Counts.add(copy);
+		}
+	}
+
+	public RBNCCounts copy() {
+		return new RBNCCounts(this);
+	}
+
+	public void addInstances(Instances instances) {
+		addInstances(instances, 0, m_Counts.size());
+	}
+
+	/**
+	 * add the instances to the components [fromComponent, toComponent),
+	 * disjoint ranges may be counted concurrently
+	 */
+	public void addInstances(Instances instances, int fromComponent,
+			int toComponent) {
+		for (int k = 0; k < instances.numInstances(); k++) {
+			Instance inst = instances.instance(k);
+			addInstance(AnDE.toValues(inst), inst.weight(), fromComponent,
+					toComponent);
+		}
+	}
+
+	/**
+	 * add the integer-coded instances to the components [fromComponent,
+	 * toComponent)
+	 */
+	public void addValues(int[][] values, int fromComponent, int toComponent) {
+		for (int[] instance : values)
+			addInstance(instance, 1, fromComponent, toComponent);
+	}
+
+	/**
+	 * remove the instances with a class value, which must have been added
+	 * before
+	 */
+	public void subtractInstances(Instances instances) {
+		for (int k = 0; k < instances.numInstances(); k++) {
+			Instance inst = instances.instance(k);
+			if (!inst.classIsMissing())
+				addInstance(AnDE.toValues(inst), -inst.weight(), 0, m_Counts
+						.size());
+		}
+	}
+
+	/** add the integer-coded values of one instance */
+	public void addInstance(int[] values) {
+		addInstance(values, 1, 0, m_Counts.size());
+	}
+
+	/**
+	 * add the integer-coded values of one instance to the components
+	 * [fromComponent, toComponent)
+	 */
+	public void addInstance(int[] values, double weight, int fromComponent,
+			int toComponent) {
+		int classVal = values[m_ClassIndex];
+		for (int i = fromComponent; i < toComponent; i++) {
+			double[][][][] componentCounts = m_Counts.get(i);
+			for (int k = 0; k < m_Attributes[i].length; k++) {
+				int att = m_Attributes[i][k];
+				componentCounts[att][classVal][parentsValueIndex(values,
+						m_Parents[i][k])][values[att]] += weight;
+			}
+		}
+	}
+
+	/** the index of the values of the parents */
+	int parentsValueIndex(int[] values, int[] parents) {
+		int parentsValueIndex = 0;
+		for (int attParent : parents)
+			parentsValueIndex = parentsValueIndex * m_NumValues[attParent]
+					+ values[attParent];
+		return parentsValueIndex;
+	}
+
+	/** add the counts of other, built with the same header and structures */
+	public void add(RBNCCounts other) {
+		for (int i = 0; i < m_Counts.size(); i++) {
+			double[][][][] v1 = m_Counts.get(i);
+			double[][][][] v2 = other.m_Counts.get(i);
+			for (int att = 0; att < v1.length; att++) {
+				if (v1[att] == null)
+					continue;
+				for (int c = 0; c < v1[att].length; c++)
+					for (int p = 0; p < v1[att][c].length; p++)
+						for (int v = 0; v < v1[att][c][p].length; v++)
+							v1[att][c][p][v] += v2[att][c][p][v];
+			}
+		}
+	}
+
+	/** the count tables of each component */
+	public List<double[][][][]> getCounts() {
+		return m_Counts;
+	}
+
+	public int numComponents() {
+		return m_Counts.size();
+	}
+
+	int classIndex() {
+		return m_ClassIndex;
+	}
+
+	int numClasses() {
+		return m_NumClasses;
+	}
+
+	int[] numValues() {
+		return m_NumValues;
+	}
+
+	int[] attributes(int i) {
+		return m_Attributes[i];
+	}
+
+	int[][] parents(int i) {
+		return m_Parents[i];
+	}
+}
@@ -12,14 +12,18 @@ package classifier.bayes.standalone;
 
 import weka.classifiers.Classifier;
 import weka.classifiers.bayes.BayesNet;
+import weka.classifiers.bayes.net.ParentSet;
 import weka.classifiers.bayes.net.search.SearchAlgorithm;
 import weka.core.Instance;
 import weka.core.Instances;
 import weka.core.Utils;
+import weka.estimators.Estimator;
 
 import java.util.*;
+import java.util.concurrent.Callable;
 
-public class RandomBayesNetClassifiers extends Classifier {
+public class RandomBayesNetClassifiers extends Classifier implements
+		BatchClassifier {
 	/** for serialization */
 	private static final long serialVersionUID = 2181987877484697882L;
 
@@ -37,12 +41,21 @@ public class RandomBayesNetClassifiers extends Classifier {
 	/** Number of class labels */
 	private int m_ClassNum;
 
+	/** index of the class attribute */
+	private int m_ClassIndex;
+
 	/** ensemble size */
 	private int m_Size = 20;
 
+	/** number of threads for training and batch prediction */
+	private int m_NumThreads = 1;
+
 	/** Collection of multiple random generate Bayes Network Classifiers */
 	private List<Classifier> m_Ensembles = new ArrayList<Classifier>();;
 
+	/** The components as log probability tables, for batch scoring */
+	private transient volatile CompiledBayesNet[] m_Compiled;
+
 	@Override
 	public void buildClassifier(Instances data) throws Exception {
 		// remove instances with missing class
@@ -50,20 +63,41 @@ public class RandomBayesNetClassifiers extends Classifier {
 		data.deleteWithMissingClass();
 
 		m_ClassNum = data.numClasses();
+		m_ClassIndex = data.classIndex();
 
+		// the components are independent, the seed of each one is its index
+		final Instances trainData = data;
+		List<Callable<Classifier>> tasks = new ArrayList<Callable<Classifier>>();
 		for (int i = 0; i < m_Size; i++) {
-			BayesNet componetBayesNet = new BayesNet();
-			// config the RandomSearch algorithm
-			RandomSearch componentSA = new RandomSearch();
-			componentSA.setRandomOrder(m_bRandomOrder);
-			componentSA.setMaxNrOfParents(m_nMaxNrOfParents);
-			componentSA.setInitAsNaiveBayes(m_bInitAsNaiveBayes);
-			componentSA.setSeed(i);
-			// 
-			componetBayesNet.setSearchAlgorithm(componentSA);
-			componetBayesNet.buildClassifier(data);
-			m_Ensembles.add(componetBayesNet);
+			final int seed = i;
+			tasks.add(new Callable<Classifier>() {
+				public Classifier call() throws Exception {
+					BayesNet componetBayesNet = new BayesNet();
+					// config the RandomSearch algorithm
+					RandomSearch componentSA = new RandomSearch();
+					componentSA.setRandomOrder(m_bRandomOrder);
+					componentSA.setMaxNrOfParents(m_nMaxNrOfParents);
+					componentSA.setInitAsNaiveBayes(m_bInitAsNaiveBayes);
+					componentSA.setSeed(seed);
+					// 
+					componetBayesNet.setSearchAlgorithm(componentSA);
+					componetBayesNet.buildClassifier(trainData);
+					return componetBayesNet;
+				}
+			});
 		}
+		m_Ensembles = ParallelTasks.invokeAll(tasks, m_NumThreads);
+		m_Compiled = null;
+	}
+
+	/**
+	 * distributionForInstance of every instance, computed in parallel over
+	 * batches of instances with getNumThreads threads
+	 */
+	public double[][] distributionsForInstances(Instances instances)
+			throws Exception {
+		return ParallelTasks.distributionsForInstances(this, instances,
+				m_NumThreads);
 	}
 
 	@Override
@@ -85,6 +119,126 @@ public class RandomBayesNetClassifiers extends Classifier {
 		return distpro;
 	}
 
+	public int numClasses() {
+		return m_ClassNum;
+	}
+
+	/**
+	 * The same distributions as distributionForInstance, computed from the
+	 * log probability tables of the components; the values must be the
+	 * nominal values used by the networks, without missing values
+	 */
+	public void distributionsForValues(int[][] values, double[] output) {
+		CompiledBayesNet[] compiled = getCompiled();
+		double[] pro = new double[m_ClassNum];
+		for (int k = 0; k < values.length; k++) {
+			int offset = k * m_ClassNum;
+			Arrays.fill(output, offset, offset + m_ClassNum, 0);
+			label: for (CompiledBayesNet net : compiled) {
+				net.distributionForValues(values[k], pro);
+				for (int i = 0; i < pro.length; i++)
+					if (Double.isNaN(pro[i]))
+						continue label;
+				// sum the pro
+				for (int i = 0; i < pro.length; i++)
+					output[offset + i] += pro[i];
+			}
+			AnDE.normalize(output, offset, m_ClassNum);
+		}
+	}
+
+	private CompiledBayesNet[] getCompiled() {
+		CompiledBayesNet[] compiled = m_Compiled;
+		if (compiled == null) {
+			compiled = new CompiledBayesNet[m_Size];
+			for (int index = 0; index < m_Size; index++)
+				compiled[index] = new CompiledBayesNet(
+						(BayesNet) m_Ensembles.get(index), m_ClassIndex,
+						m_ClassNum);
+			m_Compiled = compiled;
+		}
+		return compiled;
+	}
+
+	/**
+	 * A trained BayesNet as flat log probability tables, scored the same way
+	 * as BayesNet.distributionForInstance
+	 */
+	static class CompiledBayesNet {
+
+		private final int m_NumClasses;
+
+		private final int m_ClassIndex;
+
+		/** the parents of each node */
+		private final int[][] m_Parents;
+
+		/** the cardinality of each node */
+		private final int[] m_Cardinality;
+
+		/**
+		 * log P(node = value | parents), at m_LogProbs[node][row *
+		 * m_Cardinality[node] + value]
+		 */
+		private final double[][] m_LogProbs;
+
+		CompiledBayesNet(BayesNet bayesNet, int classIndex, int numClasses) {
+			m_ClassIndex = classIndex;
+			m_NumClasses = numClasses;
+			int numNodes = bayesNet.getNrOfNodes();
+			Estimator[][] distributions = bayesNet.getDistributions();
+			m_Parents = new int[numNodes][];
+			m_Cardinality = new int[numNodes];
+			m_LogProbs = new double[numNodes][];
+			for (int node = 0; node < numNodes; node++) {
+				ParentSet parentSet = bayesNet.getParentSet(node);
+				m_Parents[node] = new int[parentSet.getNrOfParents()];
+				for (int i = 0; i < m_Parents[node].length; i++)
+					m_Parents[node][i] = parentSet.getParent(i);
+				m_Cardinality[node] = bayesNet.getCardinality(node);
+				int numRows = distributions[node].length;
+				m_LogProbs[node] = new double[numRows * m_Cardinality[node]];
+				for (int row = 0; row < numRows; row++)
+					for (int value = 0; value < m_Cardinality[node]; value++)
+						m_LogProbs[node][row * m_Cardinality[node] + value] = Math
+								.log(distributions[node][row]
+										.getProbability(value));
+			}
+		}
+
+		/**
+		 * the distribution of the integer-coded instance, written to pro
+		 */
+		void distributionForValues(int[] values, double[] pro) {
+			for (int classVal = 0; classVal < m_NumClasses; classVal++) {
+				double logfP = 0;
+				for (int node = 0; node < m_Parents.length; node++) {
+					int row = 0;
+					for (int parent : m_Parents[node])
+						row = row * m_Cardinality[parent]
+								+ (parent == m_ClassIndex ? classVal
+										: values[parent]);
+					int value = node == m_ClassIndex ? classVal : values[node];
+					logfP += m_LogProbs[node][row * m_Cardinality[node] + value];
+				}
+				pro[classVal] = 1.0 + logfP;
+			}
+			// transform from log-space to normal-space
+			double max = pro[0];
+			for (int classVal = 1; classVal < m_NumClasses; classVal++)
+				if (pro[classVal] > max)
+					max = pro[classVal];
+			double sum = 0;
+			for (int classVal = 0; classVal < m_NumClasses; classVal++) {
+				pro[classVal] = Math.exp(pro[classVal] - max);
+				sum += pro[classVal];
+			}
+			// NaN is left for the caller to skip this component
+			for (int classVal = 0; classVal < m_NumClasses; classVal++)
+				pro[classVal] /= sum;
+		}
+	}
+
 	/**
 	 * Sets the number of component classifiers
 	 * 
@@ -103,6 +257,24 @@ public class RandomBayesNetClassifiers extends Classifier {
 		m_Size = size;
 	}
 
+	/**
+	 * Sets the number of threads for training and batch prediction, default 1
+	 * 
+	 * @param numThreads
+	 */
+	public void setNumThreads(int numThreads) {
+		m_NumThreads = numThreads;
+	}
+
+	/**
+	 * Gets the number of threads for training and batch prediction
+	 * 
+	 * @return the number of threads
+	 */
+	public int getNumThreads() {
+		return m_NumThreads;
+	}
+
 	/**
 	 * Sets the max number of parents
 	 * 
@@ -2253,6 +2253,11 @@ public class svm {
 		}
 	}
 
+	public static double svm_k_function(svm_node[] x, svm_node[] y, svm_parameter param)
+	{
+		return Kernel.k_function(x,y,param);
+	}
+
 	public static int svm_get_svm_type(svm_model model)
 	{
 		return model.param.svm_type;
@@ -2283,6 +2288,121 @@ public class svm {
 	}
 
 	public static double svm_predict_values(svm_model model, svm_node[] x, double[] dec_values)
+	{
+		if(model.w != null)
+			return svm_predict_values_linear(model, x, dec_values);
+		int l = model.l;
+		double[] kvalue = new double[l];
+		for(int i=0;i<l;i++)
+			kvalue[i] = Kernel.k_function(x,model.SV[i],model.param);
+		return svm_predict_values_from_kernel(model, kvalue, dec_values);
+	}
+
+	// the dense weights of the decision functions of a LINEAR model, so that a
+	// decision value costs O(nnz(x)) instead of a merge of x with every SV;
+	// model.w is left null when they would take more memory than the SVs
+	public static void svm_set_linear_weights(svm_model model)
+	{
+		model.w = null;
+		if(model.param.kernel_type != svm_parameter.LINEAR)
+			return;
+		int max_index = 0;
+		long nnz = 0;
+		for(int i=0;i<model.l;i++)
+			for(svm_node node : model.SV[i])
+			{
+				if(node.index < 0)
+					return;
+				max_index = Math.max(max_index, node.index);
+				nnz++;
+			}
+		boolean single = model.param.svm_type == svm_parameter.ONE_CLASS ||
+			model.param.svm_type == svm_parameter.EPSILON_SVR ||
+			model.param.svm_type == svm_parameter.NU_SVR;
+		int nr_w = single ? 1 : model.nr_class*(model.nr_class-1)/2;
+		// a double is about a quarter of an svm_node
+		if((long)nr_w*(max_index+1) > 4*nnz)
+			return;
+
+		double[][] w = new double[nr_w][max_index+1];
+		if(single)
+		{
+			for(int i=0;i<model.l;i++)
+				add(w[0], model.SV[i], model.sv_coef[0][i]);
+		}
+		else
+		{
+			int nr_class = model.nr_class;
+			int[] start = new int[nr_class];
+			for(int i=1;i<nr_class;i++)
+				start[i] = start[i-1]+model.nSV[i-1];
+			int p = 0;
+			for(int i=0;i<nr_class;i++)
+				for(int j=i+1;j<nr_class;j++)
+				{
+					for(int k=0;k<model.nSV[i];k++)
+						add(w[p], model.SV[start[i]+k], model.sv_coef[j-1][start[i]+k]);
+					for(int k=0;k<model.nSV[j];k++)
+						add(w[p], model.SV[start[j]+k], model.sv_coef[i][start[j]+k]);
+					p++;
+				}
+		}
+		model.w = w;
+	}
+
+	private static void add(double[] w, svm_node[] x, double coef)
+	{
+		for(svm_node node : x)
+			w[node.index] += coef * node.value;
+	}
+
+	private static double dot(double[] w, svm_node[] x)
+	{
+		double sum = 0;
+		for(svm_node node : x)
+			if(node.index >= 0 && node.index < w.length)
+				sum += w[node.index] * node.value;
+		return sum;
+	}
+
+	private static double svm_predict_values_linear(svm_model model, svm_node[] x, double[] dec_values)
+	{
+		if(model.param.svm_type == svm_parameter.ONE_CLASS ||
+		   model.param.svm_type == svm_parameter.EPSILON_SVR ||
+		   model.param.svm_type == svm_parameter.NU_SVR)
+		{
+			double sum = dot(model.w[0], x) - model.rho[0];
+			dec_values[0] = sum;
+			if(model.param.svm_type == svm_parameter.ONE_CLASS)
+				return (sum>0)?1:-1;
+			else
+				return sum;
+		}
+
+		int nr_class = model.nr_class;
+		int[] vote = new int[nr_class];
+		int p=0;
+		for(int i=0;i<nr_class;i++)
+			for(int j=i+1;j<nr_class;j++)
+			{
+				dec_values[p] = dot(model.w[p], x) - model.rho[p];
+				if(dec_values[p] > 0)
+					++vote[i];
+				else
+					++vote[j];
+				p++;
+			}
+
+		int vote_max_idx = 0;
+		for(int i=1;i<nr_class;i++)
+			if(vote[i] > vote[vote_max_idx])
+				vote_max_idx = i;
+		return model.label[vote_max_idx];
+	}
+
+	// kvalue[i] holds the kernel value between the instance and model.SV[i],
+	// so that kernel values shared by several models are only computed once
+	public static double svm_predict_values_from_kernel(svm_model model, double[] kvalue, double[] dec_values)
 	{
 		int i;
 		if(model.param.svm_type == svm_parameter.ONE_CLASS ||
@@ -2292,7 +2412,7 @@ public class svm {
 			double[] sv_coef = model.sv_coef[0];
 			double sum = 0;
 			for(i=0;i<model.l;i++)
-				sum += sv_coef[i] * Kernel.k_function(x,model.SV[i],model.param);
+				sum += sv_coef[i] * kvalue[i];
 			sum -= model.rho[0];
 			dec_values[0] = sum;
 
@@ -2304,11 +2424,6 @@ public class svm {
 		else
 		{
 			int nr_class = model.nr_class;
-			int l = model.l;
-		
-			double[] kvalue = new double[l];
-			for(i=0;i<l;i++)
-				kvalue[i] = Kernel.k_function(x,model.SV[i],model.param);
 
 			int[] start = new int[nr_class];
 			start[0] = 0;
@@ -2370,14 +2485,35 @@ public class svm {
 	}
 
 	public static double svm_predict_probability(svm_model model, svm_node[] x, double[] prob_estimates)
+	{
+		int nr_class = model.nr_class;
+		double[] dec_values;
+		if(model.param.svm_type == svm_parameter.ONE_CLASS ||
+				model.param.svm_type == svm_parameter.EPSILON_SVR ||
+				model.param.svm_type == svm_parameter.NU_SVR)
+			dec_values = new double[1];
+		else
+			dec_values = new double[nr_class*(nr_class-1)/2];
+		return svm_predict_probability(model, x, prob_estimates, dec_values);
+	}
+
+	// also keeps the decision values the probabilities are computed from,
+	// so callers needing both do not have to evaluate the kernel twice
+	public static double svm_predict_probability(svm_model model, svm_node[] x, double[] prob_estimates, double[] dec_values)
+	{
+		double pred_result = svm_predict_values(model, x, dec_values);
+		return svm_predict_probability_from_values(model, dec_values, prob_estimates, pred_result);
+	}
+
+	// turns the decision values of svm_predict_values into probability estimates,
+	// pred_result is returned unchanged when the model has no probability information
+	public static double svm_predict_probability_from_values(svm_model model, double[] dec_values, double[] prob_estimates, double pred_result)
 	{
 		if ((model.param.svm_type == svm_parameter.C_SVC || model.param.svm_type == svm_parameter.NU_SVC) &&
 		    model.probA!=null && model.probB!=null)
 		{
 			int i;
 			int nr_class = model.nr_class;
-			double[] dec_values = new double[nr_class*(nr_class-1)/2];
-			svm_predict_values(model, x, dec_values);
 
 			double min_prob=1e-7;
 			double[][] pairwise_prob=new double[nr_class][nr_class];
@@ -2399,7 +2535,7 @@ public class svm {
 			return model.label[prob_max_idx];
 		}
 		else 
-			return svm_predict(model, x);
+			return pred_result;
 	}
 
 	static final String svm_type_table[] =
@@ -2650,6 +2786,7 @@ public class svm {
 		}
 
 		fp.close();
+		svm_set_linear_weights(model);
 		return model;
 	}
 
@@ -0,0 +1,355 @@
+package libsvm.libsvm;
+
+import java.util.*;
+
+//
+// Linear C-SVC trained by dual coordinate descent
+// (Hsieh et al., A Dual Coordinate Descent Method for Large-scale Linear SVM, ICML 2008)
+//
+// Each step updates one alpha_i from the gradient y_i w'x_i - 1 + D_ii alpha_i, and
+// w is updated with the change of alpha_i, so that a pass over the data costs O(nnz)
+// instead of the O(l^2) kernel evaluations of the SMO Solver.
+//
+// The model is a LINEAR-kernel C-SVC svm_model whose SVs are the weight vectors of
+// the one-against-one decision functions, so svm.svm_predict, svm_save_model and
+// svm_load_model (and so SVMPredictionJob) handle it as any other model.
+//
+public class svm_linear
+{
+	/* loss */
+	public static final int L1_LOSS = 1;	// hinge loss, 0 <= alpha_i <= C
+	public static final int L2_LOSS = 2;	// squared hinge loss, 0 <= alpha_i
+
+	/** the constant feature whose weight is the bias */
+	public static final double BIAS = 1;
+
+	public static final int MAX_ITER = 1000;
+
+	private static final double INF = Double.POSITIVE_INFINITY;
+
+	/**
+	 * Solves min_w rho/2 |w-w0|^2 + sum_i C_i loss(1 - y_i w'x_i), where
+	 * y_i is +1 or -1 and w[dim-1] is the weight of the BIAS feature. With
+	 * rho = 1 and w0 = 0 (null) it is the usual linear SVM; the proximal term
+	 * is the local problem of ADMM. alpha holds the dual variables, to warm
+	 * start from a previous solution, and w is set to w0 + sum_i alpha_i
+	 * y_i x_i / rho. Returns the number of iterations.
+	 */
+	public static int solve(svm_node[][] x, double[] y, double Cp, double Cn,
+		int loss, double eps, boolean shrinking, double rho, double[] w0,
+		double[] alpha, double[] w)
+	{
+		int l = x.length;
+		int bias_index = w.length - 1;
+		double[] diag = new double[] {0.5/Cn, 0, 0.5/Cp};
+		double[] upper_bound = new double[] {INF, 0, INF};
+		if(loss == L1_LOSS)
+		{
+			diag[0] = 0; diag[2] = 0;
+			upper_bound[0] = Cn; upper_bound[2] = Cp;
+		}
+
+		if(w0 != null)
+			System.arraycopy(w0,0,w,0,w.length);
+		else
+			Arrays.fill(w,0);
+		double[] QD = new double[l];
+		int[] index = new int[l];
+		for(int i=0;i<l;i++)
+		{
+			int yi = y[i] > 0 ? 2 : 0;
+			alpha[i] = Math.min(alpha[i], upper_bound[yi]);
+			QD[i] = (squared_norm(x[i]) + BIAS*BIAS)/rho + diag[yi];
+			if(alpha[i] != 0)
+				add(w, x[i], alpha[i]*y[i]/rho, bias_index);
+			index[i] = i;
+		}
+
+		int iter = 0;
+		int active_size = l;
+		double PGmax_old = INF;
+		double PGmin_old = -INF;
+		while(iter < MAX_ITER)
+		{
+			double PGmax_new = -INF;
+			double PGmin_new = INF;
+
+			for(int i=0;i<active_size;i++)
+			{
+				int j = i+svm.rand.nextInt(active_size-i);
+				int tmp = index[i]; index[i] = index[j]; index[j] = tmp;
+			}
+
+			for(int s=0;s<active_size;s++)
+			{
+				int i = index[s];
+				int yi = y[i] > 0 ? 2 : 0;
+				double G = y[i]*(dot(w,x[i]) + w[bias_index]*BIAS) - 1 + alpha[i]*diag[yi];
+				double C = upper_bound[yi];
+
+				double PG = 0;
+				if(alpha[i] == 0)
+				{
+					if(G > PGmax_old && shrinking)
+					{
+						active_size--;
+						index[s] = index[active_size]; index[active_size] = i;
+						s--;
+						continue;
+					}
+					else if(G < 0)
+						PG = G;
+				}
+				else if(alpha[i] == C)
+				{
+					if(G < PGmin_old && shrinking)
+					{
+						active_size--;
+						index[s] = index[active_size]; index[active_size] = i;
+						s--;
+						continue;
+					}
+					else if(G > 0)
+						PG = G;
+				}
+				else
+					PG = G;
+
+				PGmax_new = Math.max(PGmax_new, PG);
+				PGmin_new = Math.min(PGmin_new, PG);
+
+				if(Math.abs(PG) > 1.0e-12)
+				{
+					double alpha_old = alpha[i];
+					alpha[i] = Math.min(Math.max(alpha[i] - G/QD[i], 0.0), C);
+					add(w, x[i], (alpha[i]-alpha_old)*y[i]/rho, bias_index);
+				}
+			}
+
+			iter++;
+			if(iter % 10 == 0)
+				svm.info(".");
+
+			if(PGmax_new - PGmin_new <= eps)
+			{
+				if(active_size == l)
+					break;
+				else
+				{
+					// check the shrunk variables once the active ones are optimal
+					active_size = l;
+					svm.info("*");
+					PGmax_old = INF;
+					PGmin_old = -INF;
+					continue;
+				}
+			}
+			PGmax_old = PGmax_new;
+			PGmin_old = PGmin_new;
+			if(PGmax_old <= 0)
+				PGmax_old = INF;
+			if(PGmin_old >= 0)
+				PGmin_old = -INF;
+		}
+
+		svm.info("\noptimization finished, #iter = "+iter+"\n");
+		if(iter >= MAX_ITER)
+			svm.info("WARNING: reaching max number of iterations\n");
+		return iter;
+	}
+
+	/** w'x, ignoring the indexes of x beyond w */
+	static double dot(double[] w, svm_node[] x)
+	{
+		double sum = 0;
+		for(svm_node node : x)
+			if(node.index < w.length-1)
+				sum += w[node.index]*node.value;
+		return sum;
+	}
+
+	private static double squared_norm(svm_node[] x)
+	{
+		double sum = 0;
+		for(svm_node node : x)
+			sum += node.value*node.value;
+		return sum;
+	}
+
+	/** w += d (x, BIAS) */
+	private static void add(double[] w, svm_node[] x, double d, int bias_index)
+	{
+		for(svm_node node : x)
+			w[node.index] += d*node.value;
+		w[bias_index] += d*BIAS;
+	}
+
+	/** the largest index of the problem */
+	public static int max_index(svm_problem prob)
+	{
+		int max_index = 0;
+		for(int i=0;i<prob.l;i++)
+			for(svm_node node : prob.x[i])
+				max_index = Math.max(max_index, node.index);
+		return max_index;
+	}
+
+	/**
+	 * Train a linear C-SVC, one-against-one as svm.svm_train, using param.C,
+	 * the class weights, eps and shrinking; the kernel of param is ignored.
+	 */
+	public static svm_model svm_train_linear(svm_problem prob, svm_parameter param, int loss)
+	{
+		int l = prob.l;
+		int dim = max_index(prob)+2;	// indexes 0..max_index and the bias
+
+		// group training data of the same class, in order of first occurrence
+		List<Integer> labels = new ArrayList<Integer>();
+		int[] class_of = new int[l];
+		for(int i=0;i<l;i++)
+		{
+			int label = (int)prob.y[i];
+			int c = labels.indexOf(label);
+			if(c < 0)
+			{
+				c = labels.size();
+				labels.add(label);
+			}
+			class_of[i] = c;
+		}
+		int nr_class = labels.size();
+		int[] label = new int[nr_class];
+		for(int c=0;c<nr_class;c++)
+			label[c] = labels.get(c);
+		if(nr_class == 1)
+			svm.info("WARNING: training data in only one class. See README for details.\n");
+
+		double[] weighted_C = new double[nr_class];
+		Arrays.fill(weighted_C, param.C);
+		for(int i=0;i<param.nr_weight;i++)
+		{
+			int c = labels.indexOf(param.weight_label[i]);
+			if(c < 0)
+				System.err.print("WARNING: class label "+param.weight_label[i]+" specified in weight is not found\n");
+			else
+				weighted_C[c] *= param.weight[i];
+		}
+
+		double[][] w = new double[nr_class*(nr_class-1)/2][];
+		int p = 0;
+		for(int i=0;i<nr_class;i++)
+			for(int j=i+1;j<nr_class;j++)
+			{
+				List<svm_node[]> sub_x = new ArrayList<svm_node[]>();
+				List<Double> sub_y = new ArrayList<Double>();
+				for(int k=0;k<l;k++)
+					if(class_of[k] == i || class_of[k] == j)
+					{
+						sub_x.add(prob.x[k]);
+						sub_y.add(class_of[k] == i ? +1.0 : -1.0);
+					}
+				double[] y = new double[sub_y.size()];
+				for(int k=0;k<y.length;k++)
+					y[k] = sub_y.get(k);
+				w[p] = new double[dim];
+				solve(sub_x.toArray(new svm_node[y.length][]), y, weighted_C[i], weighted_C[j],
+					loss, param.eps, param.shrinking != 0, 1, null, new double[y.length], w[p]);
+				p++;
+			}
+		return svm_linear_model(param, label, w);
+	}
+
+	/**
+	 * The LINEAR-kernel C-SVC model of the one-against-one weight vectors
+	 * w[p] of the class pairs (i,j), i < j, in the order of svm.svm_train,
+	 * whose last element is the weight of the BIAS feature. The class i has
+	 * the SV w[p] of each pair (i,j), whose coefficient is 1 in the
+	 * decision function of (i,j) and 0 in the others; the last class has no
+	 * SV. The dense weights of svm.svm_set_linear_weights are set, so that a
+	 * prediction costs O(nnz(x)).
+	 */
+	public static svm_model svm_linear_model(svm_parameter param, int[] label, double[][] w)
+	{
+		int nr_class = label.length;
+		svm_model model = new svm_model();
+		model.param = (svm_parameter)param.clone();
+		model.param.svm_type = svm_parameter.C_SVC;
+		model.param.kernel_type = svm_parameter.LINEAR;
+		model.param.probability = 0;
+		model.nr_class = nr_class;
+		model.label = label.clone();
+		model.l = w.length;
+		model.SV = new svm_node[w.length][];
+		model.sv_coef = new double[Math.max(nr_class-1,1)][w.length];
+		model.rho = new double[w.length];
+		model.nSV = new int[nr_class];
+		int p = 0;
+		for(int i=0;i<nr_class;i++)
+			for(int j=i+1;j<nr_class;j++)
+			{
+				model.SV[p] = to_nodes(w[p]);
+				model.sv_coef[j-1][p] = 1;
+				model.rho[p] = -w[p][w[p].length-1]*BIAS;
+				model.nSV[i]++;
+				p++;
+			}
+		svm.svm_set_linear_weights(model);
+		return model;
+	}
+
+	/** the nonzero weights of w but the bias, as sparse nodes */
+	static svm_node[] to_nodes(double[] w)
+	{
+		int n = 0;
+		for(int k=0;k<w.length-1;k++)
+			if(w[k] != 0)
+				n++;
+		svm_node[] x = new svm_node[n];
+		n = 0;
+		for(int k=0;k<w.length-1;k++)
+			if(w[k] != 0)
+			{
+				x[n] = new svm_node();
+				x[n].index = k;
+				x[n].value = w[k];
+				n++;
+			}
+		return x;
+	}
+
+	/** stratification-free cross validation of svm_train_linear, as svm.svm_cross_validation */
+	public static void svm_cross_validation_linear(svm_problem prob, svm_parameter param, int loss, int nr_fold, double[] target)
+	{
+		int l = prob.l;
+		int[] perm = new int[l];
+		for(int i=0;i<l;i++)
+			perm[i] = i;
+		for(int i=0;i<l;i++)
+		{
+			int j = i+svm.rand.nextInt(l-i);
+			int tmp = perm[i]; perm[i] = perm[j]; perm[j] = tmp;
+		}
+		if(nr_fold > l)
+			nr_fold = l;
+		for(int f=0;f<nr_fold;f++)
+		{
+			int begin = f*l/nr_fold;
+			int end = (f+1)*l/nr_fold;
+			svm_problem subprob = new svm_problem();
+			subprob.l = l-(end-begin);
+			subprob.x = new svm_node[subprob.l][];
+			subprob.y = new double[subprob.l];
+			int k = 0;
+			for(int i=0;i<l;i++)
+				if(i < begin || i >= end)
+				{
+					subprob.x[k] = prob.x[perm[i]];
+					subprob.y[k] = prob.y[perm[i]];
+					k++;
+				}
+			svm_model submodel = svm_train_linear(subprob,param,loss);
+			for(int i=begin;i<end;i++)
+				target[perm[i]] = svm.svm_predict(submodel,prob.x[perm[i]]);
+		}
+	}
+}
@@ -21,6 +21,10 @@ public class svm_model implements java.io.Serializable {
   public int[] nSV;        // number of SVs for each class (nSV[k])
   // nSV[0] + nSV[1] + ... + nSV[k-1] = l
 
+  // for LINEAR models only, set by svm.svm_set_linear_weights
+
+  public double[][] w;        // dense weights of each decision function, or null
+
   @Override
   public String toString() {
     StringBuilder sb = new StringBuilder("svm_model:\n");
@@ -0,0 +1,271 @@
+package libsvm.mapreduce;
+
+import libsvm.libsvm.svm_linear;
+import libsvm.libsvm.svm_model;
+import libsvm.libsvm.svm_node;
+import libsvm.libsvm.svm_parameter;
+import libsvm.libsvm.svm_problem;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.*;
+
+/**
+ * Consensus ADMM for the linear SVM min_w 1/2 |w|^2 + C sum_i loss(1 - y_i w'x_i), the data being split into N
+ * parts (Boyd et al., Distributed Optimization and Statistical Learning via ADMM, 2011, section 8.2). Each iteration:
+ * <ul>
+ * <li>each split j solves its local SVM x_j = argmin C sum_{i in j} loss + rho/2 |x_j - z + u_j|^2 with
+ * svm_linear.solve, warm started from its previous dual variables;</li>
+ * <li>the consensus z = rho sum_j (x_j + u_j) / (1 + N rho) is computed from the sums of the splits;</li>
+ * <li>each split updates its scaled dual u_j += x_j - z, at the beginning of the next iteration.</li>
+ * </ul>
+ * It stops when the primal residual r = (sum_j |x_j - z|^2)^1/2 and the dual residual s = rho N^1/2 |z - z_old|
+ * are below their tolerances. The splits are the map tasks of SVMADMMJob, or run by threads in train, which
+ * simulates the cluster in process. The weight vectors have the indexes 0..dimension and the bias at the end.
+ */
+public class ADMMConsensus {
+  private static final Logger log = LoggerFactory.getLogger(ADMMConsensus.class);
+
+  private final int dimension;
+
+  private final double C;
+
+  private final double rho;
+
+  private final int loss;
+
+  /** the tolerance of the local problems */
+  private final double eps;
+
+  private double absoluteTolerance = 1e-4;
+
+  private double relativeTolerance = 1e-2;
+
+  private double primalResidual;
+
+  private double dualResidual;
+
+  /**
+   * @param dimension the largest feature index
+   */
+  public ADMMConsensus(int dimension, double C, double rho, int loss, double eps) {
+    if (rho <= 0)
+      throw new IllegalArgumentException("rho must be positive: " + rho);
+    this.dimension = dimension;
+    this.C = C;
+    this.rho = rho;
+    this.loss = loss;
+    this.eps = eps;
+  }
+
+  public void setTolerances(double absoluteTolerance, double relativeTolerance) {
+    this.absoluteTolerance = absoluteTolerance;
+    this.relativeTolerance = relativeTolerance;
+  }
+
+  /** the length of the weight vectors */
+  public int size() {
+    return dimension + 2;
+  }
+
+  /**
+   * The local state of a split, kept between the iterations: its weights x_j, its scaled dual u_j and the dual
+   * variables of its local SVM, for the warm start
+   */
+  public class Split {
+    private final svm_node[][] x;
+
+    private final double[] y;
+
+    private final double[] alpha;
+
+    private final double[] w;
+
+    private final double[] u;
+
+    /** whether w was solved for a previous consensus */
+    private boolean solved;
+
+    /**
+     * @param y +1 or -1
+     */
+    public Split(svm_node[][] x, double[] y) {
+      for (svm_node[] instance : x)
+        for (svm_node node : instance)
+          if (node.index > dimension)
+            throw new IllegalArgumentException("feature index " + node.index + " is larger than the dimension "
+                    + dimension);
+      this.x = x;
+      this.y = y;
+      alpha = new double[x.length];
+      w = new double[size()];
+      u = new double[size()];
+    }
+
+    /** the state of a previous iteration, see getAlpha, getW and getU */
+    public void restore(double[] alpha, double[] w, double[] u) {
+      if (alpha.length != this.alpha.length)
+        throw new IllegalArgumentException("the split has " + this.alpha.length + " instances, not " + alpha.length);
+      System.arraycopy(alpha, 0, this.alpha, 0, alpha.length);
+      System.arraycopy(w, 0, this.w, 0, w.length);
+      System.arraycopy(u, 0, this.u, 0, u.length);
+      solved = true;
+    }
+
+    /**
+     * the dual update with the consensus z of the previous iteration, if any, then the local SVM; the result is
+     * the contribution of the split to the next consensus
+     */
+    public ADMMWritable step(double[] z) {
+      if (solved)
+        for (int k = 0; k < u.length; k++)
+          u[k] += w[k] - z[k];
+      double[] w0 = new double[size()];
+      for (int k = 0; k < w0.length; k++)
+        w0[k] = z[k] - u[k];
+      svm_linear.solve(x, y, C, C, loss, eps, true, rho, w0, alpha, w);
+      solved = true;
+
+      ADMMWritable sum = new ADMMWritable(size());
+      sum.add(w, u);
+      return sum;
+    }
+
+    public double[] getAlpha() {
+      return alpha;
+    }
+
+    public double[] getW() {
+      return w;
+    }
+
+    public double[] getU() {
+      return u;
+    }
+  }
+
+  /** the consensus of the sums of the splits */
+  public double[] consensus(ADMMWritable sum) {
+    double[] z = new double[size()];
+    double scale = rho / (1 + sum.getCount() * rho);
+    for (int k = 0; k < z.length; k++)
+      z[k] = scale * sum.getWeightsAndDuals()[k];
+    return z;
+  }
+
+  /**
+   * compute the residuals of the new consensus z, previousZ being the consensus the splits were solved with
+   *
+   * @return whether they are below their tolerances
+   */
+  public boolean converged(ADMMWritable sum, double[] z, double[] previousZ) {
+    long n = sum.getCount();
+    double[] sumW = sum.getWeights();
+    double zNorm = 0, zw = 0, dz = 0;
+    for (int k = 0; k < z.length; k++) {
+      zNorm += z[k] * z[k];
+      zw += z[k] * sumW[k];
+      dz += (z[k] - previousZ[k]) * (z[k] - previousZ[k]);
+    }
+    primalResidual = Math.sqrt(Math.max(0, sum.getWeightsNorm() - 2 * zw + n * zNorm));
+    dualResidual = rho * Math.sqrt(n * dz);
+    double primalTolerance = Math.sqrt(n * z.length) * absoluteTolerance
+            + relativeTolerance * Math.max(Math.sqrt(sum.getWeightsNorm()), Math.sqrt(n * zNorm));
+    double dualTolerance = Math.sqrt(n * z.length) * absoluteTolerance
+            + relativeTolerance * rho * Math.sqrt(sum.getDualsNorm());
+    log.info(String.format("r = %g (eps_pri %g), s = %g (eps_dual %g)", primalResidual, primalTolerance,
+            dualResidual, dualTolerance));
+    return primalResidual <= primalTolerance && dualResidual <= dualTolerance;
+  }
+
+  public double getPrimalResidual() {
+    return primalResidual;
+  }
+
+  public double getDualResidual() {
+    return dualResidual;
+  }
+
+  /**
+   * the linear model of the consensus, the label of the positive instances (y = +1) being label[0]
+   */
+  public svm_model toModel(double[] z, int[] label) {
+    svm_parameter param = new svm_parameter();
+    param.svm_type = svm_parameter.C_SVC;
+    param.kernel_type = svm_parameter.LINEAR;
+    param.C = C;
+    param.eps = eps;
+    param.shrinking = 1;
+    param.nr_weight = 0;
+    param.weight_label = new int[0];
+    param.weight = new double[0];
+    return svm_linear.svm_linear_model(param, label, new double[][]{z});
+  }
+
+  /**
+   * the +1 or -1 labels of a binary problem, positive being label[0]
+   */
+  public static double[] binaryLabels(double[] y, int[] label) {
+    double[] binary = new double[y.length];
+    for (int i = 0; i < y.length; i++)
+      binary[i] = y[i] == label[0] ? +1 : -1;
+    return binary;
+  }
+
+  /**
+   * Train on the splits in process, each iteration solving the splits in parallel with numThreads threads, as the
+   * map tasks of an iteration of SVMADMMJob would
+   *
+   * @param label the positive and negative labels of the problems
+   */
+  public svm_model train(svm_problem[] splits, int[] label, int maxIterations, int numThreads)
+          throws InterruptedException, ExecutionException {
+    final List<Split> states = new ArrayList<Split>();
+    for (svm_problem split : splits)
+      states.add(new Split(split.x, binaryLabels(split.y, label)));
+    ExecutorService executor = Executors.newFixedThreadPool(numThreads);
+    double[] z = new double[size()];
+    boolean converged = false;
+    try {
+      for (int iteration = 0; iteration < maxIterations && !converged; iteration++) {
+        final double[] previousZ = z;
+        List<Future<ADMMWritable>> sums = new ArrayList<Future<ADMMWritable>>();
+        for (final Split state : states)
+          sums.add(executor.submit(new Callable<ADMMWritable>() {
+            public ADMMWritable call() {
+              return state.step(previousZ);
+            }
+          }));
+        ADMMWritable sum = new ADMMWritable(size());
+        for (Future<ADMMWritable> future : sums)
+          sum.merge(future.get());
+        z = consensus(sum);
+        log.info("iteration " + iteration);
+        converged = converged(sum, z, previousZ);
+      }
+    } finally {
+      executor.shutdown();
+    }
+    if (!converged)
+      log.warn("not converged after " + maxIterations + " iterations: r = " + primalResidual + ", s = "
+              + dualResidual);
+    return toModel(z, label);
+  }
+
+  /** split a problem into numSplits consecutive parts, as the input splits of a file */
+  public static svm_problem[] split(svm_problem prob, int numSplits) {
+    svm_problem[] splits = new svm_problem[numSplits];
+    for (int j = 0; j < numSplits; j++) {
+      int begin = (int) ((long) prob.l * j / numSplits);
+      int end = (int) ((long) prob.l * (j + 1) / numSplits);
+      splits[j] = new svm_problem();
+      splits[j].l = end - begin;
+      splits[j].x = Arrays.copyOfRange(prob.x, begin, end);
+      splits[j].y = Arrays.copyOfRange(prob.y, begin, end);
+    }
+    return splits;
+  }
+}
@@ -0,0 +1,104 @@
+package libsvm.mapreduce;
+
+import org.apache.hadoop.io.Writable;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * The sums over the splits of an ADMM iteration that the consensus and the residuals need: sum_j (x_j + u_j),
+ * sum_j x_j, sum_j |x_j|^2, sum_j |u_j|^2 and the number of splits N. Merged by the combiner and the reducer of
+ * SVMADMMJob.
+ */
+public class ADMMWritable implements Writable {
+  private double[] weightsAndDuals;
+
+  private double[] weights;
+
+  private double weightsNorm;
+
+  private double dualsNorm;
+
+  private long count;
+
+  public ADMMWritable() {
+    this(0);
+  }
+
+  public ADMMWritable(int size) {
+    weightsAndDuals = new double[size];
+    weights = new double[size];
+  }
+
+  /** add a split of weights w and scaled dual u */
+  public void add(double[] w, double[] u) {
+    for (int k = 0; k < w.length; k++) {
+      weightsAndDuals[k] += w[k] + u[k];
+      weights[k] += w[k];
+      weightsNorm += w[k] * w[k];
+      dualsNorm += u[k] * u[k];
+    }
+    count++;
+  }
+
+  public void merge(ADMMWritable other) {
+    if (count == 0 && weights.length != other.weights.length) {
+      weightsAndDuals = new double[other.weights.length];
+      weights = new double[other.weights.length];
+    }
+    for (int k = 0; k < weights.length; k++) {
+      weightsAndDuals[k] += other.weightsAndDuals[k];
+      weights[k] += other.weights[k];
+    }
+    weightsNorm += other.weightsNorm;
+    dualsNorm += other.dualsNorm;
+    count += other.count;
+  }
+
+  public double[] getWeightsAndDuals() {
+    return weightsAndDuals;
+  }
+
+  public double[] getWeights() {
+    return weights;
+  }
+
+  public double getWeightsNorm() {
+    return weightsNorm;
+  }
+
+  public double getDualsNorm() {
+    return dualsNorm;
+  }
+
+  public long getCount() {
+    return count;
+  }
+
+  @Override
+  public void write(DataOutput out) throws IOException {
+    out.writeInt(weights.length);
+    for (int k = 0; k < weights.length; k++) {
+      out.writeDouble(weightsAndDuals[k]);
+      out.writeDouble(weights[k]);
+    }
+    out.writeDouble(weightsNorm);
+    out.writeDouble(dualsNorm);
+    out.writeLong(count);
+  }
+
+  @Override
+  public void readFields(DataInput in) throws IOException {
+    int size = in.readInt();
+    weightsAndDuals = new double[size];
+    weights = new double[size];
+    for (int k = 0; k < size; k++) {
+      weightsAndDuals[k] = in.readDouble();
+      weights[k] = in.readDouble();
+    }
+    weightsNorm = in.readDouble();
+    dualsNorm = in.readDouble();
+    count = in.readLong();
+  }
+}
@@ -0,0 +1,156 @@
+package libsvm.mapreduce;
+
+import libsvm.libsvm.svm_node;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.mahout.math.RandomAccessSparseVector;
+import org.apache.mahout.math.Vector;
+import org.apache.mahout.vectorizer.encoders.MurmurHash;
+
+import java.io.*;
+import java.nio.charset.Charset;
+import java.util.StringTokenizer;
+
+/**
+ * The hashing trick: the index of a string feature is the murmur hash of its name modulo the number of buckets, so
+ * that raw features (cookie attributes, URLs) are vectorized without a dictionary. With signed hashing, the value of
+ * a feature is negated when the sign bit of its hash is set, which makes the colliding features cancel out in
+ * expectation instead of adding up.
+ * <p/>
+ * The features of an instance are separated by white spaces, each being a name, of value 1, or name:value when
+ * the text after the last ':' is a number.
+ */
+public class FeatureHasher {
+  public static final String NUM_BUCKETS = "hash_buckets";
+
+  public static final String SIGNED = "hash_signed";
+
+  public static final String SEED = "hash_seed";
+
+  public static final int DEFAULT_SEED = 0x2f0a1c3b;
+
+  private static final Charset UTF8 = Charset.forName("UTF-8");
+
+  private final int numBuckets;
+
+  private final boolean signed;
+
+  private final int seed;
+
+  public FeatureHasher(int numBuckets, boolean signed, int seed) {
+    if (numBuckets <= 0)
+      throw new IllegalArgumentException("the number of buckets must be positive: " + numBuckets);
+    this.numBuckets = numBuckets;
+    this.signed = signed;
+    this.seed = seed;
+  }
+
+  public FeatureHasher(int numBuckets, boolean signed) {
+    this(numBuckets, signed, DEFAULT_SEED);
+  }
+
+  /** the hasher configured in conf, or null if the input is not hashed */
+  public static FeatureHasher load(Configuration conf) {
+    int numBuckets = conf.getInt(NUM_BUCKETS, 0);
+    if (numBuckets <= 0)
+      return null;
+    return new FeatureHasher(numBuckets, conf.getBoolean(SIGNED, false), conf.getInt(SEED, DEFAULT_SEED));
+  }
+
+  /** set the hasher in conf */
+  public void store(Configuration conf) {
+    conf.setInt(NUM_BUCKETS, numBuckets);
+    conf.setBoolean(SIGNED, signed);
+    conf.setInt(SEED, seed);
+  }
+
+  public int getNumBuckets() {
+    return numBuckets;
+  }
+
+  public boolean isSigned() {
+    return signed;
+  }
+
+  /** the bucket of a feature name, from 0 */
+  public int index(String name) {
+    return (hash(name) & Integer.MAX_VALUE) % numBuckets;
+  }
+
+  /** -1 or 1 with signed hashing, else 1 */
+  public double sign(String name) {
+    return signed && hash(name) < 0 ? -1 : 1;
+  }
+
+  private int hash(String name) {
+    return MurmurHash.hash(name.getBytes(UTF8), seed);
+  }
+
+  /** add the value of a feature to its bucket */
+  public void addFeature(Vector vector, String name, double value) {
+    int hash = hash(name);
+    int index = (hash & Integer.MAX_VALUE) % numBuckets;
+    vector.set(index, vector.getQuick(index) + (signed && hash < 0 ? -value : value));
+  }
+
+  /** the vector of numBuckets elements of the features */
+  public Vector vectorize(String features) {
+    Vector vector = new RandomAccessSparseVector(numBuckets);
+    StringTokenizer st = new StringTokenizer(features);
+    while (st.hasMoreTokens()) {
+      String feature = st.nextToken();
+      int colon = feature.lastIndexOf(':');
+      double value = 1;
+      if (colon > 0 && isNumber(feature, colon + 1)) {
+        value = Double.parseDouble(feature.substring(colon + 1));
+        feature = feature.substring(0, colon);
+      }
+      addFeature(vector, feature, value);
+    }
+    return vector;
+  }
+
+  /** whether the text from begin is a number, so that the ':' of an url is kept in its name */
+  private static boolean isNumber(String s, int begin) {
+    if (begin == s.length())
+      return false;
+    char c = s.charAt(begin);
+    if (!(c >= '0' && c <= '9') && c != '-' && c != '+' && c != '.')
+      return false;
+    try {
+      Double.parseDouble(s.substring(begin));
+      return true;
+    } catch (NumberFormatException e) {
+      return false;
+    }
+  }
+
+  /**
+   * Hash the training data for svm_train, so that its model scores the hashed input of SVMPredictionJob
+   * <p/>
+   * args: numBuckets signed|unsigned input output, the lines of input being "label\tfeatures"
+   */
+  public static void main(String[] args) throws IOException {
+    if (args.length != 4) {
+      System.err.println("Usage: FeatureHasher numBuckets signed|unsigned input output");
+      System.exit(1);
+    }
+    FeatureHasher hasher = new FeatureHasher(Integer.parseInt(args[0]), "signed".equals(args[1]));
+    BufferedReader in = new BufferedReader(new InputStreamReader(new FileInputStream(args[2]), UTF8));
+    Writer out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(args[3]), UTF8));
+    try {
+      String line;
+      while ((line = in.readLine()) != null) {
+        int tab = line.indexOf('\t');
+        if (tab < 0)
+          continue;
+        StringBuilder sb = new StringBuilder(line.substring(0, tab).trim());
+        for (svm_node node : SVMPredictionJob.parseInstance(hasher.vectorize(line.substring(tab + 1))))
+          sb.append(' ').append(node.index).append(':').append(node.value);
+        out.write(sb.append('\n').toString());
+      }
+    } finally {
+      in.close();
+      out.close();
+    }
+  }
+}
@@ -0,0 +1,57 @@
+package libsvm.mapreduce;
+
+import org.apache.hadoop.io.Writable;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Compact float array for the scores of one instance, such as the probability estimates or decision values
+ */
+public class FloatArrayWritable implements Writable {
+  private float[] values;
+
+  public FloatArrayWritable() {
+  }
+
+  public FloatArrayWritable(float[] values) {
+    this.values = values;
+  }
+
+  public float[] get() {
+    return values;
+  }
+
+  public void set(float[] values) {
+    this.values = values;
+  }
+
+  public static FloatArrayWritable read(DataInput in) throws IOException {
+    FloatArrayWritable object = new FloatArrayWritable();
+    object.readFields(in);
+    return object;
+  }
+
+  @Override
+  public void readFields(DataInput in) throws IOException {
+    int size = in.readInt();
+    if (values == null || values.length != size)
+      values = new float[size];
+    for (int i = 0; i < size; i++)
+      values[i] = in.readFloat();
+  }
+
+  @Override
+  public void write(DataOutput out) throws IOException {
+    out.writeInt(values.length);
+    for (float value : values)
+      out.writeFloat(value);
+  }
+
+  @Override
+  public String toString() {
+    return Arrays.toString(values);
+  }
+}
@@ -0,0 +1,84 @@
+package libsvm.mapreduce;
+
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.LongWritable;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.io.compress.CompressionCodecFactory;
+import org.apache.hadoop.mapreduce.InputSplit;
+import org.apache.hadoop.mapreduce.JobContext;
+import org.apache.hadoop.mapreduce.RecordReader;
+import org.apache.hadoop.mapreduce.TaskAttemptContext;
+import org.apache.hadoop.mapreduce.lib.input.FileInputFormat;
+import org.apache.hadoop.mapreduce.lib.input.LineRecordReader;
+import org.apache.mahout.math.VectorWritable;
+
+import java.io.IOException;
+
+/**
+ * Reads text lines "id\tfeatures" of raw string features as the (id, VectorWritable) instances of SVMPredictionJob,
+ * the features being hashed by the FeatureHasher of the job configuration while the map task reads them. The input
+ * need not be encoded by a separate job, and the mappers are the same as for the sequence file input. A line without
+ * tab has only features, its id is its offset in the file.
+ */
+public class HashedVectorInputFormat extends FileInputFormat<Text, VectorWritable> {
+  @Override
+  public RecordReader<Text, VectorWritable> createRecordReader(InputSplit split, TaskAttemptContext context) {
+    return new HashedVectorRecordReader();
+  }
+
+  /** as TextInputFormat, a compressed file is read whole by a single split */
+  @Override
+  protected boolean isSplitable(JobContext context, Path file) {
+    return new CompressionCodecFactory(context.getConfiguration()).getCodec(file) == null;
+  }
+
+  public static class HashedVectorRecordReader extends RecordReader<Text, VectorWritable> {
+    private final LineRecordReader lines = new LineRecordReader();
+
+    private FeatureHasher hasher;
+
+    private final Text key = new Text();
+
+    private final VectorWritable value = new VectorWritable();
+
+    @Override
+    public void initialize(InputSplit split, TaskAttemptContext context) throws IOException {
+      hasher = FeatureHasher.load(context.getConfiguration());
+      if (hasher == null)
+        throw new IllegalArgumentException(FeatureHasher.NUM_BUCKETS + " is not set");
+      lines.initialize(split, context);
+    }
+
+    @Override
+    public boolean nextKeyValue() throws IOException {
+      if (!lines.nextKeyValue())
+        return false;
+      LongWritable offset = lines.getCurrentKey();
+      String line = lines.getCurrentValue().toString();
+      int tab = line.indexOf('\t');
+      key.set(tab < 0 ? offset.toString() : line.substring(0, tab));
+      value.set(hasher.vectorize(tab < 0 ? line : line.substring(tab + 1)));
+      return true;
+    }
+
+    @Override
+    public Text getCurrentKey() {
+      return key;
+    }
+
+    @Override
+    public VectorWritable getCurrentValue() {
+      return value;
+    }
+
+    @Override
+    public float getProgress() {
+      return lines.getProgress();
+    }
+
+    @Override
+    public void close() throws IOException {
+      lines.close();
+    }
+  }
+}
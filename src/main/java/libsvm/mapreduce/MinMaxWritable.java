@@ -0,0 +1,69 @@
+package libsvm.mapreduce;
+
+import org.apache.hadoop.io.Writable;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * The min and max of the values of a feature and the number of values, merged by the combiner and the reducer
+ * of SVMScalingJob
+ */
+public class MinMaxWritable implements Writable {
+  private double min = Double.MAX_VALUE;
+
+  private double max = -Double.MAX_VALUE;
+
+  private long count;
+
+  public MinMaxWritable() {
+  }
+
+  public MinMaxWritable(double min, double max, long count) {
+    set(min, max, count);
+  }
+
+  public void set(double min, double max, long count) {
+    this.min = min;
+    this.max = max;
+    this.count = count;
+  }
+
+  public void merge(MinMaxWritable other) {
+    min = Math.min(min, other.min);
+    max = Math.max(max, other.max);
+    count += other.count;
+  }
+
+  public double getMin() {
+    return min;
+  }
+
+  public double getMax() {
+    return max;
+  }
+
+  public long getCount() {
+    return count;
+  }
+
+  @Override
+  public void readFields(DataInput in) throws IOException {
+    min = in.readDouble();
+    max = in.readDouble();
+    count = in.readLong();
+  }
+
+  @Override
+  public void write(DataOutput out) throws IOException {
+    out.writeDouble(min);
+    out.writeDouble(max);
+    out.writeLong(count);
+  }
+
+  @Override
+  public String toString() {
+    return min + " " + max + " " + count;
+  }
+}
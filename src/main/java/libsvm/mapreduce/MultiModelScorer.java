@@ -0,0 +1,160 @@
+package libsvm.mapreduce;
+
+import libsvm.libsvm.svm;
+import libsvm.libsvm.svm_model;
+import libsvm.libsvm.svm_node;
+import libsvm.libsvm.svm_parameter;
+
+import java.util.*;
+
+/**
+ * Scores one instance against several svm models at once. Models with the same kernel parameters are grouped,
+ * and the support vectors of a group are de-duplicated, so each distinct kernel value is computed only once
+ * per instance no matter how many models share it. LINEAR models with dense weights (see
+ * svm.svm_set_linear_weights) are not grouped, their decision values are computed from their weights directly.
+ */
+public class MultiModelScorer {
+  private final List<svm_model> models;
+
+  /** kernel group of each model, -1 for the models scored from their dense weights */
+  private final int[] groupOfModel;
+
+  /** for each model, the position of each of its SVs in the unique SVs of its group */
+  private final int[][] svIndex;
+
+  /** unique SVs of each kernel group */
+  private final List<svm_node[][]> groupSVs = new ArrayList<svm_node[][]>();
+
+  /** kernel parameters of each group */
+  private final List<svm_parameter> groupParams = new ArrayList<svm_parameter>();
+
+  /** kernel values between the current instance and the unique SVs of each group */
+  private final double[][] groupKernel;
+
+  /** scratch kernel values in the SV order of each model */
+  private final double[][] modelKernel;
+
+  /** the current instance */
+  private svm_node[] instance;
+
+  public MultiModelScorer(List<svm_model> models) {
+    this.models = models;
+    groupOfModel = new int[models.size()];
+    svIndex = new int[models.size()][];
+    modelKernel = new double[models.size()][];
+
+    List<Map<String, Integer>> groupSVKeys = new ArrayList<Map<String, Integer>>();
+    List<List<svm_node[]>> groupSVLists = new ArrayList<List<svm_node[]>>();
+    for (int m = 0; m < models.size(); m++) {
+      svm_model model = models.get(m);
+      if (model.w != null) {
+        groupOfModel[m] = -1;
+        continue;
+      }
+      int group = -1;
+      for (int g = 0; g < groupParams.size(); g++) {
+        if (sameKernel(groupParams.get(g), model.param)) {
+          group = g;
+          break;
+        }
+      }
+      if (group < 0) {
+        group = groupParams.size();
+        groupParams.add(model.param);
+        groupSVKeys.add(new HashMap<String, Integer>());
+        groupSVLists.add(new ArrayList<svm_node[]>());
+      }
+      groupOfModel[m] = group;
+
+      Map<String, Integer> keys = groupSVKeys.get(group);
+      List<svm_node[]> svs = groupSVLists.get(group);
+      svIndex[m] = new int[model.l];
+      for (int i = 0; i < model.l; i++) {
+        String key = Arrays.toString(model.SV[i]);
+        Integer index = keys.get(key);
+        if (index == null) {
+          index = svs.size();
+          keys.put(key, index);
+          svs.add(model.SV[i]);
+        }
+        svIndex[m][i] = index;
+      }
+      modelKernel[m] = new double[model.l];
+    }
+
+    groupKernel = new double[groupParams.size()][];
+    for (List<svm_node[]> svs : groupSVLists) {
+      groupSVs.add(svs.toArray(new svm_node[svs.size()][]));
+      groupKernel[groupSVs.size() - 1] = new double[svs.size()];
+    }
+  }
+
+  private static boolean sameKernel(svm_parameter p1, svm_parameter p2) {
+    if (p1.kernel_type != p2.kernel_type)
+      return false;
+    switch (p1.kernel_type) {
+      case svm_parameter.POLY:
+        return p1.degree == p2.degree && p1.gamma == p2.gamma && p1.coef0 == p2.coef0;
+      case svm_parameter.RBF:
+        return p1.gamma == p2.gamma;
+      case svm_parameter.SIGMOID:
+        return p1.gamma == p2.gamma && p1.coef0 == p2.coef0;
+      default:
+        return true;
+    }
+  }
+
+  /**
+   * Computes the kernel values of the given instance against all distinct SVs; must be called before
+   * predicting the instance with any of the models
+   */
+  public void setInstance(svm_node[] x) {
+    instance = x;
+    for (int g = 0; g < groupSVs.size(); g++) {
+      svm_node[][] svs = groupSVs.get(g);
+      double[] kvalue = groupKernel[g];
+      svm_parameter param = groupParams.get(g);
+      for (int i = 0; i < svs.length; i++)
+        kvalue[i] = svm.svm_k_function(x, svs[i], param);
+    }
+  }
+
+  /**
+   * Decision values of the current instance for the m-th model, returns the predicted label
+   */
+  public double predictValues(int m, double[] dec_values) {
+    if (groupOfModel[m] < 0)
+      return svm.svm_predict_values(models.get(m), instance, dec_values);
+    double[] kvalue = modelKernel[m];
+    double[] shared = groupKernel[groupOfModel[m]];
+    int[] index = svIndex[m];
+    for (int i = 0; i < kvalue.length; i++)
+      kvalue[i] = shared[index[i]];
+    return svm.svm_predict_values_from_kernel(models.get(m), kvalue, dec_values);
+  }
+
+  /**
+   * Probability estimates and decision values of the current instance for the m-th model,
+   * returns the predicted label
+   */
+  public double predictProbability(int m, double[] prob_estimates, double[] dec_values) {
+    double v = predictValues(m, dec_values);
+    return svm.svm_predict_probability_from_values(models.get(m), dec_values, prob_estimates, v);
+  }
+
+  public int numModels() {
+    return models.size();
+  }
+
+  public svm_model getModel(int m) {
+    return models.get(m);
+  }
+
+  /** total number of kernel evaluations per instance */
+  public int numKernelEvaluations() {
+    int n = 0;
+    for (svm_node[][] svs : groupSVs)
+      n += svs.length;
+    return n;
+  }
+}
@@ -0,0 +1,310 @@
+package libsvm.mapreduce;
+
+import libsvm.libsvm.svm;
+import libsvm.libsvm.svm_linear;
+import libsvm.libsvm.svm_model;
+import libsvm.libsvm.svm_node;
+import org.apache.commons.cli.*;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FSDataInputStream;
+import org.apache.hadoop.fs.FSDataOutputStream;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.IntWritable;
+import org.apache.hadoop.io.LongWritable;
+import org.apache.hadoop.io.MD5Hash;
+import org.apache.hadoop.io.SequenceFile;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.mapreduce.Job;
+import org.apache.hadoop.mapreduce.Mapper;
+import org.apache.hadoop.mapreduce.Reducer;
+import org.apache.hadoop.mapreduce.lib.input.FileInputFormat;
+import org.apache.hadoop.mapreduce.lib.input.FileSplit;
+import org.apache.hadoop.mapreduce.lib.input.TextInputFormat;
+import org.apache.hadoop.mapreduce.lib.output.FileOutputFormat;
+import org.apache.hadoop.mapreduce.lib.output.SequenceFileOutputFormat;
+import org.apache.mahout.classifier.logisticregression.HadoopUtils;
+import org.apache.mahout.utils.OptionConstants;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.StringTokenizer;
+
+import static libsvm.mapreduce.SVMPredictionJob.parseInstance;
+import static org.apache.mahout.utils.OptionConstants.*;
+
+/**
+ * Trains a binary linear SVM on libsvm formatted text input by consensus ADMM (see ADMMConsensus), one job per
+ * iteration: each map task solves the local SVM of its input split, warm started from the state it saved at the
+ * previous iteration, and the combiners and the single reducer sum the contributions of the splits, from which the
+ * driver computes the consensus and the residuals. The model is saved as a LINEAR-kernel libsvm model that
+ * SVMPredictionJob loads as any other model.
+ */
+public class SVMADMMJob {
+  private static final Logger log = LoggerFactory.getLogger(SVMADMMJob.class);
+
+  public static final String DIMENSION = "dimension";
+
+  public static final String COST = "cost";
+
+  public static final String RHO = "rho";
+
+  public static final String LOSS = "loss";
+
+  public static final String EPSILON = "epsilon";
+
+  public static final String MAX_ITERATIONS = "max_iterations";
+
+  public static final String LABELS = "labels";
+
+  public static final String WORK_DIR = "work_dir";
+
+  /** the consensus the map tasks of an iteration start from, none at the first iteration */
+  public static final String CONSENSUS_FILE = "admm.consensus";
+
+  /** the directory of the split states saved by the previous iteration, and of the current one */
+  public static final String PREVIOUS_STATE_DIR = "admm.previous.state";
+
+  public static final String STATE_DIR = "admm.state";
+
+  public static void main(String[] args) {
+    try {
+      CommandLine cmd = parseArguments(args);
+      System.exit(runSVMADMMJob(cmd) ? 0 : 1);
+    } catch (Exception e) {
+      log.error(e.getLocalizedMessage());
+      e.printStackTrace();
+      System.exit(1);
+    }
+  }
+
+  public static CommandLine parseArguments(String[] args) throws ParseException {
+    Options opts = new Options();
+    opts.addOption("i", INPUT_DIR, true, "specify the input path, libsvm formatted text files.");
+    opts.addOption("o", OUTPUT_DIR, true, "specify the libsvm model file to write.");
+    opts.addOption("d", DIMENSION, true, "specify the largest feature index, e.g. the number of hash buckets.");
+    opts.addOption("c", COST, true, "set the parameter C (default 1)");
+    opts.addOption("r", RHO, true, "set the ADMM penalty rho (default 1)");
+    opts.addOption("l", LOSS, true, "set the loss: 1 -- L1-loss (default), 2 -- L2-loss");
+    opts.addOption("e", EPSILON, true, "set the tolerance of the local solvers (default 0.01)");
+    opts.addOption("n", MAX_ITERATIONS, true, "set the maximum number of iterations (default 50)");
+    opts.addOption("y", LABELS, true, "specify the positive and the negative labels (default 1,-1)");
+    opts.addOption("w", WORK_DIR, true, "specify the directory of the iterations (default output_admm)");
+    CommandLineParser cmdParser = new PosixParser();
+    return cmdParser.parse(opts, args);
+  }
+
+  public static boolean runSVMADMMJob(CommandLine cmd) throws IOException, InterruptedException,
+          ClassNotFoundException {
+    Configuration conf = new Configuration();
+    conf.set(MAPREDUCE_QUEUE_NAME, cmd.getOptionValue(OptionConstants.QUEUE_NAME, "machine learning"));
+    conf.setInt(DIMENSION, Integer.parseInt(cmd.getOptionValue(DIMENSION)));
+    conf.set(COST, cmd.getOptionValue(COST, "1"));
+    conf.set(RHO, cmd.getOptionValue(RHO, "1"));
+    conf.setInt(LOSS, Integer.parseInt(cmd.getOptionValue(LOSS, String.valueOf(svm_linear.L1_LOSS))));
+    conf.set(EPSILON, cmd.getOptionValue(EPSILON, "0.01"));
+    conf.set(LABELS, cmd.getOptionValue(LABELS, "1,-1"));
+    // a map task saves the state of its split, a single attempt must run
+    conf.setBoolean("mapred.map.tasks.speculative.execution", false);
+    conf.set("mapred.compress.map.output", "true");
+
+    Path input = new Path(cmd.getOptionValue(INPUT_DIR));
+    String output = cmd.getOptionValue(OUTPUT_DIR);
+    Path workDir = new Path(cmd.getOptionValue(WORK_DIR, output + "_admm"));
+    int maxIterations = Integer.parseInt(cmd.getOptionValue(MAX_ITERATIONS, "50"));
+    FileSystem fs = workDir.getFileSystem(conf);
+    fs.delete(workDir, true);
+
+    ADMMConsensus admm = consensus(conf);
+    double[] z = new double[admm.size()];
+    boolean converged = false;
+    for (int iteration = 0; iteration < maxIterations && !converged; iteration++) {
+      Configuration iterationConf = new Configuration(conf);
+      if (iteration > 0) {
+        iterationConf.set(CONSENSUS_FILE, new Path(workDir, "consensus-" + (iteration - 1)).toString());
+        iterationConf.set(PREVIOUS_STATE_DIR, new Path(workDir, "state-" + (iteration - 1)).toString());
+      }
+      iterationConf.set(STATE_DIR, new Path(workDir, "state-" + iteration).toString());
+      Path sums = new Path(workDir, "sums-" + iteration);
+      if (!runIteration(iterationConf, input, sums, iteration))
+        return false;
+
+      ADMMWritable sum = readSum(fs, conf, sums);
+      fs.delete(sums, true);
+      double[] previousZ = z;
+      z = admm.consensus(sum);
+      writeVectors(fs, new Path(workDir, "consensus-" + iteration), z);
+      if (iteration > 0) {
+        fs.delete(new Path(workDir, "consensus-" + (iteration - 1)), true);
+        fs.delete(new Path(workDir, "state-" + (iteration - 1)), true);
+      }
+      converged = admm.converged(sum, z, previousZ);
+      log.info("iteration " + iteration + ": r = " + admm.getPrimalResidual() + ", s = " + admm.getDualResidual());
+    }
+    if (!converged)
+      log.warn("not converged after " + maxIterations + " iterations: r = " + admm.getPrimalResidual() + ", s = "
+              + admm.getDualResidual() + ", the model is saved anyway");
+
+    // svm_save_model writes a local file
+    svm_model model = admm.toModel(z, labels(conf));
+    File local = File.createTempFile("admm", ".model");
+    try {
+      svm.svm_save_model(local.getPath(), model);
+      Path outputPath = new Path(output);
+      outputPath.getFileSystem(conf).copyFromLocalFile(new Path(local.getPath()), outputPath);
+    } finally {
+      local.delete();
+    }
+    return true;
+  }
+
+  private static boolean runIteration(Configuration conf, Path input, Path output, int iteration)
+          throws IOException, InterruptedException, ClassNotFoundException {
+    Job job = new Job(conf, "svm admm iteration " + iteration);
+    job.setJarByClass(SVMADMMJob.class);
+    FileInputFormat.addInputPath(job, input);
+    FileOutputFormat.setOutputPath(job, output);
+    job.setMapperClass(ADMMMapper.class);
+    job.setCombinerClass(ADMMReducer.class);
+    job.setReducerClass(ADMMReducer.class);
+    job.setNumReduceTasks(1);
+    job.setOutputKeyClass(IntWritable.class);
+    job.setOutputValueClass(ADMMWritable.class);
+    job.setInputFormatClass(TextInputFormat.class);
+    job.setOutputFormatClass(SequenceFileOutputFormat.class);
+    return HadoopUtils.waitForCompletion(job, 10);
+  }
+
+  static ADMMConsensus consensus(Configuration conf) {
+    return new ADMMConsensus(conf.getInt(DIMENSION, 0), Double.parseDouble(conf.get(COST, "1")),
+            Double.parseDouble(conf.get(RHO, "1")), conf.getInt(LOSS, svm_linear.L1_LOSS),
+            Double.parseDouble(conf.get(EPSILON, "0.01")));
+  }
+
+  /** the positive and the negative labels */
+  static int[] labels(Configuration conf) {
+    String[] labels = conf.get(LABELS, "1,-1").split(",");
+    return new int[]{Integer.parseInt(labels[0].trim()), Integer.parseInt(labels[1].trim())};
+  }
+
+  static ADMMWritable readSum(FileSystem fs, Configuration conf, Path output) throws IOException {
+    SequenceFile.Reader reader = new SequenceFile.Reader(fs, new Path(output, "part-r-00000"), conf);
+    try {
+      IntWritable key = new IntWritable();
+      ADMMWritable sum = new ADMMWritable();
+      if (!reader.next(key, sum))
+        throw new IOException("no split was solved in " + output);
+      return sum;
+    } finally {
+      reader.close();
+    }
+  }
+
+  static void writeVectors(FileSystem fs, Path path, double[]... vectors) throws IOException {
+    FSDataOutputStream out = fs.create(path, true);
+    try {
+      for (double[] vector : vectors) {
+        out.writeInt(vector.length);
+        for (double v : vector)
+          out.writeDouble(v);
+      }
+    } finally {
+      out.close();
+    }
+  }
+
+  static double[][] readVectors(FileSystem fs, Path path, int count) throws IOException {
+    FSDataInputStream in = fs.open(path);
+    try {
+      double[][] vectors = new double[count][];
+      for (int j = 0; j < count; j++) {
+        vectors[j] = new double[in.readInt()];
+        for (int k = 0; k < vectors[j].length; k++)
+          vectors[j][k] = in.readDouble();
+      }
+      return vectors;
+    } finally {
+      in.close();
+    }
+  }
+
+  /**
+   * collects the instances of its split, then solves the local SVM in cleanup and saves the state of the split
+   * (alpha, x_j, u_j) for the warm start of the next iteration
+   */
+  public static class ADMMMapper extends Mapper<LongWritable, Text, IntWritable, ADMMWritable> {
+    private final List<svm_node[]> x = new ArrayList<svm_node[]>();
+
+    private final List<Double> y = new ArrayList<Double>();
+
+    private int positive;
+
+    private int dimension;
+
+    @Override
+    protected void setup(Context context) throws IOException, InterruptedException {
+      super.setup(context);
+      positive = labels(context.getConfiguration())[0];
+      dimension = context.getConfiguration().getInt(DIMENSION, 0);
+    }
+
+    @Override
+    protected void map(LongWritable offset, Text input, Context context) throws IOException,
+            InterruptedException {
+      String line = input.toString();
+      StringTokenizer st = new StringTokenizer(line, SVMPredictionJob.splitter);
+      if (!st.hasMoreTokens())
+        return;
+      svm_node[] instance = parseInstance(line, false);
+      for (svm_node node : instance)
+        if (node.index > dimension)
+          throw new IllegalArgumentException("feature index " + node.index + " at offset " + offset
+                  + " is larger than the dimension " + dimension);
+      y.add(Double.parseDouble(st.nextToken()) == positive ? +1.0 : -1.0);
+      x.add(instance);
+    }
+
+    @Override
+    protected void cleanup(Context context) throws IOException, InterruptedException {
+      Configuration conf = context.getConfiguration();
+      ADMMConsensus admm = consensus(conf);
+      double[] labels = new double[y.size()];
+      for (int i = 0; i < labels.length; i++)
+        labels[i] = y.get(i);
+      ADMMConsensus.Split split = admm.new Split(x.toArray(new svm_node[labels.length][]), labels);
+
+      FileSplit inputSplit = (FileSplit) context.getInputSplit();
+      // the files of the same name in different directories are told apart by the digest of their full path
+      String splitName = inputSplit.getPath().getName() + "-" + MD5Hash.digest(inputSplit.getPath().toString()) + "-"
+              + inputSplit.getStart();
+      FileSystem fs = FileSystem.get(conf);
+      double[] z = new double[admm.size()];
+      if (conf.get(CONSENSUS_FILE) != null) {
+        z = readVectors(fs, new Path(conf.get(CONSENSUS_FILE)), 1)[0];
+        double[][] state = readVectors(fs, new Path(conf.get(PREVIOUS_STATE_DIR), splitName), 3);
+        split.restore(state[0], state[1], state[2]);
+      }
+      ADMMWritable sum = split.step(z);
+      writeVectors(fs, new Path(conf.get(STATE_DIR), splitName), split.getAlpha(), split.getW(), split.getU());
+      context.write(new IntWritable(0), sum);
+    }
+  }
+
+  /**
+   * sums up the contributions of the splits, also used as the combiner
+   */
+  public static class ADMMReducer extends Reducer<IntWritable, ADMMWritable, IntWritable, ADMMWritable> {
+    @Override
+    protected void reduce(IntWritable key, Iterable<ADMMWritable> values, Context context) throws IOException,
+            InterruptedException {
+      ADMMWritable sum = new ADMMWritable();
+      for (ADMMWritable value : values)
+        sum.merge(value);
+      context.write(key, sum);
+    }
+  }
+}
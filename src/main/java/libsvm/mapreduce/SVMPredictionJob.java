@@ -38,6 +38,23 @@ public class SVMPredictionJob {
 
   public static final String MODE_FILE = "model_file";
 
+  public static final String OUTPUT_TYPE = "output_type";
+
+  /** the svm_scale restore file applied to the input by the mappers, if any */
+  public static final String RESTORE_FILE = "restore_file";
+
+  /** the predicted label as DoubleWritable (default) */
+  public static final String OUTPUT_LABEL = "label";
+
+  /** the predicted label and the probability estimates as FloatArrayWritable */
+  public static final String OUTPUT_PROBABILITY = "probability";
+
+  /** the predicted label and the decision values as FloatArrayWritable */
+  public static final String OUTPUT_DECISION = "decision";
+
+  /** the predicted label, the probability estimates and the decision values as FloatArrayWritable */
+  public static final String OUTPUT_ALL = "all";
+
   public static void main(String[] args) {
     try {
       CommandLine cmd = parseArguments(args);
@@ -54,7 +71,11 @@ public class SVMPredictionJob {
     Options opts = new Options();
     opts.addOption("i", INPUT_DIR, true, "specify the input path of the visit_strength of 500 topic.");
     opts.addOption("o", OUTPUT_DIR, true, "specify the output path of the job.");
-    opts.addOption("m", MODE_FILE, true, "specify the libsvm model file");
+    opts.addOption("m", MODE_FILE, true, "specify the libsvm model file, or a comma separated list of model files scored in a single pass");
+    opts.addOption("t", OUTPUT_TYPE, true, "specify the output type: label (default), probability, decision or all");
+    opts.addOption("b", FeatureHasher.NUM_BUCKETS, true, "hash the raw string features of text input lines \"id\\tfeatures\" into the given number of buckets");
+    opts.addOption("g", FeatureHasher.SIGNED, false, "use signed hashing, with -b");
+    opts.addOption("r", RESTORE_FILE, true, "specify a svm_scale restore file (svm_scale -s or SVMScalingJob) to scale the input with");
     // parse options into CommandLine
     CommandLineParser cmdParser = new PosixParser();
     return cmdParser.parse(opts, args);
@@ -64,9 +85,21 @@ public class SVMPredictionJob {
     Configuration conf = new Configuration();
     conf.set(MAPREDUCE_QUEUE_NAME, cmd.getOptionValue(OptionConstants.QUEUE_NAME, "machine learning"));
     conf.set(MODE_FILE, cmd.getOptionValue(MODE_FILE));
-    String model_file = cmd.getOptionValue(MODE_FILE);
-    // add model_file to distribution cache
-    DistributedCache.addCacheFile(new Path(model_file).toUri(), conf);
+    String[] model_files = cmd.getOptionValue(MODE_FILE).split(",");
+    String outputType = cmd.getOptionValue(OUTPUT_TYPE, OUTPUT_LABEL);
+    if (!Arrays.asList(OUTPUT_LABEL, OUTPUT_PROBABILITY, OUTPUT_DECISION, OUTPUT_ALL).contains(outputType)) {
+      throw new IllegalArgumentException("unknown output type: " + outputType);
+    }
+    conf.set(OUTPUT_TYPE, outputType);
+    if (cmd.hasOption(RESTORE_FILE))
+      conf.set(RESTORE_FILE, cmd.getOptionValue(RESTORE_FILE));
+    boolean hashed = cmd.hasOption(FeatureHasher.NUM_BUCKETS);
+    if (hashed)
+      new FeatureHasher(Integer.parseInt(cmd.getOptionValue(FeatureHasher.NUM_BUCKETS)),
+              cmd.hasOption(FeatureHasher.SIGNED)).store(conf);
+    // add model files to distribution cache, the order of the files is the order of the scores in the output
+    for (String model_file : model_files)
+      DistributedCache.addCacheFile(new Path(model_file.trim()).toUri(), conf);
     // set priority to avoid killed by other job
     conf.set("mapred.job.priority", "HIGH");
     conf.set("mapred.compress.map.output", "true");
@@ -76,11 +109,16 @@ public class SVMPredictionJob {
     job.setJarByClass(SVMPredictionJob.class);
     FileInputFormat.addInputPath(job, new Path(cmd.getOptionValue(INPUT_DIR)));
     FileOutputFormat.setOutputPath(job, new Path(cmd.getOptionValue(OUTPUT_DIR)));
-    job.setMapperClass(SVMPredictionMapper.class);
     job.setNumReduceTasks(0);
     job.setOutputKeyClass(Text.class);
-    job.setOutputValueClass(DoubleWritable.class);
-    job.setInputFormatClass(SequenceFileInputFormat.class);
+    if (OUTPUT_LABEL.equals(outputType) && model_files.length == 1) {
+      job.setMapperClass(SVMPredictionMapper.class);
+      job.setOutputValueClass(DoubleWritable.class);
+    } else {
+      job.setMapperClass(SVMScoringMapper.class);
+      job.setOutputValueClass(FloatArrayWritable.class);
+    }
+    job.setInputFormatClass(hashed ? HashedVectorInputFormat.class : SequenceFileInputFormat.class);
     job.setOutputFormatClass(SequenceFileOutputFormat.class);
 
     return HadoopUtils.waitForCompletion(job, 10);
@@ -32,6 +32,9 @@ public class SVMPredictionMapper extends Mapper<Text, VectorWritable, Text, Doub
 
   private svm_model model;
 
+  /** the scaling of the restore file, null if the input is not scaled */
+  private SVMScaling scaling;
+
   @Override
   protected void setup(Context context) throws IOException, InterruptedException {
     super.setup(context);
@@ -41,6 +44,9 @@ public class SVMPredictionMapper extends Mapper<Text, VectorWritable, Text, Doub
     model = loadModel(fs, conf, caches[0]);
     log.info("model.nr_class = " + model.nr_class);
     log.info("number of SVs = " + model.l);
+    scaling = SVMScaling.load(conf);
+    if (scaling != null)
+      log.info("scaling the input with " + conf.get(SVMPredictionJob.RESTORE_FILE));
     if (caches.length > 1) {
       throw new IllegalArgumentException("the distribution cache could only have one model file");
     }
@@ -50,6 +56,8 @@ public class SVMPredictionMapper extends Mapper<Text, VectorWritable, Text, Doub
   protected void map(Text cookieId, VectorWritable instance, Context context) throws IOException,
           InterruptedException {
     svm_node[] x = parseInstance(instance.get());
+    if (scaling != null)
+      x = scaling.scale(x);
     double v = svm.svm_predict(model, x);
     log.debug(v + " : " + Arrays.toString(x));
     context.write(cookieId, new DoubleWritable(v));
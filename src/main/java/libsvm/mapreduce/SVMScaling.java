@@ -0,0 +1,148 @@
+package libsvm.mapreduce;
+
+import libsvm.libsvm.svm_node;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.StringTokenizer;
+
+/**
+ * The feature scaling of a svm_scale restore file (svm_scale -s, or SVMScalingJob), applied to one instance at a
+ * time so that the prediction mappers can scale their input on the fly. An instance is scaled like svm_scale -r
+ * scales a line: the values equal to the min or the max of a feature become lower or upper, and the absent
+ * features are written when their value 0 is not scaled to 0. The features absent from the restore file were
+ * single-valued when it was saved, so svm_scale skipped them from the training data, and they are skipped too.
+ * The y section, if any, is ignored since the instances have no label.
+ */
+public class SVMScaling {
+  private final double lower;
+
+  private final double upper;
+
+  private final double[] featureMin;
+
+  private final double[] featureMax;
+
+  /** whether the feature is in the restore file */
+  private final boolean[] scaled;
+
+  /** the features whose value 0 is not scaled to 0, in increasing order, and their scaled 0 */
+  private final int[] zeroIndex;
+
+  private final double[] zeroValue;
+
+  public SVMScaling(double lower, double upper, double[] featureMin, double[] featureMax, boolean[] scaled) {
+    this.lower = lower;
+    this.upper = upper;
+    this.featureMin = featureMin;
+    this.featureMax = featureMax;
+    this.scaled = scaled;
+    int n = 0;
+    int[] zeros = new int[featureMin.length];
+    for (int i = 1; i < featureMin.length; i++)
+      if (scaled[i] && scale(i, 0) != 0)
+        zeros[n++] = i;
+    zeroIndex = Arrays.copyOf(zeros, n);
+    zeroValue = new double[n];
+    for (int z = 0; z < n; z++)
+      zeroValue[z] = scale(zeroIndex[z], 0);
+  }
+
+  /** the scaling of the restore file of conf, or null if there is none */
+  public static SVMScaling load(Configuration conf) throws IOException {
+    String restoreFile = conf.get(SVMPredictionJob.RESTORE_FILE);
+    if (restoreFile == null)
+      return null;
+    Path path = new Path(restoreFile);
+    FileSystem fs = path.getFileSystem(conf);
+    BufferedReader reader = new BufferedReader(new InputStreamReader(fs.open(path)));
+    try {
+      return read(reader);
+    } finally {
+      reader.close();
+    }
+  }
+
+  /** parse a restore file in the format of svm_scale -s */
+  public static SVMScaling read(BufferedReader reader) throws IOException {
+    String line = reader.readLine();
+    if (line != null && line.trim().equals("y")) {
+      // y_lower y_upper and y_min y_max
+      reader.readLine();
+      reader.readLine();
+      line = reader.readLine();
+    }
+    if (line == null || !line.trim().equals("x"))
+      throw new IOException("not a restore file, the x section is missing");
+    StringTokenizer st = new StringTokenizer(reader.readLine());
+    double lower = Double.parseDouble(st.nextToken());
+    double upper = Double.parseDouble(st.nextToken());
+
+    List<Integer> indexes = new ArrayList<Integer>();
+    List<double[]> minMax = new ArrayList<double[]>();
+    int maxIndex = 0;
+    while ((line = reader.readLine()) != null) {
+      st = new StringTokenizer(line);
+      if (!st.hasMoreTokens())
+        continue;
+      int index = Integer.parseInt(st.nextToken());
+      indexes.add(index);
+      minMax.add(new double[]{Double.parseDouble(st.nextToken()), Double.parseDouble(st.nextToken())});
+      maxIndex = Math.max(maxIndex, index);
+    }
+    double[] featureMin = new double[maxIndex + 1];
+    double[] featureMax = new double[maxIndex + 1];
+    boolean[] scaled = new boolean[maxIndex + 1];
+    for (int k = 0; k < indexes.size(); k++) {
+      int index = indexes.get(k);
+      featureMin[index] = minMax.get(k)[0];
+      featureMax[index] = minMax.get(k)[1];
+      scaled[index] = featureMin[index] != featureMax[index];
+    }
+    return new SVMScaling(lower, upper, featureMin, featureMax, scaled);
+  }
+
+  /** the scaled value of a feature of the restore file, as svm_scale computes it */
+  public double scale(int index, double value) {
+    if (value == featureMin[index])
+      return lower;
+    else if (value == featureMax[index])
+      return upper;
+    else
+      return lower + (upper - lower) * (value - featureMin[index]) / (featureMax[index] - featureMin[index]);
+  }
+
+  /** the scaled instance, whose nodes are in increasing index order */
+  public svm_node[] scale(svm_node[] x) {
+    List<svm_node> result = new ArrayList<svm_node>(x.length + zeroIndex.length);
+    int z = 0;
+    for (svm_node node : x) {
+      for (; z < zeroIndex.length && zeroIndex[z] < node.index; z++)
+        result.add(node(zeroIndex[z], zeroValue[z]));
+      if (z < zeroIndex.length && zeroIndex[z] == node.index)
+        z++;
+      if (node.index < scaled.length && scaled[node.index]) {
+        double value = scale(node.index, node.value);
+        if (value != 0)
+          result.add(node(node.index, value));
+      }
+    }
+    for (; z < zeroIndex.length; z++)
+      result.add(node(zeroIndex[z], zeroValue[z]));
+    return result.toArray(new svm_node[result.size()]);
+  }
+
+  private static svm_node node(int index, double value) {
+    svm_node node = new svm_node();
+    node.index = index;
+    node.value = value;
+    return node;
+  }
+}
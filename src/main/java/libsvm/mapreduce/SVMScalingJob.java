@@ -0,0 +1,195 @@
+package libsvm.mapreduce;
+
+import org.apache.commons.cli.*;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.IntWritable;
+import org.apache.hadoop.io.NullWritable;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.mapreduce.Job;
+import org.apache.hadoop.mapreduce.Mapper;
+import org.apache.hadoop.mapreduce.Reducer;
+import org.apache.hadoop.mapreduce.lib.input.FileInputFormat;
+import org.apache.hadoop.mapreduce.lib.input.SequenceFileInputFormat;
+import org.apache.hadoop.mapreduce.lib.output.FileOutputFormat;
+import org.apache.hadoop.mapreduce.lib.output.TextOutputFormat;
+import org.apache.mahout.classifier.logisticregression.HadoopUtils;
+import org.apache.mahout.math.Vector;
+import org.apache.mahout.math.VectorWritable;
+import org.apache.mahout.utils.OptionConstants;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.Iterator;
+
+import static org.apache.mahout.utils.OptionConstants.*;
+
+/**
+ * Computes the min and max of each feature of the input of SVMPredictionJob and writes them in the restore file
+ * format of svm_scale -s, so that SVMPredictionJob -r (or svm_scale -r) scales other data the same way. As in
+ * svm_scale, a feature absent from some instance also takes the value 0, and the single-valued features are not
+ * written. The mappers emit the values of each feature, the combiners merge them into one min/max per feature,
+ * and a single reducer writes the file in index order.
+ */
+public class SVMScalingJob {
+  private static final Logger log = LoggerFactory.getLogger(SVMScalingJob.class);
+
+  public static final String LOWER = "lower";
+
+  public static final String UPPER = "upper";
+
+  public static final String MAX_ABS = "max_abs";
+
+  /** the key of the number of instances, the feature indexes start at 1 */
+  private static final int INSTANCES_KEY = 0;
+
+  public static void main(String[] args) {
+    try {
+      CommandLine cmd = parseArguments(args);
+      System.exit(runSVMScalingJob(cmd) ? 0 : 1);
+    } catch (Exception e) {
+      log.error(e.getLocalizedMessage());
+      e.printStackTrace();
+      System.exit(1);
+    }
+  }
+
+  public static CommandLine parseArguments(String[] args) throws ParseException {
+    Options opts = new Options();
+    opts.addOption("i", INPUT_DIR, true, "specify the input path, sequence files of (id, VectorWritable) as for SVMPredictionJob.");
+    opts.addOption("o", OUTPUT_DIR, true, "specify the restore file to write.");
+    opts.addOption("l", LOWER, true, "x scaling lower limit (default -1)");
+    opts.addOption("u", UPPER, true, "x scaling upper limit (default +1)");
+    opts.addOption("m", MAX_ABS, false, "scale by the max absolute value of each feature to [-1,1], keeping 0 as 0 (as svm_scale -m)");
+    CommandLineParser cmdParser = new PosixParser();
+    return cmdParser.parse(opts, args);
+  }
+
+  public static boolean runSVMScalingJob(CommandLine cmd) throws IOException, InterruptedException, ClassNotFoundException {
+    Configuration conf = new Configuration();
+    conf.set(MAPREDUCE_QUEUE_NAME, cmd.getOptionValue(OptionConstants.QUEUE_NAME, "machine learning"));
+    double lower = Double.parseDouble(cmd.getOptionValue(LOWER, "-1"));
+    double upper = Double.parseDouble(cmd.getOptionValue(UPPER, "1"));
+    if (!(upper > lower)) {
+      throw new IllegalArgumentException("inconsistent lower/upper specification");
+    }
+    conf.set(LOWER, String.valueOf(lower));
+    conf.set(UPPER, String.valueOf(upper));
+    conf.setBoolean(MAX_ABS, cmd.hasOption(MAX_ABS));
+    conf.set("mapred.compress.map.output", "true");
+
+    Path restoreFile = new Path(cmd.getOptionValue(OUTPUT_DIR));
+    Path output = restoreFile.suffix(".tmp");
+    Job job = new Job(conf, cmd.getOptionValue(OptionConstants.JOB_NAME, "svm scaling"));
+    job.setJarByClass(SVMScalingJob.class);
+    FileInputFormat.addInputPath(job, new Path(cmd.getOptionValue(INPUT_DIR)));
+    FileOutputFormat.setOutputPath(job, output);
+    job.setMapperClass(ScalingMapper.class);
+    job.setCombinerClass(MinMaxCombiner.class);
+    job.setReducerClass(ScalingReducer.class);
+    // a single file in index order
+    job.setNumReduceTasks(1);
+    job.setMapOutputKeyClass(IntWritable.class);
+    job.setMapOutputValueClass(MinMaxWritable.class);
+    job.setOutputKeyClass(NullWritable.class);
+    job.setOutputValueClass(Text.class);
+    job.setInputFormatClass(SequenceFileInputFormat.class);
+    job.setOutputFormatClass(TextOutputFormat.class);
+
+    if (!HadoopUtils.waitForCompletion(job, 10))
+      return false;
+    FileSystem fs = restoreFile.getFileSystem(conf);
+    fs.delete(restoreFile, false);
+    boolean renamed = fs.rename(new Path(output, "part-r-00000"), restoreFile);
+    fs.delete(output, true);
+    return renamed;
+  }
+
+  /**
+   * emits (index, value) for each non-zero feature of an instance, and (0, 1) for the instance
+   */
+  public static class ScalingMapper extends Mapper<Text, VectorWritable, IntWritable, MinMaxWritable> {
+    private final IntWritable key = new IntWritable();
+
+    private final MinMaxWritable value = new MinMaxWritable();
+
+    @Override
+    protected void map(Text cookieId, VectorWritable instance, Context context) throws IOException,
+            InterruptedException {
+      key.set(INSTANCES_KEY);
+      value.set(0, 0, 1);
+      context.write(key, value);
+      Iterator<Vector.Element> iterator = instance.get().iterateNonZero();
+      while (iterator.hasNext()) {
+        Vector.Element element = iterator.next();
+        key.set(element.index() + 1); // since the index is start from 1 for libsvm
+        value.set(element.get(), element.get(), 1);
+        context.write(key, value);
+      }
+    }
+  }
+
+  /**
+   * merges the values of a feature into one min/max and count
+   */
+  public static class MinMaxCombiner extends Reducer<IntWritable, MinMaxWritable, IntWritable, MinMaxWritable> {
+    @Override
+    protected void reduce(IntWritable key, Iterable<MinMaxWritable> values, Context context) throws IOException,
+            InterruptedException {
+      context.write(key, merge(values));
+    }
+  }
+
+  static MinMaxWritable merge(Iterable<MinMaxWritable> values) {
+    MinMaxWritable result = new MinMaxWritable();
+    for (MinMaxWritable value : values)
+      result.merge(value);
+    return result;
+  }
+
+  /**
+   * writes the restore file: the x section, then the min and max of each feature which is not single-valued. The
+   * number of instances comes first since its key is the smallest. With max_abs, the limits are [-1, 1] and the min
+   * and max of a feature are [-m, m], m being its max absolute value, so that 0 is scaled to 0.
+   */
+  public static class ScalingReducer extends Reducer<IntWritable, MinMaxWritable, NullWritable, Text> {
+    private long numOfInstance;
+
+    private boolean maxAbs;
+
+    @Override
+    protected void setup(Context context) throws IOException, InterruptedException {
+      super.setup(context);
+      Configuration conf = context.getConfiguration();
+      maxAbs = conf.getBoolean(MAX_ABS, false);
+      double lower = maxAbs ? -1 : Double.parseDouble(conf.get(LOWER, "-1"));
+      double upper = maxAbs ? 1 : Double.parseDouble(conf.get(UPPER, "1"));
+      context.write(NullWritable.get(), new Text("x"));
+      context.write(NullWritable.get(), new Text(String.format("%.16g %.16g", lower, upper)));
+    }
+
+    @Override
+    protected void reduce(IntWritable key, Iterable<MinMaxWritable> values, Context context) throws IOException,
+            InterruptedException {
+      MinMaxWritable minMax = merge(values);
+      if (key.get() == INSTANCES_KEY) {
+        numOfInstance = minMax.getCount();
+        return;
+      }
+      double min = minMax.getMin();
+      double max = minMax.getMax();
+      if (minMax.getCount() < numOfInstance) {
+        min = Math.min(min, 0);
+        max = Math.max(max, 0);
+      }
+      if (maxAbs) {
+        max = Math.max(Math.abs(min), Math.abs(max));
+        min = -max;
+      }
+      if (min != max)
+        context.write(NullWritable.get(), new Text(String.format("%d %.16g %.16g", key.get(), min, max)));
+    }
+  }
+}
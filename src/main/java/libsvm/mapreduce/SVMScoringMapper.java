@@ -0,0 +1,131 @@
+package libsvm.mapreduce;
+
+import libsvm.libsvm.svm;
+import libsvm.libsvm.svm_model;
+import libsvm.libsvm.svm_node;
+import libsvm.libsvm.svm_parameter;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.filecache.DistributedCache;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.mapreduce.Mapper;
+import org.apache.mahout.math.VectorWritable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import static libsvm.mapreduce.SVMPredictionJob.*;
+
+/**
+ * Mapper for svm prediction which scores each instance against all the model files in the distribution cache
+ * and emits one composite record per instance. For each model (in the order of the cache files) the record holds
+ * the predicted label, followed by the probability estimates of each class (in the order of model.label) and/or
+ * the decision values, depending on the output type.
+ */
+public class SVMScoringMapper extends Mapper<Text, VectorWritable, Text, FloatArrayWritable> {
+  private static final Logger log = LoggerFactory.getLogger(SVMScoringMapper.class);
+
+  private int numOfInstance = 0;
+
+  private int[] numOfPositive;
+
+  private MultiModelScorer scorer;
+
+  /** the scaling of the restore file, null if the input is not scaled */
+  private SVMScaling scaling;
+
+  private boolean withProbability;
+
+  private boolean withDecisionValues;
+
+  private double[][] probEstimates;
+
+  private double[][] decValues;
+
+  private int numOfScores;
+
+  @Override
+  protected void setup(Context context) throws IOException, InterruptedException {
+    super.setup(context);
+    Configuration conf = context.getConfiguration();
+    FileSystem fs = FileSystem.getLocal(conf);
+    Path[] caches = DistributedCache.getLocalCacheFiles(conf);
+    List<svm_model> models = new ArrayList<svm_model>(caches.length);
+    for (Path cache : caches) {
+      svm_model model = loadModel(fs, conf, cache);
+      log.info(cache + " : model.nr_class = " + model.nr_class + ", number of SVs = " + model.l);
+      models.add(model);
+    }
+
+    String outputType = conf.get(OUTPUT_TYPE, OUTPUT_LABEL);
+    withProbability = OUTPUT_PROBABILITY.equals(outputType) || OUTPUT_ALL.equals(outputType);
+    withDecisionValues = OUTPUT_DECISION.equals(outputType) || OUTPUT_ALL.equals(outputType);
+    if (!withProbability && !withDecisionValues && !OUTPUT_LABEL.equals(outputType)) {
+      throw new IllegalArgumentException("unknown output type: " + outputType);
+    }
+
+    scorer = new MultiModelScorer(models);
+    scaling = SVMScaling.load(conf);
+    if (scaling != null)
+      log.info("scaling the input with " + conf.get(SVMPredictionJob.RESTORE_FILE));
+    log.info("number of kernel evaluations per instance = " + scorer.numKernelEvaluations());
+    numOfPositive = new int[models.size()];
+    probEstimates = new double[models.size()][];
+    decValues = new double[models.size()][];
+    numOfScores = 0;
+    for (int m = 0; m < models.size(); m++) {
+      svm_model model = models.get(m);
+      int svmType = svm.svm_get_svm_type(model);
+      boolean isClassification = svmType == svm_parameter.C_SVC || svmType == svm_parameter.NU_SVC;
+      if (withProbability && (!isClassification || svm.svm_check_probability_model(model) == 0)) {
+        throw new IllegalArgumentException(caches[m] + " does not support probability estimates");
+      }
+      int nr_class = svm.svm_get_nr_class(model);
+      probEstimates[m] = new double[nr_class];
+      decValues[m] = new double[isClassification ? nr_class * (nr_class - 1) / 2 : 1];
+      numOfScores += 1 + (withProbability ? probEstimates[m].length : 0)
+              + (withDecisionValues ? decValues[m].length : 0);
+    }
+  }
+
+  @Override
+  protected void map(Text cookieId, VectorWritable instance, Context context) throws IOException,
+          InterruptedException {
+    svm_node[] x = parseInstance(instance.get());
+    if (scaling != null)
+      x = scaling.scale(x);
+    scorer.setInstance(x);
+
+    float[] scores = new float[numOfScores];
+    int k = 0;
+    for (int m = 0; m < scorer.numModels(); m++) {
+      double v;
+      if (withProbability)
+        v = scorer.predictProbability(m, probEstimates[m], decValues[m]);
+      else
+        v = scorer.predictValues(m, decValues[m]);
+      scores[k++] = (float) v;
+      if (withProbability)
+        for (double p : probEstimates[m])
+          scores[k++] = (float) p;
+      if (withDecisionValues)
+        for (double d : decValues[m])
+          scores[k++] = (float) d;
+      if (v == 1.0)
+        numOfPositive[m]++;
+    }
+    context.write(cookieId, new FloatArrayWritable(scores));
+    numOfInstance++;
+  }
+
+  @Override
+  protected void cleanup(Context context) throws IOException, InterruptedException {
+    context.getCounter("dataset", "number of instance").increment(numOfInstance);
+    for (int m = 0; m < numOfPositive.length; m++)
+      context.getCounter("dataset", "number of positive of model " + m).increment(numOfPositive[m]);
+  }
+}
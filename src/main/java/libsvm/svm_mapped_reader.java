@@ -0,0 +1,394 @@
+package libsvm;
+
+import libsvm.libsvm.*;
+import java.io.*;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Reads a problem in svmlight format by memory-mapping the file and parsing
+ * chunks aligned to line boundaries in parallel. The instances are kept in
+ * the compressed sparse rows of their chunks, each of which holds less than
+ * 2^31 nodes, and to_problem builds the nodes of each instance from them, so
+ * the total number of nodes is not limited by the size of an array.
+ */
+public class svm_mapped_reader
+{
+	/** nominal size of a chunk, a chunk is mapped as a whole */
+	private static final long CHUNK_SIZE = 1L << 26;
+
+	private static final double[] POW10 = new double[23];
+	static
+	{
+		POW10[0] = 1;
+		for(int i=1;i<POW10.length;i++)
+			POW10[i] = POW10[i-1] * 10;
+	}
+
+	public int l;
+	/** the number of index:value pairs */
+	public long nnz;
+	/** the largest last index of an instance, as in svm_train */
+	public int max_index;
+	private List<chunk> chunks;
+
+	public static svm_mapped_reader read(String file_name, int nr_thread) throws IOException
+	{
+		RandomAccessFile file = new RandomAccessFile(file_name, "r");
+		ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, nr_thread));
+		try
+		{
+			final FileChannel channel = file.getChannel();
+			long size = channel.size();
+			int nr_chunk = (int)Math.max(Math.max(1, nr_thread), (size + CHUNK_SIZE - 1) / CHUNK_SIZE);
+			final long[] bounds = line_bounds(channel, nr_chunk);
+
+			List<Future<chunk>> futures = new ArrayList<Future<chunk>>();
+			for(int c=0;c<nr_chunk;c++)
+			{
+				final int k = c;
+				futures.add(executor.submit(new Callable<chunk>() {
+					public chunk call() throws IOException
+					{
+						chunk result = new chunk();
+						if(bounds[k+1] > bounds[k])
+							result.parse(channel.map(FileChannel.MapMode.READ_ONLY, bounds[k], bounds[k+1] - bounds[k]));
+						return result;
+					}
+				}));
+			}
+			svm_mapped_reader data = new svm_mapped_reader();
+			data.chunks = new ArrayList<chunk>();
+			long l = 0;
+			for(Future<chunk> future : futures)
+			{
+				chunk c = get(future);
+				data.chunks.add(c);
+				l += c.l;
+				data.nnz += c.nnz;
+				data.max_index = Math.max(data.max_index, c.max_index);
+			}
+			if(l > Integer.MAX_VALUE)
+				throw new IllegalArgumentException("too many instances: " + l + ", at most " + Integer.MAX_VALUE + " can be trained");
+			data.l = (int)l;
+			return data;
+		}
+		finally
+		{
+			executor.shutdown();
+			file.close();
+		}
+	}
+
+	/** the result of a task, with the IOException or RuntimeException it threw */
+	static <T> T get(Future<T> future) throws IOException
+	{
+		try
+		{
+			return future.get();
+		}
+		catch(InterruptedException e)
+		{
+			throw new InterruptedIOException();
+		}
+		catch(ExecutionException e)
+		{
+			if(e.getCause() instanceof IOException)
+				throw (IOException)e.getCause();
+			if(e.getCause() instanceof RuntimeException)
+				throw (RuntimeException)e.getCause();
+			throw new IOException(e.getCause().toString());
+		}
+	}
+
+	/**
+	 * the start of each chunk, moved forward to the start of a line, and the
+	 * size of the file
+	 */
+	static long[] line_bounds(FileChannel channel, int nr_chunk) throws IOException
+	{
+		long size = channel.size();
+		long[] bounds = new long[nr_chunk+1];
+		bounds[nr_chunk] = size;
+		java.nio.ByteBuffer buf = java.nio.ByteBuffer.allocate(4096);
+		for(int c=1;c<nr_chunk;c++)
+		{
+			long pos = Math.max(size * c / nr_chunk, bounds[c-1]);
+			// the line running over pos belongs to the previous chunk
+			if(pos > 0)
+				pos--;
+			search:
+			while(pos < size)
+			{
+				buf.clear();
+				int n = channel.read(buf, pos);
+				if(n <= 0)
+				{
+					pos = size;
+					break;
+				}
+				for(int i=0;i<n;i++)
+					if(buf.get(i) == '\n')
+					{
+						pos += i + 1;
+						break search;
+					}
+				pos += n;
+			}
+			bounds[c] = Math.min(pos, size);
+		}
+		return bounds;
+	}
+
+	/** the instances as svm_problem, the nodes of each instance are allocated at once */
+	public svm_problem to_problem()
+	{
+		svm_problem prob = new svm_problem();
+		prob.l = l;
+		prob.y = new double[l];
+		prob.x = new svm_node[l][];
+		int i = 0;
+		for(chunk c : chunks)
+		{
+			System.arraycopy(c.y, 0, prob.y, i, c.l);
+			int start = 0;
+			for(int j=0;j<c.l;j++,i++)
+			{
+				int m = c.row_end[j] - start;
+				prob.x[i] = new svm_node[m];
+				for(int k=0;k<m;k++)
+				{
+					svm_node node = new svm_node();
+					node.index = c.index[start+k];
+					node.value = c.value[start+k];
+					prob.x[i][k] = node;
+				}
+				start = c.row_end[j];
+			}
+		}
+		return prob;
+	}
+
+	/** the instances of one chunk, in growable arrays */
+	private static class chunk
+	{
+		int l, nnz, max_index;
+		double[] y = new double[1024];
+		int[] row_end = new int[1024];
+		int[] index = new int[4096];
+		double[] value = new double[4096];
+
+		void parse(MappedByteBuffer buf)
+		{
+			parser p = new parser(buf);
+			while(p.next_line())
+			{
+				if(l == y.length)
+				{
+					y = Arrays.copyOf(y, 2*l);
+					row_end = Arrays.copyOf(row_end, 2*l);
+				}
+				y[l] = p.parse_double();
+				int last_index = 0;
+				while(p.has_feature())
+				{
+					if(nnz == index.length)
+					{
+						index = Arrays.copyOf(index, 2*nnz);
+						value = Arrays.copyOf(value, 2*nnz);
+					}
+					last_index = index[nnz] = p.parse_index();
+					value[nnz++] = p.parse_double();
+				}
+				max_index = Math.max(max_index, last_index);
+				row_end[l++] = nnz;
+				p.end_line();
+			}
+		}
+	}
+
+	/**
+	 * The lines of a mapped chunk in svmlight format: next_line, then the
+	 * label by parse_double, then parse_index and parse_double while
+	 * has_feature, then end_line.
+	 */
+	static class parser
+	{
+		private final MappedByteBuffer buf;
+		private int pos;
+		private final int limit;
+		/** the number of lines started, for the error messages */
+		private int line;
+
+		parser(MappedByteBuffer buf)
+		{
+			this.buf = buf;
+			pos = 0;
+			limit = buf.limit();
+		}
+
+		/** skip the empty lines, false at the end of the chunk */
+		boolean next_line()
+		{
+			while(true)
+			{
+				skip_space();
+				if(pos >= limit)
+					return false;
+				if(buf.get(pos) != '\n')
+					break;
+				// empty line
+				pos++;
+			}
+			line++;
+			return true;
+		}
+
+		/** true if an index:value pair remains on the line */
+		boolean has_feature()
+		{
+			skip_space();
+			return pos < limit && buf.get(pos) != '\n';
+		}
+
+		/** the index of a pair, the value follows */
+		int parse_index()
+		{
+			int index = parse_int();
+			if(pos >= limit || buf.get(pos) != ':')
+				throw new IllegalArgumentException("Wrong input format at line " + line + " of a chunk");
+			pos++;
+			return index;
+		}
+
+		void end_line()
+		{
+			pos++;
+		}
+
+		private void skip_space()
+		{
+			while(pos < limit)
+			{
+				byte b = buf.get(pos);
+				if(b != ' ' && b != '\t' && b != '\r' && b != '\f')
+					break;
+				pos++;
+			}
+		}
+
+		private boolean is_delimiter(byte b)
+		{
+			return b == ' ' || b == '\t' || b == '\n' || b == '\r' || b == '\f' || b == ':';
+		}
+
+		private int parse_int()
+		{
+			int start = pos;
+			boolean negative = false;
+			if(pos < limit && (buf.get(pos) == '-' || buf.get(pos) == '+'))
+				negative = buf.get(pos++) == '-';
+			long v = 0;
+			while(pos < limit && !is_delimiter(buf.get(pos)))
+			{
+				byte b = buf.get(pos++);
+				if(b < '0' || b > '9')
+					return Integer.parseInt(token(start));
+				v = v * 10 + (b - '0');
+				if(v > Integer.MAX_VALUE)
+					return Integer.parseInt(token(start));
+			}
+			if(pos == start)
+				throw new NumberFormatException("empty index");
+			return (int)(negative ? -v : v);
+		}
+
+		/**
+		 * decimal numbers with at most 15 significant digits and a small
+		 * exponent are exactly m * 10^e and rounded once, like
+		 * Double.parseDouble; the others are parsed by Double.parseDouble
+		 */
+		double parse_double()
+		{
+			int start = pos;
+			boolean negative = false;
+			if(pos < limit && (buf.get(pos) == '-' || buf.get(pos) == '+'))
+				negative = buf.get(pos++) == '-';
+			long m = 0;
+			int digits = 0, exp = 0;
+			boolean fast = true, any = false, dot = false;
+			while(pos < limit && !is_delimiter(buf.get(pos)))
+			{
+				byte b = buf.get(pos);
+				if(b >= '0' && b <= '9')
+				{
+					any = true;
+					if(m != 0 || b != '0')
+						digits++;
+					if(digits > 15)
+						fast = false;
+					else
+						m = m * 10 + (b - '0');
+					if(dot)
+						exp--;
+					pos++;
+				}
+				else if(b == '.' && !dot)
+				{
+					dot = true;
+					pos++;
+				}
+				else if((b == 'e' || b == 'E') && any)
+				{
+					pos++;
+					boolean exp_negative = false;
+					if(pos < limit && (buf.get(pos) == '-' || buf.get(pos) == '+'))
+						exp_negative = buf.get(pos++) == '-';
+					int e = 0;
+					boolean exp_any = false;
+					while(pos < limit && buf.get(pos) >= '0' && buf.get(pos) <= '9')
+					{
+						exp_any = true;
+						e = Math.min(e * 10 + (buf.get(pos++) - '0'), 10000);
+					}
+					if(!exp_any)
+						fast = false;
+					exp += exp_negative ? -e : e;
+					break;
+				}
+				else
+				{
+					fast = false;
+					break;
+				}
+			}
+			double d;
+			if(fast && any && (pos >= limit || is_delimiter(buf.get(pos))) && Math.abs(exp) < POW10.length)
+			{
+				d = exp < 0 ? m / POW10[-exp] : m * POW10[exp];
+				d = negative ? -d : d;
+			}
+			else
+			{
+				while(pos < limit && !is_delimiter(buf.get(pos)))
+					pos++;
+				d = Double.parseDouble(token(start));
+			}
+			if(Double.isNaN(d) || Double.isInfinite(d))
+				throw new IllegalArgumentException("NaN or Infinity in input");
+			return d;
+		}
+
+		private String token(int start)
+		{
+			while(pos < limit && !is_delimiter(buf.get(pos)))
+				pos++;
+			byte[] bytes = new byte[pos - start];
+			for(int i=0;i<bytes.length;i++)
+				bytes[i] = buf.get(start + i);
+			return new String(bytes);
+		}
+	}
+}
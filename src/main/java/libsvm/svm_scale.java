@@ -1,8 +1,10 @@
 package libsvm;
 
 import java.io.*;
-import java.util.Formatter;
-import java.util.StringTokenizer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.*;
+import java.util.concurrent.*;
 
 public class svm_scale
 {
@@ -19,6 +21,16 @@ public class svm_scale
 	private int max_index;
 	private long num_nonzeros = 0;
 	private long new_num_nonzeros = 0;
+	/** 0 for the three sequential passes, else the threads of the parallel passes */
+	private int nr_thread = 0;
+	/** scale each feature by its max absolute value, keeping 0 as 0 */
+	private boolean max_abs = false;
+
+	/** nominal size of a chunk of the parallel passes */
+	private static final long CHUNK_SIZE = 1L << 23;
+
+	/** the most characters of "index:value " with an int index */
+	private static final int MAX_FEATURE_LENGTH = 36;
 
 	private static void exit_with_help()
 	{
@@ -30,6 +42,9 @@ public class svm_scale
 		+"-y y_lower y_upper : y scaling limits (default: no y scaling)\n"
 		+"-s save_filename : save scaling parameters to save_filename\n"
 		+"-r restore_filename : restore scaling parameters from restore_filename\n"
+		+"-t nr_thread : scale in two parallel passes over the memory-mapped file\n"
+		+"-m : scale x by the max absolute value of each feature to [-1,1], keeping\n"
+		+"     0 as 0 so that sparse data stay sparse (-l and -u are ignored)\n"
 		);
 		System.exit(1);
 	}
@@ -41,6 +56,11 @@ public class svm_scale
 	}
 
 	private void output_target(double value)
+	{
+		System.out.print(scale_target(value) + " ");
+	}
+
+	private double scale_target(double value)
 	{
 		if(y_scaling)
 		{
@@ -52,8 +72,7 @@ public class svm_scale
 				value = y_lower + (y_upper-y_lower) *
 				(value-y_min) / (y_max-y_min);
 		}
-
-		System.out.print(value + " ");
+		return value;
 	}
 
 	private void output(int index, double value)
@@ -62,6 +81,17 @@ public class svm_scale
 		if(feature_max[index] == feature_min[index])
 			return;
 
+		value = scale(index, value);
+		if(value != 0)
+		{
+			System.out.print(index + ":" + value + " ");
+			new_num_nonzeros++;
+		}
+	}
+
+	/** the scaled value of a feature which is not single-valued */
+	private double scale(int index, double value)
+	{
 		if(value == feature_min[index])
 			value = lower;
 		else if(value == feature_max[index])
@@ -70,12 +100,7 @@ public class svm_scale
 			value = lower + (upper-lower) * 
 				(value-feature_min[index])/
 				(feature_max[index]-feature_min[index]);
-
-		if(value != 0)
-		{
-			System.out.print(index + ":" + value + " ");
-			new_num_nonzeros++;
-		}
+		return value;
 	}
 
 	private String readline(BufferedReader fp) throws IOException
@@ -87,7 +112,7 @@ public class svm_scale
 	private void run(String []argv) throws IOException
 	{
 		int i,index;
-		BufferedReader fp = null, fp_restore = null;
+		BufferedReader fp = null;
 		String save_filename = null;
 		String restore_filename = null;
 		String data_filename = null;
@@ -109,6 +134,11 @@ public class svm_scale
 					  break;
 				case 's': save_filename = argv[i];	break;
 				case 'r': restore_filename = argv[i];	break;
+				case 't': nr_thread = Integer.parseInt(argv[i]);	break;
+				case 'm':
+					  max_abs = true;
+					  --i;
+					  break;
 				default:
 					  System.err.println("unknown option");
 					  exit_with_help();
@@ -130,6 +160,11 @@ public class svm_scale
 			exit_with_help();
 
 		data_filename = argv[i];
+		if(nr_thread > 0)
+		{
+			run_parallel(data_filename, save_filename, restore_filename);
+			return;
+		}
 		try {
 			fp = new BufferedReader(new FileReader(data_filename));
 		} catch (Exception e) {
@@ -142,34 +177,7 @@ public class svm_scale
 		max_index = 0;
 
 		if(restore_filename != null)
-		{
-			int idx, c;
-
-			try {
-				fp_restore = new BufferedReader(new FileReader(restore_filename));
-			}
-			catch (Exception e) {
-				System.err.println("can't open file " + restore_filename);
-				System.exit(1);
-			}
-			if((c = fp_restore.read()) == 'y')
-			{
-				fp_restore.readLine();
-				fp_restore.readLine();		
-				fp_restore.readLine();		
-			}
-			fp_restore.readLine();
-			fp_restore.readLine();
-
-			String restore_line = null;
-			while((restore_line = fp_restore.readLine())!=null)
-			{
-				StringTokenizer st2 = new StringTokenizer(restore_line);
-				idx = Integer.parseInt(st2.nextToken());
-				max_index = Math.max(max_index, idx);
-			}
-			fp_restore = rewind(fp_restore, restore_filename);
-		}
+			max_index = restore_max_index(restore_filename);
 
 		while (readline(fp) != null)
 		{
@@ -238,77 +246,13 @@ public class svm_scale
 		fp = rewind(fp, data_filename);
 
 		/* pass 2.5: save/restore feature_min/feature_max */
+		if(max_abs)
+			to_max_abs();
 		if(restore_filename != null)
-		{
-			// fp_restore rewinded in finding max_index 
-			int idx, c;
-			double fmin, fmax;
-
-			fp_restore.mark(2);				// for reset
-			if((c = fp_restore.read()) == 'y')
-			{
-				fp_restore.readLine();		// pass the '\n' after 'y'
-				StringTokenizer st = new StringTokenizer(fp_restore.readLine());
-				y_lower = Double.parseDouble(st.nextToken());
-				y_upper = Double.parseDouble(st.nextToken());
-				st = new StringTokenizer(fp_restore.readLine());
-				y_min = Double.parseDouble(st.nextToken());
-				y_max = Double.parseDouble(st.nextToken());
-				y_scaling = true;
-			}
-			else
-				fp_restore.reset();
-
-			if(fp_restore.read() == 'x') {
-				fp_restore.readLine();		// pass the '\n' after 'x'
-				StringTokenizer st = new StringTokenizer(fp_restore.readLine());
-				lower = Double.parseDouble(st.nextToken());
-				upper = Double.parseDouble(st.nextToken());
-				String restore_line = null;
-				while((restore_line = fp_restore.readLine())!=null)
-				{
-					StringTokenizer st2 = new StringTokenizer(restore_line);
-					idx = Integer.parseInt(st2.nextToken());
-					fmin = Double.parseDouble(st2.nextToken());
-					fmax = Double.parseDouble(st2.nextToken());
-					if (idx <= max_index)
-					{
-						feature_min[idx] = fmin;
-						feature_max[idx] = fmax;
-					}
-				}
-			}
-			fp_restore.close();
-		}
+			restore(restore_filename);
 
 		if(save_filename != null)
-		{
-			Formatter formatter = new Formatter(new StringBuilder());
-			BufferedWriter fp_save = null;
-
-			try {
-				fp_save = new BufferedWriter(new FileWriter(save_filename));
-			} catch(IOException e) {
-				System.err.println("can't open file " + save_filename);
-				System.exit(1);
-			}
-
-			if(y_scaling)
-			{
-				formatter.format("y\n");
-				formatter.format("%.16g %.16g\n", y_lower, y_upper);
-				formatter.format("%.16g %.16g\n", y_min, y_max);
-			}
-			formatter.format("x\n");
-			formatter.format("%.16g %.16g\n", lower, upper);
-			for(i=1;i<=max_index;i++)
-			{
-				if(feature_min[i] != feature_max[i]) 
-					formatter.format("%d %.16g %.16g\n", i, feature_min[i], feature_max[i]);
-			}
-			fp_save.write(formatter.toString());
-			fp_save.close();
-		}
+			save(save_filename);
 
 		/* pass 3: scale */
 		while(readline(fp) != null)
@@ -334,13 +278,409 @@ public class svm_scale
 				output(i, 0);
 			System.out.print("\n");
 		}
+		report_nonzeros();
+
+		fp.close();
+	}
+
+	/**
+	 * the min/max of each feature become [-m, m] and the limits [-1, 1],
+	 * where m is the max absolute value of the feature: the value 0 is then
+	 * scaled to 0, and the restore file of the scaling is a regular one
+	 */
+	private void to_max_abs()
+	{
+		lower = -1.0;
+		upper = 1.0;
+		for(int i=1;i<=max_index;i++)
+		{
+			double m = Math.max(Math.abs(feature_min[i]), Math.abs(feature_max[i]));
+			feature_min[i] = -m;
+			feature_max[i] = m;
+		}
+	}
+
+	/** the number of nonzeros before and after scaling, always with -m */
+	private void report_nonzeros()
+	{
 		if (new_num_nonzeros > num_nonzeros)
 			System.err.print(
 			 "WARNING: original #nonzeros " + num_nonzeros+"\n"
 			+"         new      #nonzeros " + new_num_nonzeros+"\n"
 			+"Use -l 0 if many original feature values are zeros\n");
+		else if (max_abs)
+			System.err.print(
+			 "original #nonzeros " + num_nonzeros+"\n"
+			+"new      #nonzeros " + new_num_nonzeros+"\n");
+	}
 
-		fp.close();
+	/** the largest index of the restore file */
+	private int restore_max_index(String restore_filename) throws IOException
+	{
+		BufferedReader fp_restore = null;
+		int idx, c, max_index = 0;
+
+		try {
+			fp_restore = new BufferedReader(new FileReader(restore_filename));
+		}
+		catch (Exception e) {
+			System.err.println("can't open file " + restore_filename);
+			System.exit(1);
+		}
+		if((c = fp_restore.read()) == 'y')
+		{
+			fp_restore.readLine();
+			fp_restore.readLine();		
+			fp_restore.readLine();		
+		}
+		fp_restore.readLine();
+		fp_restore.readLine();
+
+		String restore_line = null;
+		while((restore_line = fp_restore.readLine())!=null)
+		{
+			StringTokenizer st2 = new StringTokenizer(restore_line);
+			idx = Integer.parseInt(st2.nextToken());
+			max_index = Math.max(max_index, idx);
+		}
+		fp_restore.close();
+		return max_index;
+	}
+
+	/** the limits and the min/max of the restore file replace those of the data */
+	private void restore(String restore_filename) throws IOException
+	{
+		BufferedReader fp_restore = new BufferedReader(new FileReader(restore_filename));
+		int idx, c;
+		double fmin, fmax;
+
+		fp_restore.mark(2);				// for reset
+		if((c = fp_restore.read()) == 'y')
+		{
+			fp_restore.readLine();		// pass the '\n' after 'y'
+			StringTokenizer st = new StringTokenizer(fp_restore.readLine());
+			y_lower = Double.parseDouble(st.nextToken());
+			y_upper = Double.parseDouble(st.nextToken());
+			st = new StringTokenizer(fp_restore.readLine());
+			y_min = Double.parseDouble(st.nextToken());
+			y_max = Double.parseDouble(st.nextToken());
+			y_scaling = true;
+		}
+		else
+			fp_restore.reset();
+
+		if(fp_restore.read() == 'x') {
+			fp_restore.readLine();		// pass the '\n' after 'x'
+			StringTokenizer st = new StringTokenizer(fp_restore.readLine());
+			lower = Double.parseDouble(st.nextToken());
+			upper = Double.parseDouble(st.nextToken());
+			String restore_line = null;
+			while((restore_line = fp_restore.readLine())!=null)
+			{
+				StringTokenizer st2 = new StringTokenizer(restore_line);
+				idx = Integer.parseInt(st2.nextToken());
+				fmin = Double.parseDouble(st2.nextToken());
+				fmax = Double.parseDouble(st2.nextToken());
+				if (idx <= max_index)
+				{
+					feature_min[idx] = fmin;
+					feature_max[idx] = fmax;
+				}
+			}
+		}
+		fp_restore.close();
+	}
+
+	private void save(String save_filename) throws IOException
+	{
+		Formatter formatter = new Formatter(new StringBuilder());
+		BufferedWriter fp_save = null;
+
+		try {
+			fp_save = new BufferedWriter(new FileWriter(save_filename));
+		} catch(IOException e) {
+			System.err.println("can't open file " + save_filename);
+			System.exit(1);
+		}
+
+		if(y_scaling)
+		{
+			formatter.format("y\n");
+			formatter.format("%.16g %.16g\n", y_lower, y_upper);
+			formatter.format("%.16g %.16g\n", y_min, y_max);
+		}
+		formatter.format("x\n");
+		formatter.format("%.16g %.16g\n", lower, upper);
+		for(int i=1;i<=max_index;i++)
+		{
+			if(feature_min[i] != feature_max[i]) 
+				formatter.format("%d %.16g %.16g\n", i, feature_min[i], feature_max[i]);
+		}
+		fp_save.write(formatter.toString());
+		fp_save.close();
+	}
+
+	/** min, max and number of occurrences of each index in a chunk */
+	private static class chunk_stats
+	{
+		long l, nnz;
+		int max_index;
+		double y_min = Double.MAX_VALUE;
+		double y_max = -Double.MAX_VALUE;
+		double[] min = new double[0];
+		double[] max = new double[0];
+		long[] count = new long[0];
+
+		void parse(java.nio.MappedByteBuffer buf)
+		{
+			svm_mapped_reader.parser p = new svm_mapped_reader.parser(buf);
+			while(p.next_line())
+			{
+				double target = p.parse_double();
+				y_max = Math.max(y_max, target);
+				y_min = Math.min(y_min, target);
+				while(p.has_feature())
+				{
+					int index = p.parse_index();
+					double value = p.parse_double();
+					if(index >= count.length)
+						grow(index);
+					max[index] = Math.max(max[index], value);
+					min[index] = Math.min(min[index], value);
+					count[index]++;
+					max_index = Math.max(max_index, index);
+					nnz++;
+				}
+				l++;
+				p.end_line();
+			}
+		}
+
+		private void grow(int index)
+		{
+			int n = count.length;
+			int new_n = Math.max(index + 1, 2 * n);
+			min = Arrays.copyOf(min, new_n);
+			max = Arrays.copyOf(max, new_n);
+			count = Arrays.copyOf(count, new_n);
+			Arrays.fill(min, n, new_n, Double.MAX_VALUE);
+			Arrays.fill(max, n, new_n, -Double.MAX_VALUE);
+		}
+
+		/** add the statistics of another chunk */
+		void merge(chunk_stats c)
+		{
+			l += c.l;
+			nnz += c.nnz;
+			y_max = Math.max(y_max, c.y_max);
+			y_min = Math.min(y_min, c.y_min);
+			if(c.max_index >= count.length)
+				grow(c.max_index);
+			max_index = Math.max(max_index, c.max_index);
+			for(int i=0;i<=c.max_index;i++)
+			{
+				max[i] = Math.max(max[i], c.max[i]);
+				min[i] = Math.min(min[i], c.min[i]);
+				count[i] += c.count[i];
+			}
+		}
+	}
+
+	/**
+	 * The parallel mode: the min/max of each chunk of the memory-mapped file
+	 * are computed in parallel and merged, a feature missing from some line
+	 * taking the value 0 as in pass 2, then the chunks are scaled in parallel
+	 * and written to stdout in order. The output is the same as the output
+	 * of the sequential passes.
+	 */
+	private void run_parallel(String data_filename, String save_filename, String restore_filename) throws IOException
+	{
+		RandomAccessFile file = null;
+		try {
+			file = new RandomAccessFile(data_filename, "r");
+		} catch (Exception e) {
+			System.err.println("can't open file " + data_filename);
+			System.exit(1);
+		}
+		ExecutorService executor = Executors.newFixedThreadPool(nr_thread);
+		try
+		{
+			final FileChannel channel = file.getChannel();
+			long size = channel.size();
+			int nr_chunk = (int)Math.max(nr_thread, (size + CHUNK_SIZE - 1) / CHUNK_SIZE);
+			final long[] bounds = svm_mapped_reader.line_bounds(channel, nr_chunk);
+
+			/*
+			 * pass 1: min/max of each chunk, merged as the chunks complete; at
+			 * most 2 * nr_thread chunks are counted at once
+			 */
+			List<Future<chunk_stats>> stats = new ArrayList<Future<chunk_stats>>();
+			chunk_stats total = new chunk_stats();
+			int submitted = 0;
+			for(int c=0;c<nr_chunk;c++)
+			{
+				for(;submitted < nr_chunk && submitted < c + 2 * nr_thread;submitted++)
+				{
+					final int k = submitted;
+					stats.add(executor.submit(new Callable<chunk_stats>() {
+						public chunk_stats call() throws IOException
+						{
+							chunk_stats result = new chunk_stats();
+							if(bounds[k+1] > bounds[k])
+								result.parse(channel.map(FileChannel.MapMode.READ_ONLY, bounds[k], bounds[k+1] - bounds[k]));
+							return result;
+						}
+					}));
+				}
+				total.merge(svm_mapped_reader.get(stats.get(c)));
+				stats.set(c, null);
+			}
+			long l = total.l;
+			num_nonzeros += total.nnz;
+			y_max = Math.max(y_max, total.y_max);
+			y_min = Math.min(y_min, total.y_min);
+			max_index = restore_filename != null ? restore_max_index(restore_filename) : 0;
+			max_index = Math.max(max_index, total.max_index);
+
+			feature_max = new double[(max_index+1)];
+			feature_min = new double[(max_index+1)];
+			for(int i=0;i<=max_index;i++)
+			{
+				feature_max[i] = -Double.MAX_VALUE;
+				feature_min[i] = Double.MAX_VALUE;
+				long count = 0;
+				if(i < total.count.length)
+				{
+					feature_max[i] = total.max[i];
+					feature_min[i] = total.min[i];
+					count = total.count[i];
+				}
+				if(count < l)
+				{
+					feature_max[i] = Math.max(feature_max[i], 0);
+					feature_min[i] = Math.min(feature_min[i], 0);
+				}
+			}
+			total = null;
+
+			if(max_abs)
+				to_max_abs();
+			if(restore_filename != null)
+				restore(restore_filename);
+			if(save_filename != null)
+				save(save_filename);
+
+			/*
+			 * pass 2: scale, at most 2 * nr_thread chunks being in memory; the
+			 * zeros written make the output larger than the input, so the
+			 * chunks are split again for about CHUNK_SIZE bytes of output each
+			 */
+			final int[] zero_index = zero_indexes();
+			final double[] zero_value = new double[zero_index.length];
+			for(int z=0;z<zero_index.length;z++)
+				zero_value[z] = scale(zero_index[z], 0);
+			double output_size = size + (double)l * zero_index.length * MAX_FEATURE_LENGTH;
+			nr_chunk = (int)Math.max(nr_chunk, Math.ceil(output_size / CHUNK_SIZE));
+			final long[] output_bounds = svm_mapped_reader.line_bounds(channel, nr_chunk);
+			List<Future<ByteBuffer>> scaled = new ArrayList<Future<ByteBuffer>>();
+			final long[] chunk_nonzeros = new long[nr_chunk];
+			FileChannel out = new FileOutputStream(FileDescriptor.out).getChannel();
+			submitted = 0;
+			for(int c=0;c<nr_chunk;c++)
+			{
+				for(;submitted < nr_chunk && submitted < c + 2 * nr_thread;submitted++)
+				{
+					final int k = submitted;
+					scaled.add(executor.submit(new Callable<ByteBuffer>() {
+						public ByteBuffer call() throws IOException
+						{
+							if(output_bounds[k+1] == output_bounds[k])
+								return ByteBuffer.allocate(0);
+							return scale_chunk(channel.map(FileChannel.MapMode.READ_ONLY, output_bounds[k], output_bounds[k+1] - output_bounds[k]),
+								zero_index, zero_value, chunk_nonzeros, k);
+						}
+					}));
+				}
+				ByteBuffer buf = svm_mapped_reader.get(scaled.get(c));
+				scaled.set(c, null);
+				while(buf.hasRemaining())
+					out.write(buf);
+				new_num_nonzeros += chunk_nonzeros[c];
+			}
+		}
+		finally
+		{
+			executor.shutdown();
+			file.close();
+		}
+
+		report_nonzeros();
+	}
+
+	/** the indexes whose value 0 is written, in increasing order */
+	private int[] zero_indexes()
+	{
+		int n = 0;
+		int[] zero_index = new int[16];
+		for(int i=1;i<=max_index;i++)
+			if(feature_max[i] != feature_min[i] && scale(i, 0) != 0)
+			{
+				if(n == zero_index.length)
+					zero_index = Arrays.copyOf(zero_index, 2*n);
+				zero_index[n++] = i;
+			}
+		return Arrays.copyOf(zero_index, n);
+	}
+
+	/**
+	 * the scaled lines of a chunk, as pass 3 prints them; the features
+	 * absent from a line are written from the zero_index list
+	 */
+	private ByteBuffer scale_chunk(java.nio.MappedByteBuffer buf, int[] zero_index, double[] zero_value,
+		long[] chunk_nonzeros, int k)
+	{
+		svm_mapped_reader.parser p = new svm_mapped_reader.parser(buf);
+		StringBuilder sb = new StringBuilder(buf.limit());
+		long nnz = 0;
+		while(p.next_line())
+		{
+			sb.append(scale_target(p.parse_double())).append(' ');
+			int next_index = 1, z = 0;
+			while(p.has_feature())
+			{
+				int index = p.parse_index();
+				double value = p.parse_double();
+				for(;z < zero_index.length && zero_index[z] < index;z++)
+					if(zero_index[z] >= next_index)
+					{
+						sb.append(zero_index[z]).append(':').append(zero_value[z]).append(' ');
+						nnz++;
+					}
+				if(feature_max[index] != feature_min[index])
+				{
+					value = scale(index, value);
+					if(value != 0)
+					{
+						sb.append(index).append(':').append(value).append(' ');
+						nnz++;
+					}
+				}
+				next_index = index + 1;
+			}
+			for(;z < zero_index.length;z++)
+				if(zero_index[z] >= next_index)
+				{
+					sb.append(zero_index[z]).append(':').append(zero_value[z]).append(' ');
+					nnz++;
+				}
+			sb.append('\n');
+			p.end_line();
+		}
+		chunk_nonzeros[k] = nnz;
+		byte[] bytes = new byte[sb.length()];
+		for(int i=0;i<bytes.length;i++)
+			bytes[i] = (byte)sb.charAt(i);
+		return ByteBuffer.wrap(bytes);
 	}
 
 	public static void main(String argv[]) throws IOException
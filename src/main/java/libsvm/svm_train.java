@@ -13,6 +13,7 @@ public class svm_train {
 	private String error_msg;
 	private int cross_validation;
 	private int nr_fold;
+	private int linear_loss;		// 0 for svm.svm_train, else the loss of svm_linear
 
 	private static svm_print_interface svm_print_null = new svm_print_interface()
 	{
@@ -48,6 +49,10 @@ public class svm_train {
 		+"-b probability_estimates : whether to train a SVC or SVR model for probability estimates, 0 or 1 (default 0)\n"
 		+"-wi weight : set the parameter C of class i to weight*C, for C-SVC (default 1)\n"
 		+"-v n : n-fold cross validation mode\n"
+		+"-l loss : train a linear C-SVC by dual coordinate descent instead of SMO (default 0)\n"
+		+"	0 -- off, use svm_type and kernel_type\n"
+		+"	1 -- L1-loss (hinge)\n"
+		+"	2 -- L2-loss (squared hinge)\n"
 		+"-q : quiet mode (no outputs)\n"
 		);
 		System.exit(1);
@@ -61,7 +66,10 @@ public class svm_train {
 		double sumv = 0, sumy = 0, sumvv = 0, sumyy = 0, sumvy = 0;
 		double[] target = new double[prob.l];
 
-		svm.svm_cross_validation(prob,param,nr_fold,target);
+		if(linear_loss != 0)
+			svm_linear.svm_cross_validation_linear(prob,param,linear_loss,nr_fold,target);
+		else
+			svm.svm_cross_validation(prob,param,nr_fold,target);
 		if(param.svm_type == svm_parameter.EPSILON_SVR ||
 		   param.svm_type == svm_parameter.NU_SVR)
 		{
@@ -96,6 +104,10 @@ public class svm_train {
 		parse_command_line(argv);
 		read_problem();
 		error_msg = svm.svm_check_parameter(prob,param);
+		if(error_msg == null && linear_loss != 0 && param.svm_type != svm_parameter.C_SVC)
+			error_msg = "linear loss only for C-SVC";
+		if(error_msg == null && linear_loss != 0 && param.probability != 0)
+			error_msg = "linear loss does not support probability estimates";
 
 		if(error_msg != null)
 		{
@@ -109,7 +121,10 @@ public class svm_train {
 		}
 		else
 		{
-			model = svm.svm_train(prob,param);
+			if(linear_loss != 0)
+				model = svm_linear.svm_train_linear(prob,param,linear_loss);
+			else
+				model = svm.svm_train(prob,param);
 			svm.svm_save_model(model_file_name,model);
 		}
 	}
@@ -217,6 +232,14 @@ public class svm_train {
 						exit_with_help();
 					}
 					break;
+				case 'l':
+					linear_loss = atoi(argv[i]);
+					if(linear_loss != 0 && linear_loss != svm_linear.L1_LOSS && linear_loss != svm_linear.L2_LOSS)
+					{
+						System.err.print("unknown loss: " + argv[i] + "\n");
+						exit_with_help();
+					}
+					break;
 				case 'w':
 					++param.nr_weight;
 					{
@@ -263,39 +286,19 @@ public class svm_train {
 
 	private void read_problem() throws IOException
 	{
-		BufferedReader fp = new BufferedReader(new FileReader(input_file_name));
-		Vector<Double> vy = new Vector<Double>();
-		Vector<svm_node[]> vx = new Vector<svm_node[]>();
-		int max_index = 0;
-
-		while(true)
+		svm_mapped_reader data;
+		try
 		{
-			String line = fp.readLine();
-			if(line == null) break;
-
-			StringTokenizer st = new StringTokenizer(line," \t\n\r\f:");
-
-			vy.addElement(atof(st.nextToken()));
-			int m = st.countTokens()/2;
-			svm_node[] x = new svm_node[m];
-			for(int j=0;j<m;j++)
-			{
-				x[j] = new svm_node();
-				x[j].index = atoi(st.nextToken());
-				x[j].value = atof(st.nextToken());
-			}
-			if(m>0) max_index = Math.max(max_index, x[m-1].index);
-			vx.addElement(x);
+			data = svm_mapped_reader.read(input_file_name, Runtime.getRuntime().availableProcessors());
 		}
-
-		prob = new svm_problem();
-		prob.l = vy.size();
-		prob.x = new svm_node[prob.l][];
-		for(int i=0;i<prob.l;i++)
-			prob.x[i] = vx.elementAt(i);
-		prob.y = new double[prob.l];
-		for(int i=0;i<prob.l;i++)
-			prob.y[i] = vy.elementAt(i);
+		catch(IllegalArgumentException e)
+		{
+			System.err.print(e.getMessage()+"\n");
+			System.exit(1);
+			return;
+		}
+		int max_index = data.max_index;
+		prob = data.to_problem();
 
 		if(param.gamma == 0 && max_index > 0)
 			param.gamma = 1.0/max_index;
@@ -314,7 +317,5 @@ public class svm_train {
 					System.exit(1);
 				}
 			}
-
-		fp.close();
 	}
 }
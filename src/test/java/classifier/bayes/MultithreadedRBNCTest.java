@@ -0,0 +1,80 @@
+package classifier.bayes;
+
+import classifier.bayes.standalone.RBNCCounts;
+import com.google.common.collect.Sets;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import weka.core.Instances;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.util.*;
+
+import static classifier.bayes.ParallelRBNCUtils.generateWekaFileHeader;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Test case for MultithreadedRBNC
+ */
+public class MultithreadedRBNCTest {
+  FileSystem fs;
+  Instances dataset;
+  List<Map<Integer, Set<Integer>>> structures;
+  File input = new File("temp/input");
+
+  @Before
+  public void setUp() throws Exception {
+    fs = FileSystem.getLocal(new Configuration());
+    fs.mkdirs(new Path("temp"));
+    dataset = generateWekaFileHeader(3, "temp//dataset");
+
+    Map<Integer, Set<Integer>> component = new HashMap<Integer, Set<Integer>>();
+    component.put(0, Sets.newHashSet(3));
+    component.put(1, Sets.newHashSet(0, 3));
+    component.put(2, Sets.newHashSet(0, 1, 3));
+    component.put(3, Sets.newHashSet(3));
+    structures = new ArrayList<Map<Integer, Set<Integer>>>();
+    structures.add(component);
+
+    Random random = new Random(1);
+    FileWriter writer = new FileWriter(input);
+    for (int i = 0; i < 100; i++)
+      writer.write(random.nextInt(2) + "," + random.nextInt(2) + "," + random.nextInt(2) + "," + random.nextInt(2)
+              + (i % 3 == 0 ? "\r\n" : "\n"));
+    writer.close();
+  }
+
+  @After
+  public void tearUp() throws Exception {
+    fs.delete(new Path("temp"), true);
+  }
+
+  @Test
+  public void testCount() throws Exception {
+    double[][][][] expected = MultithreadedRBNC.count(dataset, structures, input, ParallelRBNC.SPLITTER, 1)
+            .getCounts().get(0);
+    double total = 0;
+    for (double[] row : expected[3][0])
+      for (double count : row)
+        total += count;
+    for (double[] row : expected[3][1])
+      for (double count : row)
+        total += count;
+    assertEquals(100, total, 1e-8);
+
+    // the regions split some lines, each line must be counted once
+    for (int numThreads = 2; numThreads <= 7; numThreads++) {
+      RBNCCounts counts = MultithreadedRBNC.count(dataset, structures, input, ParallelRBNC.SPLITTER, numThreads);
+      double[][][][] actual = counts.getCounts().get(0);
+      for (int att = 0; att < expected.length; att++)
+        for (int c = 0; c < expected[att].length; c++)
+          for (int p = 0; p < expected[att][c].length; p++)
+            for (int v = 0; v < expected[att][c][p].length; v++)
+              assertEquals(expected[att][c][p][v], actual[att][c][p][v], 1e-8);
+    }
+  }
+}
@@ -0,0 +1,50 @@
+package classifier.bayes;
+
+import classifier.bayes.standalone.AnDE;
+import org.junit.Test;
+
+import java.util.*;
+
+import static classifier.bayes.ParallelAnDE.generateAnDEStructures;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Test case for ParallelAnDE
+ */
+public class ParallelAnDETest {
+  @Test
+  public void testEnumerateSuperParents() throws Exception {
+    // class attribute in the middle
+    List<int[]> superParents = AnDE.enumerateSuperParents(4, 2, 1);
+    assertEquals(3, superParents.size());
+    assertArrayEquals(new int[]{0}, superParents.get(0));
+    assertArrayEquals(new int[]{1}, superParents.get(1));
+    assertArrayEquals(new int[]{3}, superParents.get(2));
+
+    superParents = AnDE.enumerateSuperParents(5, 4, 2);
+    assertEquals(6, superParents.size());
+    assertArrayEquals(new int[]{0, 1}, superParents.get(0));
+    assertArrayEquals(new int[]{0, 3}, superParents.get(2));
+    assertArrayEquals(new int[]{2, 3}, superParents.get(5));
+
+    assertEquals(4, AnDE.enumerateSuperParents(5, 4, 3).size());
+    assertEquals(0, AnDE.enumerateSuperParents(5, 4, 5).size());
+  }
+
+  @Test
+  public void testGenerateAnDEStructures() throws Exception {
+    List<Map<Integer, Set<Integer>>> structures = generateAnDEStructures(4, 3, 2);
+    assertEquals(3, structures.size());
+    // super-parents {0, 1}
+    Map<Integer, Set<Integer>> component = structures.get(0);
+    assertEquals(2, component.size());
+    assertArrayEquals(new Integer[]{0, 1}, component.get(2).toArray(new Integer[]{}));
+    assertArrayEquals(new Integer[]{0, 1}, component.get(3).toArray(new Integer[]{}));
+    // super-parents {1, 2}
+    component = structures.get(2);
+    assertEquals(2, component.size());
+    assertArrayEquals(new Integer[]{1, 2}, component.get(0).toArray(new Integer[]{}));
+    assertArrayEquals(new Integer[]{1, 2}, component.get(3).toArray(new Integer[]{}));
+  }
+}
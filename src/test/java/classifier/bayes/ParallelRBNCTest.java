@@ -14,11 +14,14 @@ import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
 
+import java.io.FileWriter;
 import java.util.*;
 
 import static classifier.bayes.ParallelRBNCUtils.*;
 import static classifier.bayes.ParallelRBNC.*;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
 
 /**
  * Test case for ParallelRBNC
@@ -116,4 +119,42 @@ public class ParallelRBNCTest {
     assertEquals(72, values[0][1][1][0], 1e-8);
     assertEquals(84, values[0][1][1][1], 1e-8);
   }
+
+  @Test
+  public void testIncrementalCounting() throws Exception {
+    Random random = new Random(1);
+    for (String input : new String[]{"temp/inputA", "temp/inputB"}) {
+      FileWriter writer = new FileWriter(input);
+      for (int i = 0; i < 50; i++) {
+        for (int att = 0; att < 6; att++)
+          writer.write((att > 0 ? "," : "") + random.nextInt(2));
+        writer.write("\n");
+      }
+      writer.close();
+    }
+
+    // count A, then add B to the counts of A
+    Configuration jobConf = new Configuration();
+    jobConf.set("mapred.cache.localFiles", "./temp/dataset,./temp/structure");
+    assertTrue(runCounting(jobConf, "temp/inputA", "temp/countsA", null));
+    assertTrue(runCounting(jobConf, "temp/inputB", "temp/countsAB", "temp/countsA"));
+    assertFalse(fs.exists(new Path("temp/countsAB_delta")));
+
+    // the same counts as A and B counted in one run
+    assertTrue(runCounting(jobConf, "temp/inputA,temp/inputB", "temp/countsAll", null));
+    List<double[][][][]> expected = readCounts(fs, jobConf, new Path("temp/countsAll"));
+    List<double[][][][]> actual = readCounts(fs, jobConf, new Path("temp/countsAB"));
+    assertEquals(2, expected.size());
+    assertEquals(expected.size(), actual.size());
+    double total = 0;
+    for (int c = 0; c < expected.size(); c++)
+      for (int att = 0; att < expected.get(c).length; att++)
+        for (int v = 0; v < expected.get(c)[att].length; v++)
+          for (int p = 0; p < expected.get(c)[att][v].length; p++)
+            for (int k = 0; k < expected.get(c)[att][v][p].length; k++) {
+              assertEquals(expected.get(c)[att][v][p][k], actual.get(c)[att][v][p][k], 1e-8);
+              total += actual.get(c)[att][v][p][k];
+            }
+    assertTrue(total > 0);
+  }
 }
@@ -1,6 +1,7 @@
 package classifier.bayes;
 
 import com.google.common.collect.Sets;
+import libsvm.mapreduce.FeatureHasher;
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.fs.FSDataInputStream;
 import org.apache.hadoop.fs.FSDataOutputStream;
@@ -109,4 +110,18 @@ public class ParallelRBNCUtilsTest {
 
     fs.delete(new Path("temp"), true);
   }
+
+  @Test
+  public void testHashValues() throws Exception {
+    weka.core.Instances dataset = ParallelRBNCUtils.generateWekaFileHeader(3, 16, "temp/dataset_hashed");
+    assertEquals(16, dataset.attribute(0).numValues());
+    int[] values = ParallelRBNCUtils.hashValues(ParallelRBNC.SPLITTER, dataset, "red, www.example.com,red,1");
+    assertEquals(4, values.length);
+    for (int i = 0; i < 3; i++)
+      assertEquals(true, values[i] >= 0 && values[i] < 16);
+    // the same string has the same value whatever the attribute, its bucket for SVMPredictionJob
+    assertEquals(values[0], values[2]);
+    assertEquals(new FeatureHasher(16, false).index("red"), values[0]);
+    assertEquals(1, values[3]);
+  }
 }
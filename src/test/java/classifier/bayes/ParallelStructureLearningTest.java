@@ -0,0 +1,47 @@
+package classifier.bayes;
+
+import org.junit.Test;
+
+import java.util.*;
+
+import static classifier.bayes.ParallelStructureLearning.*;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Test case for ParallelStructureLearning
+ */
+public class ParallelStructureLearningTest {
+  @Test
+  public void testConditionalMutualInformation() throws Exception {
+    // attribute 0 and 1 are equal given the class, attribute 2 is independent of both, 3 is the class
+    double[][][][][] counts = new double[4][][][][];
+    counts[0] = new double[4][][][];
+    counts[1] = new double[4][][][];
+    counts[0][1] = new double[][][]{{{10, 10}, {0, 0}}, {{0, 0}, {10, 10}}};
+    counts[0][2] = new double[][][]{{{5, 5}, {5, 5}}, {{5, 5}, {5, 5}}};
+    counts[1][2] = new double[][][]{{{5, 5}, {5, 5}}, {{5, 5}, {5, 5}}};
+    double[][] cmi = conditionalMutualInformation(counts, 3);
+    assertEquals(Math.log(2), cmi[0][1], 1e-8);
+    assertEquals(cmi[0][1], cmi[1][0], 1e-8);
+    assertEquals(0, cmi[0][2], 1e-8);
+    assertEquals(0, cmi[1][2], 1e-8);
+  }
+
+  @Test
+  public void testSampleStructures() throws Exception {
+    double[][] cmi = {{0, 1, 0, 0}, {1, 0, 0, 0}, {0, 0, 0, 0}, {0, 0, 0, 0}};
+    List<Map<Integer, Set<Integer>>> structures = sampleStructures(cmi, 5, 1, 3, new Random(1));
+    assertEquals(5, structures.size());
+    for (Map<Integer, Set<Integer>> component : structures) {
+      assertEquals(4, component.size());
+      for (int att = 0; att < 3; att++) {
+        Set<Integer> parents = component.get(att);
+        assertTrue(parents.contains(3));
+        assertTrue(parents.size() <= 2);
+      }
+      // attribute 0 and 1 always choose each other when possible
+      assertTrue(component.get(0).contains(1) || component.get(1).contains(0));
+    }
+  }
+}
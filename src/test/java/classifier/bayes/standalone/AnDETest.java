@@ -0,0 +1,105 @@
+package classifier.bayes.standalone;
+
+import org.junit.Test;
+import weka.core.Attribute;
+import weka.core.FastVector;
+import weka.core.Instance;
+import weka.core.Instances;
+
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Test case for AnDE
+ */
+public class AnDETest {
+  @Test
+  public void testPruning() throws Exception {
+    Instances data = randomData(300, 1);
+    List<int[]> superParents = AnDE.enumerateSuperParents(data.numAttributes(), data.classIndex(), 3);
+
+    // A3DE counts sparse tables pruned by the limit
+    AnDE pruned = new AnDE();
+    pruned.setNDependence(3);
+    pruned.setLimit(10);
+    pruned.buildClassifier(data);
+
+    AnDE.SuperParentCounts counts = new AnDE.SuperParentCounts(data, superParents, true);
+    counts.addInstances(data);
+    AnDE unpruned = new AnDE();
+    unpruned.setNDependence(3);
+    unpruned.setLimit(10);
+    unpruned.buildFromCounts(data, counts);
+
+    AnDE.SuperParentCounts prunedCounts = pruned.countInstances(data);
+    int prunedRows = 0, rows = 0;
+    for (int i = 0; i < superParents.size(); i++) {
+      prunedRows += prunedCounts.numRows[i];
+      rows += counts.numRows[i];
+    }
+    assertTrue(prunedRows < rows);
+
+    for (int k = 0; k < data.numInstances(); k++)
+      assertArrayEquals(unpruned.distributionForInstance(data.instance(k)),
+              pruned.distributionForInstance(data.instance(k)), 1e-12);
+  }
+
+  @Test
+  public void testSubtractInstances() throws Exception {
+    Instances data = randomData(300, 2);
+    Instances train = data.trainCV(3, 0);
+    Instances test = data.testCV(3, 0);
+
+    // the fold model of A3DE from the pruned counts of all the data, some rare values reach the limit in all
+    // the data but not in the training fold
+    AnDE fold = new AnDE();
+    fold.setNDependence(3);
+    fold.setLimit(8);
+    AnDE.SuperParentCounts foldCounts = fold.subtractInstances(fold.countInstances(data), test);
+    fold.buildFromCounts(train, foldCounts);
+    AnDE.SuperParentCounts trainCounts = fold.countInstances(train);
+    for (int i = 0; i < trainCounts.superParents.length; i++)
+      assertArrayEquals(trainCounts.classTotals[i], foldCounts.classTotals[i], 1e-12);
+
+    AnDE rebuilt = new AnDE();
+    rebuilt.setNDependence(3);
+    rebuilt.setLimit(8);
+    rebuilt.buildClassifier(train);
+
+    for (int k = 0; k < data.numInstances(); k++)
+      assertArrayEquals(rebuilt.distributionForInstance(data.instance(k)),
+              fold.distributionForInstance(data.instance(k)), 1e-12);
+  }
+
+  /** nominal attributes of 4 values, the last ones rare, and a binary class */
+  static Instances randomData(int numInstances, long seed) {
+    FastVector values = new FastVector();
+    for (int v = 0; v < 4; v++)
+      values.addElement("v" + v);
+    FastVector classValues = new FastVector();
+    classValues.addElement("a");
+    classValues.addElement("b");
+    FastVector attributes = new FastVector();
+    for (int att = 0; att < 6; att++)
+      attributes.addElement(new Attribute("att" + att, values));
+    attributes.addElement(new Attribute("class", classValues));
+    Instances data = new Instances("random", attributes, numInstances);
+    data.setClassIndex(6);
+
+    Random random = new Random(seed);
+    for (int k = 0; k < numInstances; k++) {
+      double[] instance = new double[7];
+      instance[6] = random.nextInt(2);
+      for (int att = 0; att < 6; att++) {
+        // value 3 is rare, value 0 depends on the class
+        double r = random.nextDouble();
+        instance[att] = r < 0.03 ? 3 : r < 0.3 ? 2 : random.nextDouble() < 0.4 + 0.3 * instance[6] ? 0 : 1;
+      }
+      data.add(new Instance(1 + random.nextInt(2), instance));
+    }
+    return data;
+  }
+}
@@ -0,0 +1,74 @@
+package classifier.bayes.standalone;
+
+import classifier.bayes.ParallelRBNC;
+import org.junit.Test;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Test case for MappedValuesReader
+ */
+public class MappedValuesReaderTest {
+  @Test
+  public void testRead() throws Exception {
+    String[] separators = {",", "\t", "|", " , ", ",\t"};
+    Random random = new Random(1);
+    File file = File.createTempFile("values", ".txt");
+    FileWriter writer = new FileWriter(file);
+    for (int i = 0; i < 500; i++) {
+      if (i % 37 == 0)
+        writer.write(i % 2 == 0 ? "\n" : "\r\n"); // empty line
+      writer.write(String.valueOf(random.nextInt(1000)));
+      for (int j = 0; j < 5; j++)
+        writer.write(separators[random.nextInt(separators.length)] + random.nextInt(1000));
+      writer.write(i % 3 == 0 ? "\r\n" : "\n");
+    }
+    writer.close();
+
+    // the lines split by ParallelRBNC.SPLITTER, as the counting mapper parses them
+    List<int[]> expected = new ArrayList<int[]>();
+    BufferedReader reader = new BufferedReader(new FileReader(file));
+    for (String line; (line = reader.readLine()) != null; ) {
+      if (line.trim().length() == 0)
+        continue;
+      String[] items = ParallelRBNC.SPLITTER.split(line);
+      int[] values = new int[items.length];
+      for (int k = 0; k < items.length; k++)
+        values[k] = Integer.parseInt(items[k].trim());
+      expected.add(values);
+    }
+    reader.close();
+
+    // the chunk boundaries fall in other places for each number of threads
+    for (int numThreads = 1; numThreads <= 9; numThreads++) {
+      int[][] values = MappedValuesReader.read(file, numThreads);
+      assertEquals(expected.size(), values.length);
+      for (int i = 0; i < values.length; i++)
+        assertArrayEquals(expected.get(i), values[i]);
+    }
+    file.delete();
+  }
+
+  @Test(expected = NumberFormatException.class)
+  public void testSpaces() throws Exception {
+    // ParallelRBNC.SPLITTER does not split "2 3" either
+    File file = File.createTempFile("values", ".txt");
+    FileWriter writer = new FileWriter(file);
+    writer.write("1 , 2 3\n");
+    writer.close();
+    try {
+      MappedValuesReader.read(file, 1);
+    } finally {
+      file.delete();
+    }
+  }
+}
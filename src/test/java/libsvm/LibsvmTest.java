@@ -1,7 +1,20 @@
 package libsvm;
 
+import libsvm.libsvm.*;
 import org.junit.Test;
 
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.StringTokenizer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+
 /**
  * Test case for libsvm
  */
@@ -16,4 +29,125 @@ public class LibsvmTest {
     libsvm.svm_predict.main(new String[]{data, model, pdata, "-w1", "99"});
 
   }
+
+  @Test
+  public void testLinear() throws Exception {
+    // three classes around (1, 1), (-1, 1) and (0, -1)
+    double[][] points = {{1, 1}, {1.5, 0.5}, {0.5, 1.5}, {-1, 1}, {-1.5, 0.5}, {-0.5, 1.5}, {0, -1}, {0.5, -1.5}, {-0.5, -1.5}};
+    svm_problem prob = new svm_problem();
+    prob.l = points.length;
+    prob.x = new svm_node[prob.l][];
+    prob.y = new double[prob.l];
+    for (int i = 0; i < prob.l; i++) {
+      prob.x[i] = new svm_node[]{node(1, points[i][0]), node(2, points[i][1])};
+      prob.y[i] = i / 3 + 1;
+    }
+    svm_parameter param = new svm_parameter();
+    param.svm_type = svm_parameter.C_SVC;
+    param.C = 10;
+    param.eps = 1e-3;
+    param.shrinking = 1;
+    param.weight_label = new int[0];
+    param.weight = new double[0];
+
+    for (int loss : new int[]{svm_linear.L1_LOSS, svm_linear.L2_LOSS}) {
+      svm_model model = svm_linear.svm_train_linear(prob, param, loss);
+      assertEquals(svm_parameter.LINEAR, model.param.kernel_type);
+      assertEquals(3, model.l);
+      assertNotNull(model.w);
+      for (int i = 0; i < prob.l; i++)
+        assertEquals(prob.y[i], svm.svm_predict(model, prob.x[i]), 1e-8);
+
+      // the model is saved and loaded as any libsvm model
+      File file = File.createTempFile("linear", ".model");
+      svm.svm_save_model(file.getPath(), model);
+      svm_model loaded = svm.svm_load_model(file.getPath());
+      file.delete();
+      double[] dec = new double[3], loadedDec = new double[3], kernelDec = new double[3];
+      double[] kvalue = new double[model.l];
+      for (int i = 0; i < prob.l; i++) {
+        svm.svm_predict_values(model, prob.x[i], dec);
+        svm.svm_predict_values(loaded, prob.x[i], loadedDec);
+        // the dense weights give the decision values of the SVs
+        for (int k = 0; k < model.l; k++)
+          kvalue[k] = svm.svm_k_function(prob.x[i], model.SV[k], model.param);
+        svm.svm_predict_values_from_kernel(model, kvalue, kernelDec);
+        for (int p = 0; p < 3; p++) {
+          assertEquals(dec[p], loadedDec[p], 1e-8);
+          assertEquals(kernelDec[p], dec[p], 1e-12);
+        }
+      }
+    }
+  }
+
+  @Test
+  public void testMappedReader() throws Exception {
+    // numbers of the fast path, of Double.parseDouble and of the other formats of the old reader
+    String[] formats = {"1", "-2", "+3", "0.5", ".25", "7.", "-0.000125", "1e3", "1.5E-3", "-2.25e+10", "3e-30",
+            "0.1234567890123456789", "123456789012345678", "1e22", "1e23", "4.9e-324"};
+    Random random = new Random(1);
+    File file = File.createTempFile("mapped", ".txt");
+    FileWriter writer = new FileWriter(file);
+    for (int i = 0; i < 500; i++) {
+      if (i % 37 == 0)
+        writer.write(i % 2 == 0 ? "\n" : "\r\n"); // empty line
+      writer.write(random.nextBoolean() ? "+1" : "-1");
+      int index = 0;
+      for (int j = random.nextInt(8); j > 0; j--) {
+        index += 1 + random.nextInt(20);
+        String value = random.nextInt(3) == 0 ? formats[random.nextInt(formats.length)]
+                : String.valueOf(random.nextGaussian() * Math.pow(10, random.nextInt(9) - 4));
+        writer.write((random.nextBoolean() ? " " : "\t") + index + ":" + value);
+      }
+      writer.write(i % 3 == 0 ? " \r\n" : "\n");
+    }
+    writer.close();
+
+    // the old svm_train.read_problem, skipping the empty lines
+    List<Double> y = new ArrayList<Double>();
+    List<svm_node[]> x = new ArrayList<svm_node[]>();
+    int maxIndex = 0;
+    BufferedReader reader = new BufferedReader(new FileReader(file));
+    for (String line; (line = reader.readLine()) != null; ) {
+      StringTokenizer st = new StringTokenizer(line, " \t\n\r\f:");
+      if (!st.hasMoreTokens())
+        continue;
+      y.add(Double.parseDouble(st.nextToken()));
+      svm_node[] nodes = new svm_node[st.countTokens() / 2];
+      for (int j = 0; j < nodes.length; j++)
+        nodes[j] = node(Integer.parseInt(st.nextToken()), Double.parseDouble(st.nextToken()));
+      if (nodes.length > 0)
+        maxIndex = Math.max(maxIndex, nodes[nodes.length - 1].index);
+      x.add(nodes);
+    }
+    reader.close();
+
+    // the chunk boundaries fall in other places for each number of threads
+    for (int nrThread = 1; nrThread <= 9; nrThread++) {
+      svm_mapped_reader data = svm_mapped_reader.read(file.getPath(), nrThread);
+      assertEquals(maxIndex, data.max_index);
+      svm_problem prob = data.to_problem();
+      assertEquals(y.size(), prob.l);
+      long nnz = 0;
+      for (int i = 0; i < prob.l; i++) {
+        assertEquals(y.get(i), prob.y[i], 0);
+        assertEquals(x.get(i).length, prob.x[i].length);
+        for (int j = 0; j < prob.x[i].length; j++) {
+          assertEquals(x.get(i)[j].index, prob.x[i][j].index);
+          // the same double, bit for bit
+          assertEquals(Double.doubleToLongBits(x.get(i)[j].value), Double.doubleToLongBits(prob.x[i][j].value));
+        }
+        nnz += prob.x[i].length;
+      }
+      assertEquals(nnz, data.nnz);
+    }
+    file.delete();
+  }
+
+  private static svm_node node(int index, double value) {
+    svm_node node = new svm_node();
+    node.index = index;
+    node.value = value;
+    return node;
+  }
 }
@@ -0,0 +1,70 @@
+package libsvm;
+
+import libsvm.libsvm.*;
+import libsvm.mapreduce.ADMMConsensus;
+import libsvm.mapreduce.ADMMWritable;
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Test case for the ADMM training of SVMADMMJob, in process
+ */
+public class SVMADMMJobTest {
+  @Test
+  public void testConsensus() throws Exception {
+    // two gaussian blobs around (1, 1) and (-1, -1)
+    Random random = new Random(1);
+    svm_problem prob = new svm_problem();
+    prob.l = 400;
+    prob.x = new svm_node[prob.l][];
+    prob.y = new double[prob.l];
+    for (int i = 0; i < prob.l; i++) {
+      prob.y[i] = i % 2 == 0 ? 1 : -1;
+      prob.x[i] = new svm_node[]{node(1, prob.y[i] + 0.5 * random.nextGaussian()),
+              node(2, prob.y[i] + 0.5 * random.nextGaussian())};
+    }
+
+    ADMMConsensus admm = new ADMMConsensus(2, 1, 1, svm_linear.L1_LOSS, 0.01);
+    svm_model model = admm.train(ADMMConsensus.split(prob, 4), new int[]{1, -1}, 200, 2);
+    assertEquals(svm_parameter.LINEAR, model.param.kernel_type);
+    assertEquals(1, model.l);
+    int correct = 0;
+    for (int i = 0; i < prob.l; i++)
+      if (svm.svm_predict(model, prob.x[i]) == prob.y[i])
+        correct++;
+    assertTrue(correct > 0.95 * prob.l);
+    assertTrue(admm.getPrimalResidual() < 0.1);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testDimension() throws Exception {
+    // the index 3 would be taken for the bias of a dimension 2
+    ADMMConsensus admm = new ADMMConsensus(2, 1, 1, svm_linear.L1_LOSS, 0.01);
+    admm.new Split(new svm_node[][]{{node(1, 1), node(3, 1)}}, new double[]{1});
+  }
+
+  @Test
+  public void testADMMWritable() throws Exception {
+    ADMMWritable sum = new ADMMWritable();
+    ADMMWritable split = new ADMMWritable(2);
+    split.add(new double[]{1, 2}, new double[]{0.5, -1});
+    sum.merge(split);
+    sum.merge(split);
+    assertEquals(2, sum.getCount());
+    assertEquals(3, sum.getWeightsAndDuals()[0], 1e-8);
+    assertEquals(4, sum.getWeights()[1], 1e-8);
+    assertEquals(10, sum.getWeightsNorm(), 1e-8);
+    assertEquals(2.5, sum.getDualsNorm(), 1e-8);
+  }
+
+  private static svm_node node(int index, double value) {
+    svm_node node = new svm_node();
+    node.index = index;
+    node.value = value;
+    return node;
+  }
+}
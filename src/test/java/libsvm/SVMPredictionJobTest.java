@@ -1,12 +1,25 @@
 package libsvm;
 
+import libsvm.libsvm.svm;
+import libsvm.libsvm.svm_model;
 import libsvm.libsvm.svm_node;
+import libsvm.mapreduce.FeatureHasher;
+import libsvm.mapreduce.FloatArrayWritable;
+import libsvm.mapreduce.MinMaxWritable;
+import libsvm.mapreduce.MultiModelScorer;
+import libsvm.mapreduce.SVMPredictionJob;
 import libsvm.mapreduce.SVMPredictionMapper;
+import libsvm.mapreduce.SVMScaling;
+import libsvm.mapreduce.SVMScalingJob;
+import libsvm.mapreduce.SVMScoringMapper;
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.fs.FileSystem;
 import org.apache.hadoop.io.DoubleWritable;
+import org.apache.hadoop.io.IntWritable;
+import org.apache.hadoop.io.NullWritable;
 import org.apache.hadoop.io.Text;
 import org.apache.hadoop.mrunit.mapreduce.MapDriver;
+import org.apache.hadoop.mrunit.mapreduce.ReduceDriver;
 import org.apache.hadoop.mrunit.types.Pair;
 import org.apache.mahout.math.DenseVector;
 import org.apache.mahout.math.RandomAccessSparseVector;
@@ -15,10 +28,23 @@ import org.apache.mahout.math.VectorWritable;
 import org.junit.Before;
 import org.junit.Test;
 
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.PrintStream;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
 
 import static libsvm.mapreduce.SVMPredictionJob.parseInstance;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 
 /**
  * Test case for SVMPrediction
@@ -52,6 +78,64 @@ public class SVMPredictionJobTest {
     assertEquals(result.get(0).getSecond().get(), 1.0, 1e-8);
   }
 
+  @Test
+  public void testScoringMapper() throws Exception {
+    MapDriver<Text, VectorWritable, Text, FloatArrayWritable> scoringDriver =
+            new MapDriver<Text, VectorWritable, Text, FloatArrayWritable>(new SVMScoringMapper());
+    Configuration scoringConf = scoringDriver.getConfiguration();
+    scoringConf.set("mapred.cache.localFiles", "./libsvm/heart_scale.model");
+    scoringConf.set(SVMPredictionJob.OUTPUT_TYPE, SVMPredictionJob.OUTPUT_DECISION);
+
+    // one class model: label followed by a single decision value
+    Vector vector = new DenseVector(new double[]{0.708333, 1, 1, -0.320755, -0.105023, -1, 1, -0.419847, -1, -0.225806, 0, 1, -1});
+    List<Pair<Text, FloatArrayWritable>> result = scoringDriver.withInput(new Text("002011id"), new VectorWritable(vector)).run();
+    assertEquals(result.size(), 1);
+    float[] scores = result.get(0).getSecond().get();
+    assertEquals(scores.length, 2);
+    assertEquals(scores[0], -1.0, 1e-8);
+    assertTrue(scores[1] <= 0);
+  }
+
+  @Test
+  public void testMultiModelScoring() throws Exception {
+    // a one-class and a C-SVC model with the same rbf kernel, sharing 78 of their SVs
+    String[] files = {"./libsvm/heart_scale.model", "./libsvm/heart_scale_csvc.model"};
+    svm_model[] models = {svm.svm_load_model(files[0]), svm.svm_load_model(files[1])};
+    MultiModelScorer scorer = new MultiModelScorer(Arrays.asList(models));
+    assertEquals(scorer.numKernelEvaluations(), 141 + 132 - 78);
+
+    MapDriver<Text, VectorWritable, Text, FloatArrayWritable> scoringDriver =
+            new MapDriver<Text, VectorWritable, Text, FloatArrayWritable>(new SVMScoringMapper());
+    Configuration scoringConf = scoringDriver.getConfiguration();
+    scoringConf.set("mapred.cache.localFiles", files[0] + "," + files[1]);
+    scoringConf.set(SVMPredictionJob.OUTPUT_TYPE, SVMPredictionJob.OUTPUT_DECISION);
+
+    // each model scores as alone: the label and the decision value of each model
+    BufferedReader reader = new BufferedReader(new FileReader("./libsvm/heart_scale"));
+    double[] dec = new double[1], sharedDec = new double[1];
+    for (int i = 0; i < 20; i++) {
+      svm_node[] x = parseInstance(reader.readLine(), false);
+      scorer.setInstance(x);
+      Vector vector = new RandomAccessSparseVector(13);
+      for (svm_node node : x)
+        vector.set(node.index - 1, node.value);
+      List<Pair<Text, FloatArrayWritable>> result = scoringDriver.withInput(new Text("id" + i),
+              new VectorWritable(vector)).run();
+      assertEquals(result.size(), 1);
+      float[] scores = result.get(0).getSecond().get();
+      assertEquals(scores.length, 4);
+      for (int m = 0; m < models.length; m++) {
+        double label = svm.svm_predict_values(models[m], x, dec);
+        assertEquals(scorer.predictValues(m, sharedDec), label, 0);
+        assertEquals(sharedDec[0], dec[0], 1e-12);
+        assertEquals(svm.svm_predict(models[m], x), label, 0);
+        assertEquals(scores[2 * m], label, 1e-8);
+        assertEquals(scores[2 * m + 1], dec[0], 1e-5);
+      }
+    }
+    reader.close();
+  }
+
   @Test
   public void testParseInstance() throws Exception {
     String line = " 1 1:-0.2 2:1 3:1 4:-0.1 7:-0.5";
@@ -89,4 +173,136 @@ public class SVMPredictionJobTest {
     assertEquals(x[4].index, 7);
     assertEquals(x[4].value, -0.5, 1e-8);
   }
+
+  @Test
+  public void testScaling() throws Exception {
+    // feature 1 in [0, 4] to [-1, 1]: its 0 is scaled to -1; feature 3 in [-2, 2]: its 0 stays 0;
+    // feature 2 is single-valued and not in the file
+    String restore = "y\n0 1\n-1 1\nx\n-1 1\n1 0 4\n3 -2 2\n";
+    SVMScaling scaling = SVMScaling.read(new BufferedReader(new StringReader(restore)));
+    assertEquals(scaling.scale(1, 4), 1, 1e-8);
+    assertEquals(scaling.scale(3, 1), 0.5, 1e-8);
+
+    svm_node[] x = scaling.scale(parseInstance("1 2:5 3:-2", false));
+    assertEquals(x.length, 2);
+    assertEquals(x[0].index, 1);
+    assertEquals(x[0].value, -1, 1e-8);
+    assertEquals(x[1].index, 3);
+    assertEquals(x[1].value, -1, 1e-8);
+
+    x = scaling.scale(parseInstance("1 1:3 3:0", false));
+    assertEquals(x.length, 1);
+    assertEquals(x[0].index, 1);
+    assertEquals(x[0].value, 0.5, 1e-8);
+  }
+
+  @Test
+  public void testScalingJob() throws Exception {
+    // feature 1 in every line, 2 and 4 absent from some lines, 3 single-valued in every line, 5 only negative,
+    // 6 single-valued but absent from some lines
+    String data = "1 1:2 2:-3 3:7 5:-1\n-1 1:4 3:7 4:0.5 5:-2 6:1\n1 1:3 2:6 3:7 5:-4\n";
+    assertEquals(scalingJob(data, false), svmScale(data, new String[0]));
+    assertEquals(scalingJob(data, true), svmScale(data, new String[]{"-m"}));
+  }
+
+  /** the restore file of svm_scale -s for the data */
+  private static String svmScale(String data, String[] options) throws Exception {
+    File input = File.createTempFile("scale", ".txt");
+    File restore = File.createTempFile("scale", ".restore");
+    FileWriter writer = new FileWriter(input);
+    writer.write(data);
+    writer.close();
+    String[] args = Arrays.copyOf(options, options.length + 3);
+    args[options.length] = "-s";
+    args[options.length + 1] = restore.getPath();
+    args[options.length + 2] = input.getPath();
+    PrintStream out = System.out;
+    System.setOut(new PrintStream(new ByteArrayOutputStream())); // the scaled data
+    try {
+      svm_scale.main(args);
+    } finally {
+      System.setOut(out);
+    }
+    StringBuilder text = new StringBuilder();
+    BufferedReader reader = new BufferedReader(new FileReader(restore));
+    for (String line; (line = reader.readLine()) != null; )
+      text.append(line).append('\n');
+    reader.close();
+    input.delete();
+    restore.delete();
+    return text.toString();
+  }
+
+  /**
+   * the restore file of SVMScalingJob for the data, the first two instances and the last one being the input of
+   * two map tasks whose outputs are combined
+   */
+  private static String scalingJob(String data, boolean maxAbs) throws Exception {
+    String[] lines = data.split("\n");
+    SortedMap<Integer, List<MinMaxWritable>> shuffled = new TreeMap<Integer, List<MinMaxWritable>>();
+    for (int[] task : new int[][]{{0, 2}, {2, lines.length}}) {
+      SortedMap<Integer, List<MinMaxWritable>> mapOutput = new TreeMap<Integer, List<MinMaxWritable>>();
+      for (int i = task[0]; i < task[1]; i++) {
+        Vector vector = new RandomAccessSparseVector(10);
+        for (svm_node node : parseInstance(lines[i], false))
+          vector.set(node.index - 1, node.value);
+        MapDriver<Text, VectorWritable, IntWritable, MinMaxWritable> mapDriver =
+                new MapDriver<Text, VectorWritable, IntWritable, MinMaxWritable>(new SVMScalingJob.ScalingMapper());
+        for (Pair<IntWritable, MinMaxWritable> pair : mapDriver.withInput(new Text("id" + i),
+                new VectorWritable(vector)).run())
+          group(mapOutput, pair.getFirst().get(), pair.getSecond());
+      }
+      for (Map.Entry<Integer, List<MinMaxWritable>> entry : mapOutput.entrySet()) {
+        ReduceDriver<IntWritable, MinMaxWritable, IntWritable, MinMaxWritable> combineDriver =
+                new ReduceDriver<IntWritable, MinMaxWritable, IntWritable, MinMaxWritable>(
+                        new SVMScalingJob.MinMaxCombiner());
+        for (Pair<IntWritable, MinMaxWritable> pair : combineDriver.withInput(new IntWritable(entry.getKey()),
+                entry.getValue()).run())
+          group(shuffled, pair.getFirst().get(), pair.getSecond());
+      }
+    }
+
+    // the keys in order, key 0 (the number of instances) first; the reducer keeps the number of instances across
+    // the runs as across the keys of its task, and each run writes the header again
+    SVMScalingJob.ScalingReducer reducer = new SVMScalingJob.ScalingReducer();
+    StringBuilder text = new StringBuilder();
+    for (Map.Entry<Integer, List<MinMaxWritable>> entry : shuffled.entrySet()) {
+      ReduceDriver<IntWritable, MinMaxWritable, NullWritable, Text> reduceDriver =
+              new ReduceDriver<IntWritable, MinMaxWritable, NullWritable, Text>(reducer);
+      reduceDriver.getConfiguration().setBoolean(SVMScalingJob.MAX_ABS, maxAbs);
+      List<Pair<NullWritable, Text>> result = reduceDriver.withInput(new IntWritable(entry.getKey()),
+              entry.getValue()).run();
+      for (int k = entry.getKey() == 0 ? 0 : 2; k < result.size(); k++)
+        text.append(result.get(k).getSecond()).append('\n');
+    }
+    return text.toString();
+  }
+
+  private static void group(SortedMap<Integer, List<MinMaxWritable>> groups, int key, MinMaxWritable value) {
+    if (!groups.containsKey(key))
+      groups.put(key, new ArrayList<MinMaxWritable>());
+    groups.get(key).add(new MinMaxWritable(value.getMin(), value.getMax(), value.getCount()));
+  }
+
+  @Test
+  public void testFeatureHasher() throws Exception {
+    FeatureHasher hasher = new FeatureHasher(1 << 20, false);
+    Vector vector = hasher.vectorize("a b:2.5 http://host:8080/path a");
+    assertEquals(vector.getNumNondefaultElements(), 3);
+    assertEquals(vector.get(hasher.index("a")), 2, 1e-8);
+    assertEquals(vector.get(hasher.index("b")), 2.5, 1e-8);
+    // the ':' of an url is not a value
+    assertEquals(vector.get(hasher.index("http://host:8080/path")), 1, 1e-8);
+
+    FeatureHasher signed = new FeatureHasher(1 << 20, true);
+    assertEquals(signed.index("a"), hasher.index("a"));
+    vector = signed.vectorize("a b:2.5");
+    assertEquals(vector.get(signed.index("a")), signed.sign("a"), 1e-8);
+    assertEquals(vector.get(signed.index("b")), 2.5 * signed.sign("b"), 1e-8);
+
+    // the hashed instance is scored like a pre-indexed one
+    svm_node[] x = parseInstance(vector);
+    assertEquals(x.length, 2);
+    assertTrue(x[0].index < x[1].index);
+  }
 }